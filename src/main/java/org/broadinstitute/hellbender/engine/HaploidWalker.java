@@ -32,11 +32,27 @@ import org.magicdgs.thaplv.cmd.argumentcollections.HaplotypeModelNoPloidyArgumen
 import org.magicdgs.thaplv.cmd.argumentcollections.HaplotypeModelWithPloidyArgumentCollection;
 import org.magicdgs.thaplv.haplotypes.model.VariantHaplotypeConverter;
 
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.TribbleException;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
 import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.engine.filters.VariantFilter;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
@@ -71,13 +87,55 @@ public abstract class HaploidWalker extends VariantWalker {
     protected abstract boolean allowsCheckOnly();
 
     /**
-     * Default implementation validate the haplotype model arguments and calls the super method
-     * afterwards.
+     * Returns {@code true} if the tool process each contig independently with {@link
+     * #traverseContigs(List, Function)}; {@code false} otherwise. Default implementation returns
+     * {@code false}.
+     */
+    protected boolean traverseByContig() {
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if the tool implements {@link #traverseContigs(List, Function)};
+     * {@code false} otherwise. Tools returning {@code true} in {@link #traverseByContig()} should
+     * override this method. Default implementation returns {@code false}.
+     */
+    protected boolean supportsTraversalByContig() {
+        return false;
+    }
+
+    /**
+     * Process independently every contig in the sequence dictionary of the driving variants if
+     * {@link #traverseByContig()} is {@code true}. The tool could query the contigs in parallel,
+     * because each query uses its own reader over the index for the driving variants. If intervals
+     * are provided, only the contigs overlapping them are traversed and the queries are restricted
+     * to the intervals.
+     *
+     * Default implementation throws an {@link UserException}: tools returning {@code true} in
+     * {@link #supportsTraversalByContig()} should override this method.
+     *
+     * @param contigs         contigs in the order of the sequence dictionary.
+     * @param haploidVariants function to query the variants in a contig, converted to haplotypes
+     *                        and filtered. The returned stream should be closed after use.
+     */
+    protected void traverseContigs(final List<String> contigs,
+            final Function<String, Stream<VariantContext>> haploidVariants) {
+        throw new UserException(
+                getClass().getSimpleName() + " does not support traversal by contig");
+    }
+
+    /**
+     * Default implementation validate the haplotype model arguments and the support for traversal
+     * by contig, and calls the super method afterwards.
      */
     @Override
     protected String[] customCommandLineValidation() {
         // validate the haplotype model arguments
         haplotypeModelArgumentCollection.validateArguments();
+        if (traverseByContig() && !supportsTraversalByContig()) {
+            throw new UserException(
+                    getClass().getSimpleName() + " does not support traversal by contig");
+        }
         return super.customCommandLineValidation();
     }
 
@@ -96,6 +154,13 @@ public abstract class HaploidWalker extends VariantWalker {
                 haplotypeModelArgumentCollection.getHaplotypeConverter();
         converter.log(logger);
         final VariantFilter filter = makeVariantFilter();
+        if (traverseByContig()) {
+            final Map<String, List<SimpleInterval>> contigIntervals = getContigIntervals();
+            traverseContigs(new ArrayList<>(contigIntervals.keySet()),
+                    contig -> queryHaploidVariants(contigIntervals.get(contig), converter,
+                            filter));
+            return;
+        }
         // Process each variant in the input stream.
         // ecause drivingVariants are private, we need to have the iterator here
         // TODO: contribute to GATK4 to get access to the drivingVariants
@@ -113,4 +178,73 @@ public abstract class HaploidWalker extends VariantWalker {
                     progressMeter.update(variantInterval);
                 });
     }
+
+    /**
+     * Gets the intervals to traverse for each contig in the sequence dictionary for the driving
+     * variants, in the order of the dictionary. If no intervals are provided, each contig is
+     * traversed completely; otherwise, only the contigs overlapping the merged intervals are
+     * included.
+     */
+    private Map<String, List<SimpleInterval>> getContigIntervals() {
+        final SAMSequenceDictionary dictionary = getHeaderForVariants().getSequenceDictionary();
+        if (dictionary == null || dictionary.isEmpty()) {
+            throw new UserException.BadInput(
+                    "Traversal by contig requires contig lines in the header of the variants");
+        }
+        final List<SimpleInterval> intervals = (intervalArgumentCollection.intervalsSpecified())
+                ? intervalArgumentCollection.getIntervals(dictionary)
+                : dictionary.getSequences().stream()
+                        .map(s -> new SimpleInterval(s.getSequenceName(), 1, s.getSequenceLength()))
+                        .collect(Collectors.toList());
+        // the intervals are sorted by the dictionary, so the contigs keep the same order
+        return intervals.stream().collect(Collectors.groupingBy(SimpleInterval::getContig,
+                LinkedHashMap::new, Collectors.toList()));
+    }
+
+    /**
+     * Queries the driving variants in the intervals for a contig with a new indexed reader,
+     * converting them to haplotypes and filtering afterwards. The reader is closed with the stream.
+     *
+     * Variants overlapping the previous interval are skipped to do not return them twice, and
+     * the progress meter is updated with every variant returned.
+     */
+    private Stream<VariantContext> queryHaploidVariants(final List<SimpleInterval> intervals,
+            final VariantHaplotypeConverter converter, final VariantFilter filter) {
+        final File file = getDrivingVariantsFeatureInput().getFeatureFile();
+        final VCFFileReader reader;
+        try {
+            reader = new VCFFileReader(file, true);
+        } catch (TribbleException e) {
+            throw new UserException.CouldNotReadInputFile(file,
+                    "traversal by contig requires an indexed file", e);
+        }
+        return IntStream.range(0, intervals.size())
+                .mapToObj(i -> queryInterval(reader, intervals.get(i),
+                        (i == 0) ? null : intervals.get(i - 1)))
+                .flatMap(Function.identity())
+                .onClose(reader::close)
+                .map(converter) // converting to haplotypes
+                .filter(filter)
+                .peek(variant -> {
+                    // the progress meter is shared by all the contigs
+                    synchronized (progressMeter) {
+                        progressMeter.update(new SimpleInterval(variant));
+                    }
+                });
+    }
+
+    /**
+     * Queries the variants in an interval, skipping the ones overlapping the previous interval (if
+     * not {@code null}). The iterator is closed with the stream.
+     */
+    private static Stream<VariantContext> queryInterval(final VCFFileReader reader,
+            final SimpleInterval interval, final SimpleInterval previous) {
+        final CloseableIterator<VariantContext> iterator =
+                reader.query(interval.getContig(), interval.getStart(), interval.getEnd());
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::close)
+                .filter(variant -> previous == null
+                        || !previous.overlaps(variant));
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.cmd.argumentcollections;
+
+import org.magicdgs.thaplv.haplotypes.pairs.SamplePair;
+
+import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollectionDefinition;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Argument collection for tools comparing pairs of samples, to restrict the comparisons to
+ * samples in the same/different groups or to an explicit list of pairs. Both files are
+ * tab-delimited without header: sample and group for the groups; and two samples for the pairs.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class SampleComparisonArgumentCollection implements ArgumentCollectionDefinition {
+    private static final long serialVersionUID = 1L;
+
+    /** Comparisons for the samples groups. */
+    public enum GroupComparison {
+        /** Pairs of samples in the same group. */
+        WITHIN,
+        /** Pairs of samples in different groups. */
+        BETWEEN
+    }
+
+    public static final String SAMPLE_GROUPS_LONG = "sample-groups";
+    public static final String SAMPLE_PAIRS_LONG = "sample-pairs";
+    public static final String GROUP_COMPARISON_LONG = "group-comparison";
+
+    /** File with the group for each sample. */
+    @Argument(fullName = SAMPLE_GROUPS_LONG, shortName = "groups", doc = "Tab-delimited file with sample name and group (one sample per line) to restrict the comparisons to the samples in the file. Samples could be compared within or between groups (see --group-comparison).", optional = true, mutex = {SAMPLE_PAIRS_LONG})
+    public File sampleGroups = null;
+
+    /** Comparison for the groups. */
+    @Argument(fullName = GROUP_COMPARISON_LONG, shortName = GROUP_COMPARISON_LONG, doc = "Compare pairs of samples WITHIN the same group or BETWEEN different groups. Only used with --" + SAMPLE_GROUPS_LONG, optional = true)
+    public GroupComparison groupComparison = GroupComparison.WITHIN;
+
+    /** File with the pairs to compare. */
+    @Argument(fullName = SAMPLE_PAIRS_LONG, shortName = "pairs", doc = "Tab-delimited file with the two sample names (one pair per line) to restrict the comparisons to the listed pairs.", optional = true, mutex = {SAMPLE_GROUPS_LONG})
+    public File samplePairs = null;
+
+    /** Returns {@code true} if the comparisons should be restricted; {@code false} otherwise. */
+    public boolean restrictComparisons() {
+        return sampleGroups != null || samplePairs != null;
+    }
+
+    /**
+     * Reads the group for each sample, checking that the samples are in the available ones.
+     *
+     * @param sampleNames the available samples.
+     *
+     * @return map from the sample name to its group, in the order of the file.
+     *
+     * @throws UserException.CouldNotReadInputFile if there is an IO error.
+     * @throws UserException.MalformedFile         if the file is malformed.
+     * @throws UserException.BadInput              if a sample is not in the sample names.
+     */
+    public Map<String, String> readSampleGroups(final Collection<String> sampleNames) {
+        Utils.nonNull(sampleGroups, "null sampleGroups");
+        Utils.nonNull(sampleNames, "null sampleNames");
+        final Map<String, String> groups = new LinkedHashMap<>();
+        readTwoColumns(sampleGroups, tokens -> {
+            checkSample(sampleGroups, sampleNames, tokens[0]);
+            final String previous = groups.put(tokens[0], tokens[1]);
+            if (previous != null && !previous.equals(tokens[1])) {
+                throw new UserException.MalformedFile(sampleGroups,
+                        "sample " + tokens[0] + " in two groups: " + previous + ", " + tokens[1]);
+            }
+        });
+        return groups;
+    }
+
+    /**
+     * Reads the pairs of samples, checking that the samples are in the available ones.
+     *
+     * @param sampleNames the available samples.
+     *
+     * @return the pairs, in the order of the file.
+     *
+     * @throws UserException.CouldNotReadInputFile if there is an IO error.
+     * @throws UserException.MalformedFile         if the file is malformed or a pair contains
+     *                                             the same sample twice.
+     * @throws UserException.BadInput              if a sample is not in the sample names.
+     */
+    public List<SamplePair> readSamplePairs(final Collection<String> sampleNames) {
+        Utils.nonNull(samplePairs, "null samplePairs");
+        Utils.nonNull(sampleNames, "null sampleNames");
+        final List<SamplePair> pairs = new ArrayList<>();
+        readTwoColumns(samplePairs, tokens -> {
+            checkSample(samplePairs, sampleNames, tokens[0]);
+            checkSample(samplePairs, sampleNames, tokens[1]);
+            if (tokens[0].equals(tokens[1])) {
+                throw new UserException.MalformedFile(samplePairs,
+                        "pair with the same sample: " + tokens[0]);
+            }
+            pairs.add(new SamplePair(tokens[0], tokens[1]));
+        });
+        return pairs;
+    }
+
+    private static void checkSample(final File file, final Collection<String> sampleNames,
+            final String sample) {
+        if (!sampleNames.contains(sample)) {
+            throw new UserException.BadInput(
+                    "sample " + sample + " in " + file + " is not in the input");
+        }
+    }
+
+    // reads a tab-delimited file with two columns, skipping empty lines
+    private static void readTwoColumns(final File file, final Consumer<String[]> action) {
+        try (final BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final String[] tokens = line.split("\t");
+                if (tokens.length != 2) {
+                    throw new UserException.MalformedFile(file, "expected two fields: " + line);
+                }
+                action.accept(tokens);
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+}
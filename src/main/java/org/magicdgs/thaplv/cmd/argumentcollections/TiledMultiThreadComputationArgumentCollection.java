@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.cmd.argumentcollections;
+
+import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+/**
+ * Argument collection for multi-thread computation where several computations are grouped in
+ * tiles submitted to the thread pool.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class TiledMultiThreadComputationArgumentCollection
+        extends MultiThreadComputationArgumentCollection {
+    private static final long serialVersionUID = 1L;
+
+    /** Number of computations grouped in each task submitted to the thread pool. */
+    @Argument(fullName = "tile-size", shortName = "tile", doc = "Number of computations grouped in each task submitted to the thread pool. Larger tiles reduce the overhead of scheduling tasks.", optional = true)
+    public int tileSize = 1_000;
+
+    /** Creates a tiled multi-thread argument collection with buffer-size for blocking queues. */
+    public TiledMultiThreadComputationArgumentCollection(final int defaultBufferSize) {
+        super(defaultBufferSize);
+    }
+
+    /** Creates a tiled multi-thread argument collection with default buffer-size. */
+    public TiledMultiThreadComputationArgumentCollection() {
+        super();
+    }
+
+    /**
+     * Gets the number of computations that should be grouped in each task.
+     *
+     * @return the tile size provided by the user.
+     *
+     * @throws UserException.BadArgumentValue if it is incorrect
+     */
+    public int getTileSize() {
+        if (tileSize <= 0) {
+            throw new UserException.BadArgumentValue("tile-size", String.valueOf(tileSize),
+                    "tile-size should be positive");
+        }
+        return tileSize;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.haplotypes.light;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.List;
+
+/**
+ * Bit-packed representation of the genotypes in a variant, for keeping large windows of variants
+ * in memory. Each sample is encoded as one bit in two bitsets: one for the A allele and other for
+ * the called (non-missing) samples.
+ *
+ * Note: the allele bitset follows the {@link LightGenotype} encoding and it is not polarized (the
+ * reference allele for biallelic variants or the first homozygous allele for multi-allelic ones
+ * is the A allele). The major allele is decided for each pair of variants in {@link SNPpair}.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PackedGenotype {
+
+    private final String contig;
+    private final int pos;
+    private final int size;
+
+    // bit set for samples with the A allele
+    private final long[] alleleA;
+    // bit set for samples with a called allele (A or a)
+    private final long[] called;
+
+    // cached counts, to test the pairs without counting
+    private final int numberOfA;
+    private final int numberOfCalled;
+
+    /**
+     * Public constructor from a variant.
+     *
+     * @param variant the variant to convert.
+     */
+    public PackedGenotype(final VariantContext variant) {
+        this.contig = variant.getContig();
+        this.pos = variant.getStart();
+        this.size = variant.getNSamples();
+        this.alleleA = new long[numberOfWords(size)];
+        this.called = new long[numberOfWords(size)];
+        final List<Allele> alternatives = variant.getAlternateAlleles();
+        if (alternatives.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Trying to obtain a packed genotype from a variant with only reference");
+        }
+        // for biallelic variants, the reference is the A allele; otherwise, the first homozygous
+        Allele snpA = (alternatives.size() == 1) ? variant.getReference() : null;
+        Allele snpa = (alternatives.size() == 1) ? alternatives.get(0) : null;
+        int i = 0;
+        for (final Genotype genotype : variant.getGenotypes()) {
+            // if it is not homozygous, is a missing SNP
+            if (genotype.isHom()) {
+                final Allele current = genotype.getAllele(0);
+                if (snpA == null) {
+                    snpA = current;
+                }
+                if (current.equals(snpA)) {
+                    alleleA[i >>> 6] |= 1L << i;
+                } else if (snpa == null) {
+                    snpa = current;
+                } else if (!current.equals(snpa)) {
+                    throw new IllegalArgumentException(
+                            "Trying to construct a packed genotype from a multi-allelic variant when is not. SNP_A="
+                                    + snpA + "; SNP_a=" + snpa + "; current=" + current);
+                }
+                called[i >>> 6] |= 1L << i;
+            }
+            i++;
+        }
+        this.numberOfA = bitCount(alleleA);
+        this.numberOfCalled = bitCount(called);
+    }
+
+    /** Returns the number of 64-bits words required to pack {@code size} samples. */
+    static int numberOfWords(final int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /** Returns the bitset for the A allele (not a copy). */
+    long[] alleleWords() {
+        return alleleA;
+    }
+
+    /** Returns the bitset for the called samples (not a copy). */
+    long[] calledWords() {
+        return called;
+    }
+
+    /**
+     * Get the position for the genotypes
+     *
+     * @return the position
+     */
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Get the contig reference for the genotypes
+     *
+     * @return the contig
+     */
+    public String getContig() {
+        return contig;
+    }
+
+    /**
+     * Get the number of genotypes
+     *
+     * @return the number of genotypes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of alleles A
+     *
+     * @return the count
+     */
+    public int getNumberOfA() {
+        return numberOfA;
+    }
+
+    /**
+     * Get the number of alleles a
+     *
+     * @return the count
+     */
+    public int getNumberOfa() {
+        return numberOfCalled - numberOfA;
+    }
+
+    /**
+     * Get the number of missing
+     *
+     * @return the count
+     */
+    public int getNumberOfMissing() {
+        return size - numberOfCalled;
+    }
+
+    /**
+     * Get the number of called alleles (A or a)
+     *
+     * @return the count
+     */
+    public int getNumberOfCalled() {
+        return numberOfCalled;
+    }
+
+    /**
+     * Check if all the genotypes are called
+     *
+     * @return {@code true} if there is no missing genotype; {@code false} otherwise
+     */
+    public boolean isComplete() {
+        return numberOfCalled == size;
+    }
+
+    /**
+     * Get the count for the major allele within the called genotypes. If both alleles have the
+     * same count, it is the same as the minor allele count.
+     *
+     * @return the count
+     */
+    public int getMajorAlleleCount() {
+        return Math.max(numberOfA, numberOfCalled - numberOfA);
+    }
+
+    /**
+     * Get the count for the minor allele within the called genotypes
+     *
+     * @return the count
+     */
+    public int getMinorAlleleCount() {
+        return numberOfCalled - getMajorAlleleCount();
+    }
+
+    /**
+     * Get the major allele frequency within the called genotypes
+     *
+     * @return the major allele frequency
+     */
+    public double getMajorAlleleFrequency() {
+        return getMajorAlleleCount() / (double) numberOfCalled;
+    }
+
+    /**
+     * Check if the genotype at index position is called. The first index is 0
+     *
+     * @param index the index to retrieve
+     *
+     * @return {@code true} if the sample is called (A or a); {@code false} if it is missing
+     *
+     * @throws ArrayIndexOutOfBoundsException if the index is out of range.
+     */
+    public boolean isCalled(final int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return (called[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Check if the genotype at index position is the A allele. The first index is 0
+     *
+     * @param index the index to retrieve
+     *
+     * @return {@code true} if the sample has the A allele; {@code false} otherwise (a or missing)
+     *
+     * @throws ArrayIndexOutOfBoundsException if the index is out of range.
+     */
+    public boolean isAlleleA(final int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return (alleleA[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // count the number of bits set in the bitset
+    private static int bitCount(final long[] bitset) {
+        int count = 0;
+        for (final long word : bitset) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * String representation of the PackedGenotype, with the same format as {@link
+     * LightGenotype#toString()}.
+     *
+     * @return the string representation
+     */
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append('[');
+        for (int i = 0; i < size; i++) {
+            builder.append((!isCalled(i)) ? 'N' : (isAlleleA(i)) ? 'A' : 'a');
+        }
+        builder.append(']');
+        return builder.toString();
+    }
+}
@@ -121,6 +121,43 @@ public class SNPpair {
         polarizeAlleles();
     }
 
+    /**
+     * Constructor from two bit-packed genotypes. The counts are computed word-wise with {@link
+     * Long#bitCount(long)} over the samples called in both variants.
+     *
+     * @param genotype1 the first genotype
+     * @param genotype2 the second genotype
+     */
+    public SNPpair(final PackedGenotype genotype1, final PackedGenotype genotype2) {
+        if (genotype1.size() != genotype2.size()) {
+            throw new IllegalArgumentException(
+                    "Cannot initialize a SNPpair with genoptypes with differen lengths");
+        }
+        referenceA = genotype1.getContig();
+        positionA = genotype1.getPosition();
+        referenceB = genotype2.getContig();
+        positionB = genotype2.getPosition();
+        final long[] alleles1 = genotype1.alleleWords();
+        final long[] alleles2 = genotype2.alleleWords();
+        final long[] called1 = genotype1.calledWords();
+        final long[] called2 = genotype2.calledWords();
+        int AB = 0;
+        int A1 = 0;
+        int B2 = 0;
+        int total = 0;
+        for (int w = 0; w < alleles1.length; w++) {
+            // alleles are only set for called samples
+            AB += Long.bitCount(alleles1[w] & alleles2[w]);
+            A1 += Long.bitCount(alleles1[w] & called2[w]);
+            B2 += Long.bitCount(alleles2[w] & called1[w]);
+            total += Long.bitCount(called1[w] & called2[w]);
+        }
+        totalCounts = total;
+        // Ab = A1 - AB; aB = B2 - AB
+        counts = new int[] {AB, A1 - AB, B2 - AB};
+        polarizeAlleles();
+    }
+
     /**
      * Polarize alleles in terms of pA > pa and pB > pb
      */
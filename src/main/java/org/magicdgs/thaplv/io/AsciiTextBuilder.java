@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Growable buffer of ASCII bytes, to format text output without creating intermediate strings.
+ *
+ * Numbers are formatted by hand: integers are written digit by digit and decimals are written
+ * with a fixed number of digits as {@link String#format(String, Object...)} does for {@code %f},
+ * always using {@code '.'} as decimal separator.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class AsciiTextBuilder {
+
+    // powers of ten up to the maximum number of decimals
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L,
+            1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+
+    /** Maximum number of decimals allowed in {@link #appendDecimal(double, int)}. */
+    public static final int MAX_DECIMALS = POWERS_OF_TEN.length - 1;
+
+    // maximum scaled value to format by hand, to have enough precision to round
+    private static final double MAX_SCALED_VALUE = 1e12;
+
+    // scaled values closer than this to a half are formatted with the JDK
+    private static final double HALF_TOLERANCE = 1e-3;
+
+    private final byte[] digits = new byte[20];
+
+    private byte[] buffer;
+
+    private int length;
+
+    /**
+     * Creates a new buffer.
+     *
+     * @param initialCapacity the initial capacity in bytes.
+     */
+    public AsciiTextBuilder(final int initialCapacity) {
+        Utils.validateArg(initialCapacity > 0, "initial capacity should be positive");
+        this.buffer = new byte[initialCapacity];
+        this.length = 0;
+    }
+
+    /** Gets the number of bytes in the buffer. */
+    public int length() {
+        return length;
+    }
+
+    /** Removes all the bytes in the buffer, keeping its capacity. */
+    public void clear() {
+        length = 0;
+    }
+
+    /** Writes the content of the buffer into the stream. */
+    public void writeTo(final OutputStream stream) throws IOException {
+        stream.write(buffer, 0, length);
+    }
+
+    /** Gets a copy of the content of the buffer. */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (length + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + additional));
+        }
+    }
+
+    /** Appends the bytes (already encoded) into the buffer. */
+    public AsciiTextBuilder append(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    /** Appends an ASCII character into the buffer. */
+    public AsciiTextBuilder append(final char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+        return this;
+    }
+
+    /** Appends a string into the buffer, encoded as ASCII. */
+    public AsciiTextBuilder append(final String string) {
+        return append(string.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Appends the decimal representation of the number into the buffer. */
+    public AsciiTextBuilder append(final long number) {
+        ensureCapacity(20);
+        if (number < 0) {
+            buffer[length++] = '-';
+            if (number == Long.MIN_VALUE) {
+                // cannot be negated
+                return append(String.valueOf(number).substring(1));
+            }
+        }
+        long remaining = Math.abs(number);
+        int nDigits = 0;
+        do {
+            digits[nDigits++] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        while (nDigits != 0) {
+            buffer[length++] = digits[--nDigits];
+        }
+        return this;
+    }
+
+    /** Appends the number as four bytes in big-endian order. */
+    public AsciiTextBuilder appendBinary(final int number) {
+        ensureCapacity(4);
+        buffer[length++] = (byte) (number >>> 24);
+        buffer[length++] = (byte) (number >>> 16);
+        buffer[length++] = (byte) (number >>> 8);
+        buffer[length++] = (byte) number;
+        return this;
+    }
+
+    /**
+     * Appends the number with a fixed number of decimals, rounding half-up as {@code %.nf} in
+     * {@link String#format(String, Object...)}. Non-finite values are written as {@code NaN},
+     * {@code Infinity} or {@code -Infinity}.
+     *
+     * @param number   the number to append.
+     * @param decimals the number of decimals, between 1 and {@link #MAX_DECIMALS}.
+     */
+    public AsciiTextBuilder appendDecimal(final double number, final int decimals) {
+        Utils.validateArg(decimals > 0 && decimals <= MAX_DECIMALS,
+                () -> "invalid number of decimals: " + decimals);
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            return append(Double.toString(number));
+        }
+        final double scaled = Math.abs(number) * POWERS_OF_TEN[decimals];
+        final double fraction = scaled - Math.floor(scaled);
+        if (scaled >= MAX_SCALED_VALUE || Math.abs(fraction - 0.5) < HALF_TOLERANCE) {
+            // the JDK rounds the shortest decimal representation, which may differ from the
+            // binary value when it is close to a half
+            return append(String.format(Locale.ROOT, "%." + decimals + "f", number));
+        }
+        // the sign is kept for negative zero and values rounded to zero
+        if (Double.doubleToRawLongBits(number) < 0) {
+            append('-');
+        }
+        final long rounded = (long) Math.floor(scaled + 0.5);
+        append(rounded / POWERS_OF_TEN[decimals]);
+        append('.');
+        ensureCapacity(decimals);
+        long fractionDigits = rounded % POWERS_OF_TEN[decimals];
+        for (int i = length + decimals - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + fractionDigits % 10);
+            fractionDigits /= 10;
+        }
+        length += decimals;
+        return this;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writer for a file in a background thread, which receives batches of bytes already formatted.
+ *
+ * Batches are obtained with {@link #getBuffer()}, filled by the caller and submitted with
+ * {@link #submit(AsciiTextBuilder)}. There is a fixed number of buffers that are re-used after
+ * they are written, so the caller blocks only if all of them are waiting to be written.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class AsyncBatchWriter implements Closeable {
+
+    private final File file;
+
+    private final OutputStream stream;
+
+    // buffers available to be filled
+    private final BlockingQueue<AsciiTextBuilder> freeBuffers;
+
+    // background writer for the batches
+    private final ExecutorService writer;
+
+    // the last batch submitted, to keep the order and to propagate the errors
+    private CompletableFuture<Void> lastWrite;
+
+    /**
+     * Creates a writer for the file.
+     *
+     * @param file            the file to write in.
+     * @param blockCompressed if {@code true}, the file is written in block-gzip (BGZF) format.
+     * @param numberOfBuffers the number of buffers that could be filled or waiting.
+     * @param bufferSize      the initial size of each buffer.
+     *
+     * @throws UserException.CouldNotCreateOutputFile if the file could not be opened.
+     */
+    public AsyncBatchWriter(final File file, final boolean blockCompressed,
+            final int numberOfBuffers, final int bufferSize) {
+        Utils.nonNull(file, "null file");
+        Utils.validateArg(numberOfBuffers > 0, "number of buffers should be positive");
+        Utils.validateArg(bufferSize > 0, "buffer size should be positive");
+        this.file = file;
+        try {
+            this.stream = (blockCompressed)
+                    ? new BlockCompressedOutputStream(file) : new FileOutputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+        this.freeBuffers = new ArrayBlockingQueue<>(numberOfBuffers);
+        for (int i = 0; i < numberOfBuffers; i++) {
+            freeBuffers.add(new AsciiTextBuilder(bufferSize));
+        }
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "writer-" + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastWrite = CompletableFuture.completedFuture(null);
+    }
+
+    /** Gets the file for this writer. */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets an empty buffer to fill, waiting until one is available.
+     *
+     * @throws UserException.CouldNotCreateOutputFile if a previous batch could not be written.
+     */
+    public AsciiTextBuilder getBuffer() {
+        if (lastWrite.isCompletedExceptionally()) {
+            waitUntilWritten();
+        }
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for writing " + file, e);
+        }
+    }
+
+    /**
+     * Submits a buffer obtained with {@link #getBuffer()} to be written after the previous ones.
+     * The buffer should not be used after submitting it.
+     */
+    public void submit(final AsciiTextBuilder batch) {
+        Utils.nonNull(batch, "null batch");
+        lastWrite = lastWrite.thenRunAsync(() -> write(batch), writer)
+                .whenComplete((result, error) -> {
+                    // the buffer is available again even if the write failed
+                    batch.clear();
+                    freeBuffers.add(batch);
+                });
+    }
+
+    private void write(final AsciiTextBuilder batch) {
+        try {
+            batch.writeTo(stream);
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /** Waits until all the submitted batches are written. */
+    private void waitUntilWritten() {
+        try {
+            lastWrite.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while writing " + file, e.getCause());
+        }
+    }
+
+    /**
+     * Waits until all the submitted batches are written and closes the file.
+     *
+     * @throws UserException.CouldNotCreateOutputFile if a batch or the file could not be written.
+     */
+    @Override
+    public void close() {
+        try {
+            waitUntilWritten();
+        } finally {
+            writer.shutdown();
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        }
+    }
+}
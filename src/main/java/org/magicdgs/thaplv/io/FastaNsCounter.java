@@ -29,9 +29,9 @@ package org.magicdgs.thaplv.io;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.samtools.util.Locatable;
-import htsjdk.samtools.util.SequenceUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -39,12 +39,21 @@ import java.io.IOException;
 /**
  * Class for count the number of Ns in the reference sequence provided
  *
+ * The Ns are counted using a {@link FastaNsIndex}, loaded from the index file next to the FASTA
+ * file if it exists and it is up to date. Otherwise, each contig is indexed the first time that
+ * it is queried, reading its sequence only once.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
-public class FastaNsCounter implements Closeable {
+public class FastaNsCounter implements NsCounter {
+
+    // logger for the class
+    private static final Logger logger = LogManager.getLogger(FastaNsCounter.class);
 
     private final IndexedFastaSequenceFile fastaReader;
 
+    private final FastaNsIndex nsIndex;
+
     /**
      * Default constructor
      *
@@ -52,6 +61,27 @@ public class FastaNsCounter implements Closeable {
      */
     public FastaNsCounter(final File fasta) throws FileNotFoundException {
         fastaReader = new IndexedFastaSequenceFile(fasta);
+        nsIndex = loadIndex(fasta);
+    }
+
+    // load the index file if it is valid for the reference; otherwise, returns an empty index
+    private FastaNsIndex loadIndex(final File fasta) {
+        final File indexFile = FastaNsIndex.getIndexFile(fasta);
+        if (!indexFile.exists()) {
+            return new FastaNsIndex();
+        }
+        if (indexFile.lastModified() < fasta.lastModified()) {
+            logger.warn("Ignoring N index {}: older than the reference", indexFile);
+            return new FastaNsIndex();
+        }
+        final FastaNsIndex index = FastaNsIndex.read(indexFile);
+        if (getDictionary() != null && !index.isConsistentWith(getDictionary())) {
+            logger.warn("Ignoring N index {}: does not match the reference dictionary",
+                    indexFile);
+            return new FastaNsIndex();
+        }
+        logger.debug("Loaded N index from {}", indexFile);
+        return index;
     }
 
     /**
@@ -61,30 +91,13 @@ public class FastaNsCounter implements Closeable {
      *
      * @return the number of N nucleotides in the region
      */
+    @Override
     public int countNsRegion(final Locatable region) {
-        int count = 0;
-        for (final byte base : fastaReader
-                .getSubsequenceAt(region.getContig(), region.getStart(), region.getEnd())
-                .getBases()) {
-            if (SequenceUtil.isNoCall(base)) {
-                count++;
-            }
+        if (!nsIndex.hasContig(region.getContig())) {
+            logger.debug("Indexing Ns for {}", region.getContig());
+            nsIndex.add(fastaReader.getSequence(region.getContig()));
         }
-        return count;
-    }
-
-    /**
-     * Get the chromosome length for this dictionary
-     *
-     * @param chromosome the chromosome to check
-     *
-     * @return the length of the chromosome
-     */
-    public int getChromosomeLength(final String chromosome) {
-        if (getDictionary() == null) {
-            throw new IllegalStateException("Reference FASTA file needs a sequence dictionary.");
-        }
-        return getDictionary().getSequence(chromosome).getSequenceLength();
+        return nsIndex.countNs(region);
     }
 
     /**
@@ -92,6 +105,7 @@ public class FastaNsCounter implements Closeable {
      *
      * @return the sequence dictionary
      */
+    @Override
     public SAMSequenceDictionary getDictionary() {
         return fastaReader.getSequenceDictionary();
     }
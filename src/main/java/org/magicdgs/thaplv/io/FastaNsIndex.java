@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.samtools.util.SequenceUtil;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index for the N nucleotides in a reference sequence, stored as the sorted list of N blocks for
+ * each contig. The number of Ns in any region is answered with a binary search over the blocks,
+ * without accessing the FASTA file.
+ *
+ * The index could be persisted in a text file next to the FASTA file (see
+ * {@link #getIndexFile(File)}), with the following format:
+ *
+ * <pre>
+ * &gt;contig_name  contig_length
+ * block_start  block_end
+ * </pre>
+ *
+ * Fields are tab-separated and blocks are 1-based, inclusive and sorted. The index could be also
+ * persisted in a compact binary file (see {@link #writeBinary(File)}), which is faster to load.
+ *
+ * The blocks could be any masked region (not only Ns), so the index is also used as an
+ * accessibility mask for the reference (see {@link MaskNsCounter}).
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class FastaNsIndex {
+
+    /** Extension appended to the FASTA file name for the index. */
+    public static final String NS_INDEX_EXTENSION = ".nidx";
+
+    /** Extension for the binary index. */
+    public static final String BINARY_EXTENSION = ".nidx.bin";
+
+    // magic number for the binary index
+    private static final byte[] BINARY_MAGIC = {'N', 'I', 'D', 'X', 1};
+
+    private static final String CONTIG_PREFIX = ">";
+
+    private static final String SEPARATOR = "\t";
+
+    // blocks for each contig, in the order that they were added
+    private final Map<String, ContigNs> contigs = new LinkedHashMap<>();
+
+    /**
+     * Get the default index file for a FASTA file.
+     *
+     * @param fasta the FASTA file.
+     *
+     * @return the index file.
+     */
+    public static File getIndexFile(final File fasta) {
+        Utils.nonNull(fasta, "null fasta");
+        return new File(fasta.getAbsolutePath() + NS_INDEX_EXTENSION);
+    }
+
+    /**
+     * Create the index for every sequence in the reference.
+     *
+     * @param reference the reference file, which will be reset before iterating.
+     *
+     * @return the index for the reference.
+     */
+    public static FastaNsIndex create(final ReferenceSequenceFile reference) {
+        Utils.nonNull(reference, "null reference");
+        final FastaNsIndex index = new FastaNsIndex();
+        reference.reset();
+        for (ReferenceSequence sequence = reference.nextSequence(); sequence != null;
+                sequence = reference.nextSequence()) {
+            index.add(sequence);
+        }
+        return index;
+    }
+
+    /**
+     * Add a sequence to the index.
+     *
+     * @param sequence the whole sequence for the contig.
+     *
+     * @throws IllegalArgumentException if the contig is already in the index.
+     */
+    public void add(final ReferenceSequence sequence) {
+        Utils.nonNull(sequence, "null sequence");
+        add(sequence.getName(), sequence.getBases());
+    }
+
+    /**
+     * Add the bases for a contig to the index.
+     *
+     * @param contig the name of the contig.
+     * @param bases  the whole sequence for the contig.
+     *
+     * @throws IllegalArgumentException if the contig is already in the index.
+     */
+    public void add(final String contig, final byte[] bases) {
+        Utils.nonNull(contig, "null contig");
+        Utils.nonNull(bases, "null bases");
+        // first pass count the blocks to allocate the exact arrays
+        int numberOfBlocks = 0;
+        boolean previousIsN = false;
+        for (final byte base : bases) {
+            final boolean isN = SequenceUtil.isNoCall(base);
+            if (isN && !previousIsN) {
+                numberOfBlocks++;
+            }
+            previousIsN = isN;
+        }
+        final int[] starts = new int[numberOfBlocks];
+        final int[] ends = new int[numberOfBlocks];
+        int block = -1;
+        previousIsN = false;
+        for (int i = 0; i < bases.length; i++) {
+            final boolean isN = SequenceUtil.isNoCall(bases[i]);
+            if (isN) {
+                if (!previousIsN) {
+                    starts[++block] = i + 1;
+                }
+                ends[block] = i + 1;
+            }
+            previousIsN = isN;
+        }
+        addContig(contig, new ContigNs(bases.length, starts, ends));
+    }
+
+    /**
+     * Add the blocks for a contig to the index.
+     *
+     * @param contig the name of the contig.
+     * @param length the length of the contig.
+     * @param starts the start of each block (1-based, inclusive).
+     * @param ends   the end of each block (1-based, inclusive).
+     *
+     * @throws IllegalArgumentException if the contig is already in the index or the blocks are not
+     *                                  sorted, overlap or are outside the contig.
+     */
+    public void add(final String contig, final int length, final int[] starts, final int[] ends) {
+        Utils.nonNull(contig, "null contig");
+        Utils.validateArg(length >= 0, "negative length");
+        Utils.validateArg(starts.length == ends.length, "different number of starts and ends");
+        final int invalid = firstInvalidBlock(length, starts, ends, starts.length);
+        Utils.validateArg(invalid == -1, () -> String.format("invalid block for %s: %d-%d",
+                contig, starts[invalid], ends[invalid]));
+        addContig(contig, new ContigNs(length, starts.clone(), ends.clone()));
+    }
+
+    // returns the first block that is not sorted, overlaps the previous or is outside the contig;
+    // -1 if all the blocks are valid
+    private static int firstInvalidBlock(final int length, final int[] starts, final int[] ends,
+            final int numberOfBlocks) {
+        int previousEnd = 0;
+        for (int i = 0; i < numberOfBlocks; i++) {
+            if (starts[i] <= previousEnd || ends[i] < starts[i] || ends[i] > length) {
+                return i;
+            }
+            previousEnd = ends[i];
+        }
+        return -1;
+    }
+
+    private void addContig(final String contig, final ContigNs blocks) {
+        Utils.validateArg(!contigs.containsKey(contig), () -> contig + " already in the index");
+        contigs.put(contig, blocks);
+    }
+
+    /** Returns {@code true} if the contig is already in the index; {@code false} otherwise. */
+    public boolean hasContig(final String contig) {
+        return contigs.containsKey(contig);
+    }
+
+    /** Get the contigs in the index, in the order that they were added. */
+    public Set<String> getContigs() {
+        return Collections.unmodifiableSet(contigs.keySet());
+    }
+
+    /** Get the length of the contig. */
+    public int getContigLength(final String contig) {
+        return getContigNs(contig).length;
+    }
+
+    /** Get the number of N blocks in the contig. */
+    public int getNumberOfBlocks(final String contig) {
+        return getContigNs(contig).starts.length;
+    }
+
+    /**
+     * Count the Ns in a region.
+     *
+     * @param region the region to count the Ns.
+     *
+     * @return the number of N nucleotides in the region.
+     *
+     * @throws IllegalArgumentException if the contig is not indexed or the region is outside it.
+     */
+    public int countNs(final Locatable region) {
+        Utils.nonNull(region, "null region");
+        return countNs(region.getContig(), region.getStart(), region.getEnd());
+    }
+
+    /**
+     * Count the Ns in a region.
+     *
+     * @param contig the contig for the region.
+     * @param start  the start of the region (1-based, inclusive).
+     * @param end    the end of the region (1-based, inclusive).
+     *
+     * @return the number of N nucleotides in the region.
+     *
+     * @throws IllegalArgumentException if the contig is not indexed or the region is outside it.
+     */
+    public int countNs(final String contig, final int start, final int end) {
+        final ContigNs blocks = getContigNs(contig);
+        Utils.validateArg(start >= 1 && start <= end + 1 && end <= blocks.length,
+                () -> "invalid region " + contig + ":" + start + "-" + end);
+        return blocks.cumulativeNs(end) - blocks.cumulativeNs(start - 1);
+    }
+
+    private ContigNs getContigNs(final String contig) {
+        final ContigNs blocks = contigs.get(contig);
+        Utils.validateArg(blocks != null, () -> contig + " not in the index");
+        return blocks;
+    }
+
+    /**
+     * Check if the index contains the same contigs and lengths as the dictionary.
+     *
+     * @param dictionary the dictionary to check with.
+     *
+     * @return {@code true} if they are consistent; {@code false} otherwise.
+     */
+    public boolean isConsistentWith(final SAMSequenceDictionary dictionary) {
+        Utils.nonNull(dictionary, "null dictionary");
+        if (dictionary.size() != contigs.size()) {
+            return false;
+        }
+        for (final SAMSequenceRecord record : dictionary.getSequences()) {
+            final ContigNs blocks = contigs.get(record.getSequenceName());
+            if (blocks == null || blocks.length != record.getSequenceLength()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the index into a file.
+     *
+     * @param file the file to write in.
+     *
+     * @throws UserException.CouldNotCreateOutputFile if there is an IO error.
+     */
+    public void write(final File file) {
+        Utils.nonNull(file, "null file");
+        try (final BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (final Map.Entry<String, ContigNs> entry : contigs.entrySet()) {
+                final ContigNs blocks = entry.getValue();
+                writer.write(CONTIG_PREFIX + entry.getKey() + SEPARATOR + blocks.length);
+                writer.newLine();
+                for (int i = 0; i < blocks.starts.length; i++) {
+                    writer.write(blocks.starts[i] + SEPARATOR + blocks.ends[i]);
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * Read an index from a file.
+     *
+     * @param file the file to read from.
+     *
+     * @return the index in the file.
+     *
+     * @throws UserException.CouldNotReadInputFile if there is an IO error.
+     * @throws UserException.MalformedFile          if the file is not a valid index.
+     */
+    public static FastaNsIndex read(final File file) {
+        Utils.nonNull(file, "null file");
+        final FastaNsIndex index = new FastaNsIndex();
+        try (final BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String contig = null;
+            int length = 0;
+            int[] starts = new int[16];
+            int[] ends = new int[16];
+            int numberOfBlocks = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final String[] tokens = line.split(SEPARATOR);
+                if (tokens.length != 2) {
+                    throw new UserException.MalformedFile(file, "expected two fields: " + line);
+                }
+                if (line.startsWith(CONTIG_PREFIX)) {
+                    if (contig != null) {
+                        index.addContig(file, contig, length, starts, ends, numberOfBlocks);
+                    }
+                    contig = tokens[0].substring(CONTIG_PREFIX.length());
+                    length = parseInt(file, tokens[1]);
+                    numberOfBlocks = 0;
+                } else if (contig == null) {
+                    throw new UserException.MalformedFile(file, "block without contig: " + line);
+                } else {
+                    if (numberOfBlocks == starts.length) {
+                        starts = Arrays.copyOf(starts, 2 * numberOfBlocks);
+                        ends = Arrays.copyOf(ends, 2 * numberOfBlocks);
+                    }
+                    starts[numberOfBlocks] = parseInt(file, tokens[0]);
+                    ends[numberOfBlocks++] = parseInt(file, tokens[1]);
+                }
+            }
+            if (contig != null) {
+                index.addContig(file, contig, length, starts, ends, numberOfBlocks);
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+        return index;
+    }
+
+    /**
+     * Write the index into a binary file.
+     *
+     * @param file the file to write in.
+     *
+     * @throws UserException.CouldNotCreateOutputFile if there is an IO error.
+     */
+    public void writeBinary(final File file) {
+        Utils.nonNull(file, "null file");
+        try (final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.write(BINARY_MAGIC);
+            output.writeInt(contigs.size());
+            for (final Map.Entry<String, ContigNs> entry : contigs.entrySet()) {
+                final ContigNs blocks = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeInt(blocks.length);
+                output.writeInt(blocks.starts.length);
+                for (int i = 0; i < blocks.starts.length; i++) {
+                    output.writeInt(blocks.starts[i]);
+                    output.writeInt(blocks.ends[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * Read an index from a binary file.
+     *
+     * @param file the file to read from.
+     *
+     * @return the index in the file.
+     *
+     * @throws UserException.CouldNotReadInputFile if there is an IO error.
+     * @throws UserException.MalformedFile          if the file is not a valid binary index.
+     */
+    public static FastaNsIndex readBinary(final File file) {
+        Utils.nonNull(file, "null file");
+        final FastaNsIndex index = new FastaNsIndex();
+        try (final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            final byte[] magic = new byte[BINARY_MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, BINARY_MAGIC)) {
+                throw new UserException.MalformedFile(file, "not a binary N index");
+            }
+            final int numberOfContigs = input.readInt();
+            for (int contig = 0; contig < numberOfContigs; contig++) {
+                final String name = input.readUTF();
+                final int length = input.readInt();
+                final int numberOfBlocks = input.readInt();
+                if (numberOfBlocks < 0) {
+                    throw new UserException.MalformedFile(file,
+                            "negative number of blocks for " + name);
+                }
+                final int[] starts = new int[numberOfBlocks];
+                final int[] ends = new int[numberOfBlocks];
+                for (int i = 0; i < numberOfBlocks; i++) {
+                    starts[i] = input.readInt();
+                    ends[i] = input.readInt();
+                }
+                index.addContig(file, name, length, starts, ends, numberOfBlocks);
+            }
+        } catch (EOFException e) {
+            throw new UserException.MalformedFile(file, "truncated binary N index");
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+        return index;
+    }
+
+    private static int parseInt(final File file, final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new UserException.MalformedFile(file, "invalid number: " + value);
+        }
+    }
+
+    // validates the blocks read from a file before adding them
+    private void addContig(final File file, final String contig, final int length,
+            final int[] starts, final int[] ends, final int numberOfBlocks) {
+        if (contigs.containsKey(contig)) {
+            throw new UserException.MalformedFile(file, "duplicated contig " + contig);
+        }
+        final int invalid = firstInvalidBlock(length, starts, ends, numberOfBlocks);
+        if (invalid != -1) {
+            throw new UserException.MalformedFile(file, String.format(
+                    "invalid block for %s: %d-%d", contig, starts[invalid], ends[invalid]));
+        }
+        addContig(contig, new ContigNs(length, Arrays.copyOf(starts, numberOfBlocks),
+                Arrays.copyOf(ends, numberOfBlocks)));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return contigs.equals(((FastaNsIndex) o).contigs);
+    }
+
+    @Override
+    public int hashCode() {
+        return contigs.hashCode();
+    }
+
+    /**
+     * Blocks of Ns for a single contig, with the cumulative number of Ns before each block.
+     */
+    private static final class ContigNs {
+
+        private final int length;
+
+        private final int[] starts;
+
+        private final int[] ends;
+
+        // number of Ns in the contig before each block
+        private final int[] nsBefore;
+
+        private ContigNs(final int length, final int[] starts, final int[] ends) {
+            this.length = length;
+            this.starts = starts;
+            this.ends = ends;
+            this.nsBefore = new int[starts.length];
+            for (int i = 1; i < starts.length; i++) {
+                nsBefore[i] = nsBefore[i - 1] + ends[i - 1] - starts[i - 1] + 1;
+            }
+        }
+
+        /** Number of Ns from the start of the contig up to the position (inclusive). */
+        private int cumulativeNs(final int position) {
+            // index of the last block starting at or before the position
+            int block = Arrays.binarySearch(starts, position);
+            if (block < 0) {
+                block = -block - 2;
+            }
+            if (block < 0) {
+                return 0;
+            }
+            return nsBefore[block] + Math.min(position, ends[block]) - starts[block] + 1;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ContigNs that = (ContigNs) o;
+            return length == that.length && Arrays.equals(starts, that.starts)
+                    && Arrays.equals(ends, that.ends);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * length + Arrays.hashCode(starts)) + Arrays.hashCode(ends);
+        }
+    }
+}
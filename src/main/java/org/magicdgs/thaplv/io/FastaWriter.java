@@ -27,35 +27,97 @@
 
 package org.magicdgs.thaplv.io;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
 import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.Utils;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Simple class to write a FASTA file with a fixed width for the sequence.
  *
  * Whole sequences could be added with {@link ReferenceSequence}.
  * Sequences could be created on the fly calling first {@link #writeSequenceName(String)},
- * then adding the bases one by one with {@link #addBase(byte)}. After adding the sequence,
- * {@link #endSequence()} should be called before write a new sequence.
+ * then adding the bases one by one with {@link #addBase(byte)} or in blocks with
+ * {@link #addBases(byte[], int, int)}. After adding the sequence, {@link #endSequence()} should
+ * be called before write a new sequence.
+ *
+ * Lines are assembled in a reusable buffer, which is written to the file only when it is full or
+ * the sequence ends. The file could be written in block-gzip (BGZF) format.
+ *
+ * The FASTA index (.fai) and the sequence dictionary (.dict) could be generated while writing,
+ * tracking the offsets, lengths and MD5 of the sequences, and they are written on close. The index
+ * is only supported for non-compressed files.
  *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
 public class FastaWriter implements Closeable {
 
-    private final PrintStream writer;
+    // default size for the buffer
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Extension for the FASTA index. */
+    public static final String INDEX_EXTENSION = ".fai";
+
+    /** Extension for the sequence dictionary. */
+    public static final String DICTIONARY_EXTENSION = ".dict";
+
+    // extensions removed from the FASTA file for the dictionary name
+    private static final String[] FASTA_EXTENSIONS = {".fasta", ".fa", ".fna"};
+
+    private final File file;
+
+    private final OutputStream stream;
 
     private final int lineWidth;
 
+    // buffer for the lines
+    private final byte[] buffer;
+
+    // number of bytes in the buffer
+    private int bufferLength;
+
+    // number of bytes already written to the file (uncompressed)
+    private long bytesWritten;
+
     private boolean headerAlreadyWritten;
 
     private int counter;
 
+    // index entries (null if no index is created)
+    private final List<IndexEntry> indexEntries;
+
+    // sequence records for the dictionary (null if no dictionary is created)
+    private final SAMSequenceDictionary dictionary;
+
+    // MD5 for the sequence in the dictionary and buffer for upper case bases
+    private final MessageDigest md5;
+    private final byte[] upperCaseBuffer;
+
+    // the current sequence name, offset of the first base and number of bases
+    private String currentName;
+    private long currentOffset;
+    private long currentLength;
+
     /**
      * Constructor with a file
      *
@@ -63,11 +125,91 @@ public class FastaWriter implements Closeable {
      * @param lineWidth the width for the output
      */
     public FastaWriter(final File file, final int lineWidth) throws FileNotFoundException {
+        this(file, lineWidth, false);
+    }
+
+    /**
+     * Constructor with a file, which could be block-compressed.
+     *
+     * @param file            the file to output
+     * @param lineWidth       the width for the output
+     * @param blockCompressed if {@code true}, the file is written in block-gzip (BGZF) format
+     */
+    public FastaWriter(final File file, final int lineWidth, final boolean blockCompressed)
+            throws FileNotFoundException {
+        this(file, lineWidth, blockCompressed, false, false);
+    }
+
+    /**
+     * Constructor with a file, which could be block-compressed and indexed on close.
+     *
+     * @param file             the file to output
+     * @param lineWidth        the width for the output
+     * @param blockCompressed  if {@code true}, the file is written in block-gzip (BGZF) format
+     * @param createIndex      if {@code true}, the FASTA index is written on close (see {@link
+     *                         #getIndexFile(File)})
+     * @param createDictionary if {@code true}, the sequence dictionary is written on close (see
+     *                         {@link #getDictionaryFile(File)})
+     *
+     * @throws IllegalArgumentException if the index is requested for block-compressed output
+     */
+    public FastaWriter(final File file, final int lineWidth, final boolean blockCompressed,
+            final boolean createIndex, final boolean createDictionary)
+            throws FileNotFoundException {
         Utils.nonNull(file);
-        this.writer = new PrintStream(file);
+        Utils.validateArg(!(blockCompressed && createIndex),
+                "FASTA index could not be created for block-compressed output");
+        this.file = file;
+        this.stream = (blockCompressed)
+                ? new BlockCompressedOutputStream(file) : new FileOutputStream(file);
         this.lineWidth = lineWidth;
+        // at least one full line and its line break should fit in the buffer
+        this.buffer = new byte[Math.max(BUFFER_SIZE, lineWidth + 1)];
+        this.bufferLength = 0;
+        this.bytesWritten = 0;
         this.headerAlreadyWritten = false;
         this.counter = 0;
+        this.indexEntries = (createIndex) ? new ArrayList<>() : null;
+        if (createDictionary) {
+            this.dictionary = new SAMSequenceDictionary();
+            this.md5 = getMd5Digest();
+            this.upperCaseBuffer = new byte[buffer.length];
+        } else {
+            this.dictionary = null;
+            this.md5 = null;
+            this.upperCaseBuffer = null;
+        }
+    }
+
+    /** Gets the FASTA index file for a FASTA file ({@code file.fai}). */
+    public static File getIndexFile(final File fastaFile) {
+        return new File(fastaFile.getPath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Gets the sequence dictionary file for a FASTA file, replacing the FASTA extension (and the
+     * compression extension, if any) by {@code .dict}.
+     */
+    public static File getDictionaryFile(final File fastaFile) {
+        String name = fastaFile.getName();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        for (final String extension : FASTA_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                name = name.substring(0, name.length() - extension.length());
+                break;
+            }
+        }
+        return new File(fastaFile.getParentFile(), name + DICTIONARY_EXTENSION);
+    }
+
+    private static MessageDigest getMd5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 algorithm not available", e);
+        }
     }
 
     /**
@@ -80,10 +222,7 @@ public class FastaWriter implements Closeable {
      */
     public void addWholeSequence(final ReferenceSequence sequence) {
         writeSequenceName(sequence.getName());
-        for (final byte base : sequence.getBases()) {
-            // sequence name was checked with
-            addBaseNoCheck(base);
-        }
+        addBasesNoCheck(sequence.getBases(), 0, sequence.length());
         endSequence();
     }
 
@@ -100,9 +239,15 @@ public class FastaWriter implements Closeable {
         if (headerAlreadyWritten) {
             throw new IllegalStateException("Sequence name already written");
         }
-        writer.print(">");
-        writer.println(sequenceName);
+        putByte((byte) '>');
+        final byte[] name = sequenceName.getBytes(StandardCharsets.UTF_8);
+        putBytes(name, 0, name.length);
+        putByte((byte) '\n');
         headerAlreadyWritten = true;
+        // as in samtools faidx, the name for the index is the first word of the header
+        currentName = sequenceName.split("\\s", 2)[0];
+        currentOffset = bytesWritten + bufferLength;
+        currentLength = 0;
     }
 
     /**
@@ -117,35 +262,199 @@ public class FastaWriter implements Closeable {
             throw new IllegalArgumentException(
                     "Sequence name was not written before base is added");
         }
-        addBaseNoCheck(base);
-    }
-
-    /** Write the base without checking if the sequence name was already written */
-    private void addBaseNoCheck(final byte base) {
-        writer.print((char) base);
+        putByte(base);
+        currentLength++;
+        if (md5 != null) {
+            md5.update(toUpperCase(base));
+        }
         if (++counter == lineWidth) {
-            writer.println();
-            // TODO: flush for low memory?
-            // writer.flush();
+            putByte((byte) '\n');
             counter = 0;
         }
     }
 
+    /**
+     * Write the next bases in the sequence
+     *
+     * @param bases  the array containing the bases to write
+     * @param offset the first base in the array to write
+     * @param length the number of bases to write
+     *
+     * @throws IllegalArgumentException if a sequence name was not written before
+     */
+    public void addBases(final byte[] bases, final int offset, final int length) {
+        Utils.nonNull(bases, "null bases");
+        Utils.validateArg(offset >= 0 && length >= 0 && offset + length <= bases.length,
+                "invalid range of bases");
+        if (!headerAlreadyWritten) {
+            throw new IllegalArgumentException(
+                    "Sequence name was not written before base is added");
+        }
+        addBasesNoCheck(bases, offset, length);
+    }
+
+    /** Write the bases by lines without checking if the sequence name was already written */
+    private void addBasesNoCheck(final byte[] bases, int offset, final int length) {
+        trackBases(bases, offset, length);
+        final int end = offset + length;
+        if (lineWidth <= 0) {
+            // no line breaks within the sequence
+            putBytes(bases, offset, length);
+            counter += length;
+            return;
+        }
+        while (offset < end) {
+            final int chunk = Math.min(lineWidth - counter, end - offset);
+            putBytes(bases, offset, chunk);
+            offset += chunk;
+            counter += chunk;
+            if (counter == lineWidth) {
+                putByte((byte) '\n');
+                counter = 0;
+            }
+        }
+    }
+
+    /** Tracks the length and MD5 of the current sequence. */
+    private void trackBases(final byte[] bases, int offset, int length) {
+        currentLength += length;
+        if (md5 != null) {
+            // MD5 for the dictionary is computed over the upper case sequence
+            while (length > 0) {
+                final int chunk = Math.min(length, upperCaseBuffer.length);
+                for (int i = 0; i < chunk; i++) {
+                    upperCaseBuffer[i] = toUpperCase(bases[offset + i]);
+                }
+                md5.update(upperCaseBuffer, 0, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+    }
+
+    private static byte toUpperCase(final byte base) {
+        return (base >= 'a' && base <= 'z') ? (byte) (base - 'a' + 'A') : base;
+    }
+
     /**
      * End the sequence adding a new line
      */
     public void endSequence() {
         if (counter != 0) {
-            writer.println();
+            putByte((byte) '\n');
         }
-        writer.flush();
+        if (headerAlreadyWritten) {
+            addSequenceToIndexes();
+        }
+        flushBuffer();
         counter = 0;
         headerAlreadyWritten = false;
     }
 
+    /** Puts a byte into the buffer, writing it to the file if full. */
+    private void putByte(final byte b) {
+        if (bufferLength == buffer.length) {
+            flushBuffer();
+        }
+        buffer[bufferLength++] = b;
+    }
+
+    /** Puts the bytes into the buffer, writing it to the file every time it is full. */
+    private void putBytes(final byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (bufferLength == buffer.length) {
+                flushBuffer();
+            }
+            final int chunk = Math.min(buffer.length - bufferLength, length);
+            System.arraycopy(bytes, offset, buffer, bufferLength, chunk);
+            bufferLength += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /** Writes the buffer into the file. */
+    private void flushBuffer() {
+        try {
+            stream.write(buffer, 0, bufferLength);
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+        bytesWritten += bufferLength;
+        bufferLength = 0;
+    }
+
+    /** Adds the current sequence to the index and the dictionary. */
+    private void addSequenceToIndexes() {
+        if (indexEntries != null) {
+            indexEntries.add(new IndexEntry(currentName, currentLength, currentOffset));
+        }
+        if (dictionary != null) {
+            final SAMSequenceRecord record =
+                    new SAMSequenceRecord(currentName, (int) currentLength);
+            record.setAttribute(SAMSequenceRecord.MD5_TAG,
+                    String.format("%032x", new BigInteger(1, md5.digest())));
+            record.setAttribute(SAMSequenceRecord.URI_TAG, file.getAbsoluteFile().toURI()
+                    .toString());
+            dictionary.addSequence(record);
+        }
+    }
+
     @Override
     public void close() throws IOException {
         endSequence();
-        writer.close();
+        stream.close();
+        if (indexEntries != null) {
+            writeIndex(getIndexFile(file));
+        }
+        if (dictionary != null) {
+            writeDictionary(getDictionaryFile(file));
+        }
+    }
+
+    // writes the FASTA index in the samtools faidx format
+    private void writeIndex(final File indexFile) {
+        try (final PrintStream index = new PrintStream(indexFile)) {
+            for (final IndexEntry entry : indexEntries) {
+                // without width, each sequence is in a single line
+                final long lineBases = (lineWidth <= 0) ? entry.length : lineWidth;
+                index.print(entry.name);
+                index.print('\t');
+                index.print(entry.length);
+                index.print('\t');
+                index.print(entry.offset);
+                index.print('\t');
+                index.print(lineBases);
+                index.print('\t');
+                index.print(lineBases + 1);
+                index.print('\n');
+            }
+        } catch (FileNotFoundException e) {
+            throw new UserException.CouldNotCreateOutputFile(indexFile, e);
+        }
+    }
+
+    // writes the sequence dictionary as a SAM header
+    private void writeDictionary(final File dictionaryFile) {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSequenceDictionary(dictionary);
+        try (final Writer writer = Files.newBufferedWriter(dictionaryFile.toPath())) {
+            new SAMTextHeaderCodec().encode(writer, header);
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(dictionaryFile, e);
+        }
+    }
+
+    // entry for the FASTA index
+    private static final class IndexEntry {
+        private final String name;
+        private final long length;
+        private final long offset;
+
+        private IndexEntry(final String name, final long length, final long offset) {
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+        }
     }
 }
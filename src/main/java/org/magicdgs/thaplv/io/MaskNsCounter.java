@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Locatable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class for count the number of Ns in a reference from an accessibility mask, without the
+ * reference sequence: the sites outside the accessible regions are counted as Ns.
+ *
+ * The mask is loaded in memory as a {@link FastaNsIndex} with the masked blocks, from one of the
+ * following files:
+ *
+ * - BED file with the accessible regions (could be gzipped). Contigs without regions are
+ * completely masked.
+ * - N index for the reference (text or binary), as generated by IndexReferenceNs.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class MaskNsCounter implements NsCounter {
+
+    // logger for the class
+    private static final Logger logger = LogManager.getLogger(MaskNsCounter.class);
+
+    private final FastaNsIndex maskedBlocks;
+
+    private final SAMSequenceDictionary dictionary;
+
+    /**
+     * Constructor from a mask file. The format is determined by the extension.
+     *
+     * @param mask       the mask file.
+     * @param dictionary the sequence dictionary for the reference.
+     *
+     * @throws UserException if the mask could not be read or does not match the dictionary.
+     */
+    public MaskNsCounter(final File mask, final SAMSequenceDictionary dictionary) {
+        this(readMask(mask, dictionary), dictionary);
+    }
+
+    /**
+     * Constructor from the masked blocks.
+     *
+     * @param maskedBlocks the masked blocks for every contig in the dictionary.
+     * @param dictionary   the sequence dictionary for the reference.
+     *
+     * @throws IllegalArgumentException if the masked blocks are not consistent with the
+     *                                  dictionary.
+     */
+    public MaskNsCounter(final FastaNsIndex maskedBlocks, final SAMSequenceDictionary dictionary) {
+        Utils.nonNull(maskedBlocks, "null maskedBlocks");
+        Utils.nonNull(dictionary, "null dictionary");
+        Utils.validateArg(maskedBlocks.isConsistentWith(dictionary),
+                "masked blocks are not consistent with the dictionary");
+        this.maskedBlocks = maskedBlocks;
+        this.dictionary = dictionary;
+    }
+
+    // reads the mask using the extension to determine the format
+    private static FastaNsIndex readMask(final File mask, final SAMSequenceDictionary dictionary) {
+        Utils.nonNull(mask, "null mask");
+        Utils.nonNull(dictionary, "null dictionary");
+        IOUtil.assertFileIsReadable(mask);
+        final FastaNsIndex index;
+        if (mask.getName().endsWith(FastaNsIndex.BINARY_EXTENSION)) {
+            index = FastaNsIndex.readBinary(mask);
+        } else if (mask.getName().endsWith(FastaNsIndex.NS_INDEX_EXTENSION)) {
+            index = FastaNsIndex.read(mask);
+        } else {
+            return readBed(mask, dictionary);
+        }
+        if (!index.isConsistentWith(dictionary)) {
+            throw new UserException.BadInput(
+                    "N index " + mask + " does not match the sequence dictionary");
+        }
+        return index;
+    }
+
+    /**
+     * Reads a BED file with the accessible regions, and returns the masked blocks (the
+     * complement of the regions) for every contig in the dictionary. Overlapping regions are
+     * merged, and regions in contigs that are not in the dictionary are ignored.
+     *
+     * @param bed        the BED file.
+     * @param dictionary the sequence dictionary for the reference.
+     *
+     * @return the masked blocks.
+     *
+     * @throws UserException.CouldNotReadInputFile if there is an IO error.
+     * @throws UserException.MalformedFile         if the file is not a valid BED file or the
+     *                                             regions are outside the contigs.
+     */
+    public static FastaNsIndex readBed(final File bed, final SAMSequenceDictionary dictionary) {
+        Utils.nonNull(bed, "null bed");
+        Utils.nonNull(dictionary, "null dictionary");
+        // accessible regions as 0-based, half-open intervals
+        final Map<String, List<int[]>> regions = new HashMap<>();
+        final Set<String> ignoredContigs = new HashSet<>();
+        try (final BufferedReader reader = IOUtil.openFileForBufferedReading(bed)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("track")
+                        || line.startsWith("browser")) {
+                    continue;
+                }
+                final String[] tokens = line.split("\t");
+                if (tokens.length < 3) {
+                    throw new UserException.MalformedFile(bed,
+                            "expected at least three fields: " + line);
+                }
+                final SAMSequenceRecord record = dictionary.getSequence(tokens[0]);
+                if (record == null) {
+                    if (ignoredContigs.add(tokens[0])) {
+                        logger.warn("Ignoring regions for {}: not in the sequence dictionary",
+                                tokens[0]);
+                    }
+                    continue;
+                }
+                final int start = parseInt(bed, tokens[1]);
+                final int end = parseInt(bed, tokens[2]);
+                if (start < 0 || end < start || end > record.getSequenceLength()) {
+                    throw new UserException.MalformedFile(bed, "invalid region: " + line);
+                }
+                regions.computeIfAbsent(tokens[0], k -> new ArrayList<>())
+                        .add(new int[] {start, end});
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(bed, e);
+        }
+        final FastaNsIndex index = new FastaNsIndex();
+        for (final SAMSequenceRecord record : dictionary.getSequences()) {
+            addMaskedBlocks(index, record,
+                    regions.getOrDefault(record.getSequenceName(), Collections.emptyList()));
+        }
+        return index;
+    }
+
+    // adds the complement of the accessible regions for the contig to the index
+    private static void addMaskedBlocks(final FastaNsIndex index, final SAMSequenceRecord record,
+            final List<int[]> accessible) {
+        accessible.sort(Comparator.comparingInt(region -> region[0]));
+        final int length = record.getSequenceLength();
+        final int[] starts = new int[accessible.size() + 1];
+        final int[] ends = new int[accessible.size() + 1];
+        int numberOfBlocks = 0;
+        // last accessible position (1-based)
+        int lastAccessible = 0;
+        for (final int[] region : accessible) {
+            // the 0-based start is the last masked position (1-based) before the region
+            if (region[0] > lastAccessible) {
+                starts[numberOfBlocks] = lastAccessible + 1;
+                ends[numberOfBlocks++] = region[0];
+            }
+            lastAccessible = Math.max(lastAccessible, region[1]);
+        }
+        if (lastAccessible < length) {
+            starts[numberOfBlocks] = lastAccessible + 1;
+            ends[numberOfBlocks++] = length;
+        }
+        index.add(record.getSequenceName(), length, Arrays.copyOf(starts, numberOfBlocks),
+                Arrays.copyOf(ends, numberOfBlocks));
+    }
+
+    private static int parseInt(final File file, final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new UserException.MalformedFile(file, "invalid number: " + value);
+        }
+    }
+
+    @Override
+    public int countNsRegion(final Locatable region) {
+        return maskedBlocks.countNs(region);
+    }
+
+    @Override
+    public SAMSequenceDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /** Nothing to close: the mask is in memory. */
+    @Override
+    public void close() {}
+}
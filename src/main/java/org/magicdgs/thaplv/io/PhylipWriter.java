@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simple class to write a multi-sample alignment in interleaved (relaxed) PHYLIP format.
+ *
+ * The header with the number of sequences and the alignment length is written on construction.
+ * After that, the lines of the alignment should be added with {@link #addLine(byte[], int, int)}
+ * in blocks: one line for each sequence, in the same order as the names. Lines in the first block
+ * are preceded by the sequence name, padded to the longest name (and at least 10 characters, so
+ * short names are also valid in strict PHYLIP); blocks are separated by an empty line.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PhylipWriter implements Closeable {
+
+    // minimum width for the names (strict PHYLIP)
+    private static final int MIN_NAME_WIDTH = 10;
+
+    private final File file;
+
+    private final OutputStream stream;
+
+    // names padded with spaces
+    private final byte[][] paddedNames;
+
+    private final long alignmentLength;
+
+    // the next sequence to add a line
+    private int nextSequence;
+
+    // number of bases added for the current block
+    private int currentBlock;
+
+    // number of bases added for each sequence
+    private final long[] basesAdded;
+
+    /**
+     * Constructor with a file
+     *
+     * @param file            the file to output
+     * @param names           the names for the sequences in the alignment
+     * @param alignmentLength the length for all the sequences
+     * @param blockCompressed if {@code true}, the file is written in block-gzip (BGZF) format
+     *
+     * @throws IllegalArgumentException if the names are empty or contain white spaces
+     */
+    public PhylipWriter(final File file, final List<String> names, final long alignmentLength,
+            final boolean blockCompressed) throws FileNotFoundException {
+        Utils.nonNull(file);
+        Utils.nonEmpty(names, "empty names");
+        Utils.validateArg(alignmentLength >= 0, "negative alignment length");
+        final int nameWidth = Math.max(MIN_NAME_WIDTH,
+                names.stream().mapToInt(String::length).max().getAsInt() + 1);
+        this.paddedNames = new byte[names.size()][];
+        for (int i = 0; i < paddedNames.length; i++) {
+            final String name = names.get(i);
+            Utils.validateArg(!name.isEmpty() && !name.matches(".*\\s.*"),
+                    () -> "invalid name for PHYLIP: " + name);
+            paddedNames[i] = new byte[nameWidth];
+            Arrays.fill(paddedNames[i], (byte) ' ');
+            final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, paddedNames[i], 0, bytes.length);
+        }
+        this.file = file;
+        this.stream = (blockCompressed)
+                ? new BlockCompressedOutputStream(file)
+                : new BufferedOutputStream(new FileOutputStream(file));
+        this.alignmentLength = alignmentLength;
+        this.nextSequence = 0;
+        this.currentBlock = 0;
+        this.basesAdded = new long[names.size()];
+        write((names.size() + " " + alignmentLength + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write the next line in the alignment, for the next sequence in the current block. All the
+     * lines in a block should have the same length.
+     *
+     * @param bases  the array containing the bases to write
+     * @param offset the first base in the array to write
+     * @param length the number of bases to write
+     *
+     * @throws IllegalArgumentException if the line is longer than the rest of the alignment or
+     *                                  different from the previous lines in the block
+     */
+    public void addLine(final byte[] bases, final int offset, final int length) {
+        Utils.nonNull(bases, "null bases");
+        Utils.validateArg(offset >= 0 && length >= 0 && offset + length <= bases.length,
+                "invalid range of bases");
+        Utils.validateArg(basesAdded[nextSequence] + length <= alignmentLength,
+                "more bases than the alignment length");
+        if (nextSequence == 0) {
+            // a new block starts
+            if (basesAdded[0] != 0) {
+                write(new byte[] {'\n'});
+            }
+            currentBlock = length;
+        } else {
+            Utils.validateArg(length == currentBlock,
+                    "lines in the same block should have the same length");
+        }
+        if (basesAdded[nextSequence] == 0) {
+            write(paddedNames[nextSequence]);
+        }
+        try {
+            stream.write(bases, offset, length);
+            stream.write('\n');
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+        basesAdded[nextSequence] += length;
+        nextSequence = (nextSequence + 1) % paddedNames.length;
+    }
+
+    private void write(final byte[] bytes) {
+        try {
+            stream.write(bytes);
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IllegalStateException if the alignment is not complete
+     */
+    @Override
+    public void close() throws IOException {
+        stream.close();
+        for (final long added : basesAdded) {
+            if (added != alignmentLength) {
+                throw new IllegalStateException(
+                        "Alignment was closed before adding all the bases: " + file);
+            }
+        }
+    }
+}
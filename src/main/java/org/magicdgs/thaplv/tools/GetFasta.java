@@ -27,33 +27,45 @@
 
 package org.magicdgs.thaplv.tools;
 
+import org.magicdgs.thaplv.cmd.argumentcollections.MultiThreadComputationArgumentCollection;
 import org.magicdgs.thaplv.cmd.programgroups.ConversionProgramGroup;
 import org.magicdgs.thaplv.io.FastaWriter;
+import org.magicdgs.thaplv.io.PhylipWriter;
 
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.engine.FeatureContext;
 import org.broadinstitute.hellbender.engine.HaploidWalker;
 import org.broadinstitute.hellbender.engine.ReadsContext;
 import org.broadinstitute.hellbender.engine.ReferenceContext;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Simple tool for extract a FASTA file for each sample in a VCF substituting the variants in a
@@ -66,7 +78,8 @@ import java.util.Set;
         summary =
                 "Substitute in a provided FASTA file the variants in the VCF for each sample. Any missing haplotype will be output as an N. "
                         + "Provided intervals are regions of the VCF that will be used for update the reference, but the whole chromosome will be output "
-                        + "(regions outside the provided intervals will be the same as the reference).",
+                        + "(regions outside the provided intervals will be the same as the reference). "
+                        + "Alternatively, a multi-sample alignment (FASTA or interleaved PHYLIP) could be output for each contig, or for each interval if provided (only the intervals are output in this case).",
         programGroup = ConversionProgramGroup.class)
 public final class GetFasta extends HaploidWalker {
 
@@ -76,21 +89,78 @@ public final class GetFasta extends HaploidWalker {
     @Argument(fullName = "width", shortName = "w", doc = "Output width for sequence lines", optional = true)
     public int sequenceWidth = 80;
 
+    @Argument(fullName = "block-compressed", shortName = "bgzip", doc = "Output the FASTA files in block-gzip (BGZF) format (.fasta.gz)", optional = true)
+    public boolean blockCompressed = false;
+
+    @Argument(fullName = "create-dictionary", shortName = "dict", doc = "Create a sequence dictionary (.dict) for each output FASTA file. The FASTA index (.fai) is always created for non-compressed output", optional = true)
+    public boolean createDictionary = false;
+
+    @Argument(fullName = "alignment-format", shortName = "alignment", doc = "Output a multi-sample alignment for each contig (or for each interval, if provided) instead of a FASTA file for each sample: FASTA (.fasta) or interleaved PHYLIP (.phy). The output prefix is followed by the contig name (or contig_start-end for intervals)", optional = true)
+    public AlignmentFormat alignmentFormat = null;
+
+    // the buffer is for sample sequences, so it should be smaller than the default
+    @ArgumentCollection
+    public MultiThreadComputationArgumentCollection multiThreadArgumentCollection =
+            new MultiThreadComputationArgumentCollection(1_000);
+
+    /** Format for the multi-sample alignment output. */
+    public enum AlignmentFormat {
+        /** Multi-sample FASTA (.fasta). */
+        FASTA(".fasta"),
+        /** Interleaved relaxed PHYLIP (.phy). */
+        PHYLIP(".phy");
+
+        private final String extension;
+
+        AlignmentFormat(final String extension) {
+            this.extension = extension;
+        }
+
+        /** Gets the extension for the output file. */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    // initial number of variants to allocate for the substitutions in a contig
+    private static final int INITIAL_NUMBER_OF_VARIANTS = 10_000;
+
+    // number of bases patched at once when writing a sequence
+    private static final int CHUNK_SIZE = 64 * 1024;
+
     // maps sample and it's writer
     private Map<String, FastaWriter> writerMap;
 
-    // maps sample and sequence for mutation)
-    private Map<String, ReferenceSequence> sequenceMap;
+    // the samples in the order of the substitution columns
+    private List<String> samples;
+
+    // 1-based positions for the substitutions in the current contig (in order of addition)
+    private int[] substitutionPositions;
+
+    // for each substitution in the current contig, the base for each sample (0 if not present)
+    private byte[][] substitutionBases;
 
-    // stort the samples instead of passing them to the methods
-    private Set<String> samples;
+    // number of substitutions stored for the current contig
+    private int numberOfSubstitutions;
 
     // the reference file
     private IndexedFastaSequenceFile reference;
 
+    // executor for writing the sequences of each sample
+    private Optional<ThreadPoolExecutor> executor;
+
+    // sequences submitted to the executor and not finished yet
+    private final List<Future<?>> pendingSequences = new ArrayList<>();
+
     // last visited contig
     private String lastContig = null;
 
+    // extension for the alignment files
+    private String alignmentExtension;
+
+    // intervals pending to output as alignments (null if whole contigs are output)
+    private Deque<SimpleInterval> pendingRegions;
+
     @Override
     public boolean requiresReference() {
         return true;
@@ -115,18 +185,32 @@ public final class GetFasta extends HaploidWalker {
                     new File(referenceArguments.getReferenceFileName() + ".fai"),
                     referenceArguments.getReferenceFile());
         }
-        samples = new HashSet<>(getHeaderForVariants().getSampleNamesInOrder());
+        samples = new ArrayList<>(getHeaderForVariants().getSampleNamesInOrder());
         writerMap = new HashMap<>(samples.size());
-        for (final String s : samples) {
-            final File file = new File(outputPrefix + s + ".fasta");
+        if (alignmentFormat != null) {
+            alignmentExtension = alignmentFormat.getExtension() + ((blockCompressed) ? ".gz" : "");
+            if (intervalArgumentCollection.intervalsSpecified()) {
+                pendingRegions = new ArrayDeque<>(
+                        intervalArgumentCollection.getIntervals(getReferenceDictionary()));
+            }
+        }
+        final String extension = (blockCompressed) ? ".fasta.gz" : ".fasta";
+        // in alignment mode, there are no writers for each sample
+        for (final String s : (alignmentFormat == null) ? samples : new ArrayList<String>()) {
+            final File file = new File(outputPrefix + s + extension);
             try {
                 IOUtil.assertFileIsWritable(file);
-                writerMap.put(s, new FastaWriter(file, sequenceWidth));
+                // the index is generated while writing, avoiding to re-read the output
+                writerMap.put(s, new FastaWriter(file, sequenceWidth, blockCompressed,
+                        !blockCompressed, createDictionary));
             } catch (FileNotFoundException | SAMException e) {
                 throw new UserException.CouldNotCreateOutputFile(file, e.getMessage(), e);
             }
         }
-        sequenceMap = new HashMap<>(samples.size());
+        substitutionPositions = new int[INITIAL_NUMBER_OF_VARIANTS];
+        substitutionBases = new byte[INITIAL_NUMBER_OF_VARIANTS][];
+        numberOfSubstitutions = 0;
+        executor = multiThreadArgumentCollection.getFixedThreadPoolWithBoundedQueue();
     }
 
     @Override
@@ -138,80 +222,305 @@ public final class GetFasta extends HaploidWalker {
             logger.warn("Indel variant ignored at position {}:{}", variant.getContig(), startPos);
             return;
         }
-        lastContig = updateSequenceMap(variant.getContig(), lastContig, reference);
-        for (final Genotype genotype : variant.getGenotypes(samples)) {
-            // TODO: putative difference with previous regions, assuming haploids directly
-            final Allele al = genotype.getAllele(0);
-            if (al.isNoCall()) {
-                mutateSequenceForSample(genotype.getSampleName(), startPos, (byte) 'N');
-            } else {
-                mutateSequenceForSample(genotype.getSampleName(), startPos, al.getBases()[0]);
+        if (!variant.getContig().equals(lastContig)) {
+            outputSequences(lastContig);
+            lastContig = variant.getContig();
+        }
+        final byte[] bases = new byte[samples.size()];
+        for (int i = 0; i < bases.length; i++) {
+            final Genotype genotype = variant.getGenotype(samples.get(i));
+            if (genotype != null) {
+                // TODO: putative difference with previous regions, assuming haploids directly
+                final Allele al = genotype.getAllele(0);
+                bases[i] = (al.isNoCall()) ? (byte) 'N' : al.getBases()[0];
             }
         }
+        addSubstitution(startPos, bases);
     }
 
     @Override
     public Object onTraversalSuccess() {
         outputSequences(lastContig);
+        if (pendingRegions != null) {
+            // intervals after the last variant are output without substitutions
+            while (!pendingRegions.isEmpty()) {
+                submitAlignment(pendingRegions.poll(), new int[0], new byte[0][]);
+            }
+        }
+        waitForPendingSequences();
         return null;
     }
 
     /**
-     * Mutate the sequence for this sample witht he base provided
+     * Store the bases for each sample at the position. Only the bases are kept in memory, so the
+     * memory scales with the number of variants and samples instead of the contig length.
      *
-     * @param sampleName the sample to mutate
-     * @param position   1-based position
-     * @param base       the new base in the position
+     * @param position 1-based position
+     * @param bases    the new base for each sample in the position (0 if not modified)
      */
-    private void mutateSequenceForSample(final String sampleName, final int position,
-            final byte base) {
-        sequenceMap.get(sampleName).getBases()[position - 1] = base;
+    private void addSubstitution(final int position, final byte[] bases) {
+        if (numberOfSubstitutions == substitutionPositions.length) {
+            final int newLength = substitutionPositions.length * 2;
+            substitutionPositions = Arrays.copyOf(substitutionPositions, newLength);
+            substitutionBases = Arrays.copyOf(substitutionBases, newLength);
+        }
+        substitutionPositions[numberOfSubstitutions] = position;
+        substitutionBases[numberOfSubstitutions] = bases;
+        numberOfSubstitutions++;
     }
 
     /**
-     * Update the sequence map and output sequences if possible
-     *
-     * @param currentContig the current contig
-     * @param lastContig    the last contig
-     * @param sequence      the sequence file
+     * Submits the sequence for each sample (or the alignments) to be written and clears the
+     * substitutions. The reference is read only once and the substitutions for each sample are
+     * patched on the fly while writing. If several threads are used, the sequences are written in
+     * the background while the variants for the next contig are applied; before submitting a new
+     * contig, the previous one should be finished, so the order of sequences in each file is
+     * deterministic.
+     */
+    private void outputSequences(final String contig) {
+        waitForPendingSequences();
+        if (contig == null) {
+            return;
+        }
+        // substitutions sorted by position (stable, so the last variant at a position wins)
+        final Integer[] order = new Integer[numberOfSubstitutions];
+        for (int i = 0; i < numberOfSubstitutions; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> substitutionPositions[i]));
+        final int[] positions = new int[numberOfSubstitutions];
+        final byte[][] bases = new byte[numberOfSubstitutions][];
+        for (int i = 0; i < numberOfSubstitutions; i++) {
+            positions[i] = substitutionPositions[order[i]];
+            bases[i] = substitutionBases[order[i]];
+        }
+        // clear the substitutions for the next contig
+        Arrays.fill(substitutionBases, 0, numberOfSubstitutions, null);
+        numberOfSubstitutions = 0;
+        if (alignmentFormat == null) {
+            outputSampleSequences(contig, positions, bases);
+        } else {
+            outputAlignments(contig, positions, bases);
+        }
+    }
+
+    /** Submits the whole contig to the writer of each sample. */
+    private void outputSampleSequences(final String contig, final int[] positions,
+            final byte[][] bases) {
+        // TODO: we should only output the requested intervals sequence
+        // intervalArgumentCollection.getIntervals(getReferenceDictionary());
+        logger.info("Writting sequence {} for each sample.", contig);
+        final byte[] template = reference.getSequence(contig).getBases();
+        for (int s = 0; s < samples.size(); s++) {
+            final int sampleIndex = s;
+            final FastaWriter writer = writerMap.get(samples.get(s));
+            submit(() -> {
+                writeSequence(writer, contig, template, 1, positions, bases, sampleIndex);
+                logger.debug("Finished " + samples.get(sampleIndex));
+            });
+        }
+    }
+
+    /**
+     * Submits the alignment for the contig or for its intervals. Pending intervals in previous
+     * contigs (without variants) are submitted too.
+     */
+    private void outputAlignments(final String contig, final int[] positions,
+            final byte[][] bases) {
+        if (pendingRegions == null) {
+            submitAlignment(new SimpleInterval(contig, 1,
+                    getReferenceDictionary().getSequence(contig).getSequenceLength()),
+                    positions, bases);
+            return;
+        }
+        // intervals are in the same order as the variants
+        int lastRegion = -1;
+        int index = 0;
+        for (final SimpleInterval region : pendingRegions) {
+            if (region.getContig().equals(contig)) {
+                lastRegion = index;
+            }
+            index++;
+        }
+        for (int i = 0; i <= lastRegion; i++) {
+            final SimpleInterval region = pendingRegions.poll();
+            if (region.getContig().equals(contig)) {
+                submitAlignment(region, positions, bases);
+            } else {
+                submitAlignment(region, new int[0], new byte[0][]);
+            }
+        }
+    }
+
+    /**
+     * Submits the alignment for a region, using only the substitutions within it.
      *
-     * @return the contig in current use
+     * @param region    the region to output
+     * @param positions 1-based sorted positions for the substitutions in the region contig
+     * @param bases     for each substitution, the base for each sample (0 if not modified)
      */
-    private String updateSequenceMap(final String currentContig, final String lastContig,
-            final IndexedFastaSequenceFile sequence) {
-        if (currentContig.equals(lastContig)) {
-            return lastContig;
+    private void submitAlignment(final SimpleInterval region, final int[] positions,
+            final byte[][] bases) {
+        final String name = (pendingRegions == null) ? region.getContig()
+                : region.getContig() + "_" + region.getStart() + "-" + region.getEnd();
+        final File file = new File(outputPrefix + name + alignmentExtension);
+        logger.info("Writting alignment for {} into {}.", name, file);
+        final byte[] template = reference.getSubsequenceAt(region.getContig(),
+                region.getStart(), region.getEnd()).getBases();
+        final int from = firstPositionIndex(positions, region.getStart());
+        final int to = firstPositionIndex(positions, region.getEnd() + 1);
+        final int[] regionPositions = Arrays.copyOfRange(positions, from, to);
+        final byte[][] regionBases = Arrays.copyOfRange(bases, from, to);
+        submit(() -> writeAlignment(file, template, region.getStart(), regionPositions,
+                regionBases));
+    }
+
+    // index of the first sorted position equal or greater than the position provided
+    private static int firstPositionIndex(final int[] positions, final int position) {
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (positions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
-        if (lastContig != null) {
-            outputSequences(lastContig);
+        return low;
+    }
+
+    /** Runs the task in the executor (if any) or in the current thread. */
+    private void submit(final Runnable task) {
+        if (executor.isPresent()) {
+            pendingSequences.add(executor.get().submit(task));
         } else {
-            sequenceMap = new HashMap<>(samples.size());
+            task.run();
         }
-        // speed-up analysis making a sequence template (only needs to read the file once)
-        final ReferenceSequence template = sequence.getSequence(currentContig);
-        for (final String s : samples) {
-            sequenceMap.put(s, new ReferenceSequence(currentContig, template.getContigIndex(),
-                    Arrays.copyOf(template.getBases(), template.length())));
+    }
+
+    /**
+     * Writes the alignment for all the samples in a region.
+     *
+     * @param file          the file to write in
+     * @param template      the reference sequence for the region (not modified)
+     * @param templateStart 1-based position for the first base in the template
+     * @param positions     1-based sorted positions for the substitutions in the region
+     * @param bases         for each substitution, the base for each sample (0 if not modified)
+     */
+    private void writeAlignment(final File file, final byte[] template, final int templateStart,
+            final int[] positions, final byte[][] bases) {
+        try {
+            if (alignmentFormat == AlignmentFormat.FASTA) {
+                try (final FastaWriter writer = new FastaWriter(file, sequenceWidth,
+                        blockCompressed, !blockCompressed, createDictionary)) {
+                    for (int s = 0; s < samples.size(); s++) {
+                        writeSequence(writer, samples.get(s), template, templateStart,
+                                positions, bases, s);
+                    }
+                }
+            } else {
+                try (final PhylipWriter writer =
+                        new PhylipWriter(file, samples, template.length, blockCompressed)) {
+                    final int width = (sequenceWidth <= 0) ? template.length : sequenceWidth;
+                    final byte[] line = new byte[Math.min(width, template.length)];
+                    int next = 0;
+                    for (int start = 0; start < template.length; start += line.length) {
+                        final int length = Math.min(line.length, template.length - start);
+                        // the substitutions in the block are the same for every sample
+                        int blockNext = next;
+                        for (int s = 0; s < samples.size(); s++) {
+                            System.arraycopy(template, start, line, 0, length);
+                            blockNext = patchChunk(line, templateStart + start, length,
+                                    positions, bases, s, next);
+                            writer.addLine(line, 0, length);
+                        }
+                        next = blockNext;
+                    }
+                }
+            }
+        } catch (IOException | SAMException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e.getMessage(), e);
         }
-        return currentContig;
+        logger.debug("Finished " + file);
     }
 
     /**
-     * Write down all the sequences stored in the map and clear it
+     * Writes the sequence for a sample, copying the reference by chunks and patching them with
+     * the substitutions for the sample.
+     *
+     * @param writer        the writer for the sample
+     * @param name          the name of the sequence
+     * @param template      the reference sequence (not modified)
+     * @param templateStart 1-based position for the first base in the template
+     * @param positions     1-based sorted positions for the substitutions
+     * @param bases         for each substitution, the base for each sample (0 if not modified)
+     * @param sampleIndex   the index of the sample in the substitution bases
      */
-    private void outputSequences(final String contig) {
-        // TODO: we should only output the requested intervals sequence
-        // intervalArgumentCollection.getIntervals(getReferenceDictionary());
-        logger.info("Writting sequence {} for each sample.", contig);
-        for (final Map.Entry<String, ReferenceSequence> entry : sequenceMap.entrySet()) {
-            writerMap.get(entry.getKey()).addWholeSequence(entry.getValue());
-            logger.debug("Finished " + entry.getKey());
+    private static void writeSequence(final FastaWriter writer, final String name,
+            final byte[] template, final int templateStart, final int[] positions,
+            final byte[][] bases, final int sampleIndex) {
+        final byte[] chunk = new byte[Math.min(CHUNK_SIZE, template.length)];
+        writer.writeSequenceName(name);
+        int next = 0;
+        for (int start = 0; start < template.length; start += chunk.length) {
+            final int length = Math.min(chunk.length, template.length - start);
+            System.arraycopy(template, start, chunk, 0, length);
+            next = patchChunk(chunk, templateStart + start, length, positions, bases,
+                    sampleIndex, next);
+            writer.addBases(chunk, 0, length);
+        }
+        writer.endSequence();
+    }
+
+    /**
+     * Patches a chunk of the reference with the substitutions for a sample.
+     *
+     * @param chunk       the chunk of the reference
+     * @param chunkStart  1-based position for the first base in the chunk
+     * @param length      the number of bases in the chunk
+     * @param positions   1-based sorted positions for the substitutions (none before the chunk)
+     * @param bases       for each substitution, the base for each sample (0 if not modified)
+     * @param sampleIndex the index of the sample in the substitution bases
+     * @param next        the index of the first substitution to check
+     *
+     * @return the index of the first substitution after the chunk
+     */
+    private static int patchChunk(final byte[] chunk, final int chunkStart, final int length,
+            final int[] positions, final byte[][] bases, final int sampleIndex, int next) {
+        for (; next < positions.length && positions[next] < chunkStart + length; next++) {
+            final byte base = bases[next][sampleIndex];
+            if (base != 0) {
+                chunk[positions[next] - chunkStart] = base;
+            }
+        }
+        return next;
+    }
+
+    /** Waits until all the sequences submitted to the executor are written. */
+    private void waitForPendingSequences() {
+        try {
+            for (final Future<?> future : pendingSequences) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while writing sequences", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while writing sequences", e.getCause());
+        } finally {
+            pendingSequences.clear();
         }
-        sequenceMap.clear();
     }
 
     @Override
     public void closeTool() {
+        if (executor != null) {
+            executor.ifPresent(ThreadPoolExecutor::shutdown);
+        }
         CloserUtil.close(reference);
         for (final FastaWriter w : writerMap.values()) {
             CloserUtil.close(w);
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools;
+
+import org.magicdgs.thaplv.cmd.programgroups.ReferenceProgramGroup;
+import org.magicdgs.thaplv.io.FastaNsIndex;
+
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
+import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.CommandLineProgram;
+import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.File;
+
+/**
+ * Tool to generate or validate the N index for a reference (see {@link FastaNsIndex}).
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+@CommandLineProgramProperties(
+        summary = "Generate the index with the blocks of Ns in a reference FASTA file. "
+                + "IBD tools use this index to count the available sites in each window without reading the reference. "
+                + "The index is written in binary format if the output file has the " + FastaNsIndex.BINARY_EXTENSION + " extension; it could be used as accessibility mask in IBD tools without the reference. "
+                + "In validation mode, the existing index is checked against the reference instead.",
+        oneLineSummary = "Index (or validate the index of) the Ns in a reference FASTA file.",
+        programGroup = ReferenceProgramGroup.class)
+public final class IndexReferenceNs extends CommandLineProgram {
+
+    @Argument(fullName = StandardArgumentDefinitions.REFERENCE_LONG_NAME, shortName = StandardArgumentDefinitions.REFERENCE_SHORT_NAME, doc = "Reference FASTA file to index", optional = false)
+    public File reference;
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Index file. Default: the reference file with the " + FastaNsIndex.NS_INDEX_EXTENSION + " extension", optional = true)
+    public File indexFile = null;
+
+    @Argument(fullName = "validate", doc = "Validate the existing index against the reference instead of generating it", optional = true)
+    public boolean validate = false;
+
+    @Override
+    protected Object doWork() {
+        IOUtil.assertFileIsReadable(reference);
+        if (indexFile == null) {
+            indexFile = FastaNsIndex.getIndexFile(reference);
+        }
+        final ReferenceSequenceFile referenceFile =
+                ReferenceSequenceFileFactory.getReferenceSequenceFile(reference);
+        try {
+            final FastaNsIndex index = FastaNsIndex.create(referenceFile);
+            if (validate) {
+                IOUtil.assertFileIsReadable(indexFile);
+                if (!readIndex(indexFile).equals(index)) {
+                    throw new UserException.MalformedFile(indexFile,
+                            "N index does not match the reference " + reference);
+                }
+                logger.info("N index {} is valid for {}", indexFile, reference);
+            } else {
+                if (isBinary(indexFile)) {
+                    index.writeBinary(indexFile);
+                } else {
+                    index.write(indexFile);
+                }
+                logger.info("N index written to {}", indexFile);
+            }
+            for (final String contig : index.getContigs()) {
+                logger.debug("{}: {} N blocks ({} Ns)", contig, index.getNumberOfBlocks(contig),
+                        index.countNs(contig, 1, index.getContigLength(contig)));
+            }
+        } finally {
+            CloserUtil.close(referenceFile);
+        }
+        return null;
+    }
+
+    private static boolean isBinary(final File indexFile) {
+        return indexFile.getName().endsWith(FastaNsIndex.BINARY_EXTENSION);
+    }
+
+    private static FastaNsIndex readIndex(final File indexFile) {
+        return (isBinary(indexFile))
+                ? FastaNsIndex.readBinary(indexFile) : FastaNsIndex.read(indexFile);
+    }
+}
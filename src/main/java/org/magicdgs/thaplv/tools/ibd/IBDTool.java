@@ -27,11 +27,21 @@
 
 package org.magicdgs.thaplv.tools.ibd;
 
+import org.magicdgs.thaplv.cmd.argumentcollections.SampleComparisonArgumentCollection;
 import org.magicdgs.thaplv.cmd.argumentcollections.SlidingWindowArgumentCollection;
+import org.magicdgs.thaplv.cmd.argumentcollections.TiledMultiThreadComputationArgumentCollection;
 import org.magicdgs.thaplv.haplotypes.filters.NumberOfMissingFilter;
+import org.magicdgs.thaplv.io.FastaNsCounter;
+import org.magicdgs.thaplv.io.FastaNsIndex;
+import org.magicdgs.thaplv.io.MaskNsCounter;
+import org.magicdgs.thaplv.io.NsCounter;
 import org.magicdgs.thaplv.tools.ibd.engine.IBDOutput;
 import org.magicdgs.thaplv.tools.ibd.engine.IBDcollector;
 
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFHeader;
 import org.broadinstitute.hellbender.cmdline.Argument;
@@ -42,10 +52,18 @@ import org.broadinstitute.hellbender.engine.HaploidWalker;
 import org.broadinstitute.hellbender.engine.ReadsContext;
 import org.broadinstitute.hellbender.engine.ReferenceContext;
 import org.broadinstitute.hellbender.engine.filters.VariantFilter;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
 
 /**
  * Abstract tool for IBD computation, both pair-wise or against the reference.
  *
+ * The available sites in each window are computed from the Ns in the reference, or from an
+ * accessibility mask. In the latter case, the reference is not required and the sequence
+ * dictionary is taken from the variants header.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
 public abstract class IBDTool extends HaploidWalker {
@@ -53,26 +71,34 @@ public abstract class IBDTool extends HaploidWalker {
     @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Output prefix for the divergence (.diff) and IBD tracks (.ibd)", optional = true)
     public String outputPrefix;
 
+    @Argument(fullName = "accessibility-mask", shortName = "mask", doc = "Accessibility mask to compute the available sites in each window instead of counting the Ns in the reference. It could be a BED file with the accessible regions, or an N index from IndexReferenceNs (" + FastaNsIndex.NS_INDEX_EXTENSION + " or " + FastaNsIndex.BINARY_EXTENSION + "). If provided, the reference is not required.", optional = true)
+    public File accessibilityMask = null;
+
     @ArgumentCollection
     public SlidingWindowArgumentCollection slidingWindowArgumentCollection =
             new SlidingWindowArgumentCollection(500_000, 100_000);
 
+    @ArgumentCollection
+    public TiledMultiThreadComputationArgumentCollection multiThreadArgumentCollection =
+            new TiledMultiThreadComputationArgumentCollection(1_000);
+
+    @ArgumentCollection
+    public SampleComparisonArgumentCollection sampleComparisonArgumentCollection =
+            new SampleComparisonArgumentCollection();
+
     @Argument(fullName = "minimum-differences", shortName = "md", doc = "Threshold for number of differences per site in the window to output as an IBD", optional = true)
     public double minimumDifferences = 0.0005;
 
     @Argument(fullName = "output-differences", shortName = "out-diff", doc = "Output the divergence per window (.diff file) in addition to the IBD tracks")
     public boolean outputDiff = false;
 
+    @Argument(fullName = "differences-format", shortName = "diff-format", doc = "Format for the divergence per window: TEXT (.diff), BGZF (block-gzipped text, .diff.gz) or BINARY (compact table, .diff.bin). The binary table has 4-bytes big-endian integers and strings as their length followed by the ASCII bytes: the magic bytes IBDDIFF and a version byte, the number of pairs N, the names of the first and second sample for each pair and, for each window until the end of the file, contig, start, end, available sites, number of variants and the number of missing sites and differences for each of the N pairs", optional = true)
+    public IBDOutput.DiffFormat diffFormat = IBDOutput.DiffFormat.TEXT;
+
     protected IBDOutput output;
 
     protected VCFHeader header;
 
-    // TODO: remove this requirement to don't count Ns in the window
-    @Override
-    public boolean requiresReference() {
-        return true;
-    }
-
     @Override
     protected boolean requiresOutputPloidy() {
         return false;
@@ -94,8 +120,49 @@ public abstract class IBDTool extends HaploidWalker {
     /** Get the IBD collector for this tool. */
     protected abstract IBDcollector getIBDcollector();
 
+    /**
+     * Get the counter for the Ns in each window: from the accessibility mask if provided;
+     * otherwise, from the reference.
+     */
+    protected NsCounter getNsCounter() {
+        if (accessibilityMask != null) {
+            logger.info("Available sites will be computed from the mask {}", accessibilityMask);
+            return new MaskNsCounter(accessibilityMask, getSequenceDictionary());
+        }
+        try {
+            return new FastaNsCounter(referenceArguments.getReferenceFile());
+        } catch (FileNotFoundException e) {
+            throw new UserException.MissingReferenceFaiFile(
+                    new File(referenceArguments.getReferenceFileName() + ".fai"),
+                    referenceArguments.getReferenceFile());
+        }
+    }
+
+    /** Get the sequence dictionary from the reference if provided; otherwise, from the header. */
+    private SAMSequenceDictionary getSequenceDictionary() {
+        final SAMSequenceDictionary dictionary;
+        if (referenceArguments.getReferenceFile() != null) {
+            final ReferenceSequenceFile reference = ReferenceSequenceFileFactory
+                    .getReferenceSequenceFile(referenceArguments.getReferenceFile());
+            dictionary = reference.getSequenceDictionary();
+            CloserUtil.close(reference);
+        } else {
+            dictionary = header.getSequenceDictionary();
+        }
+        if (dictionary == null || dictionary.isEmpty()) {
+            throw new UserException.BadInput("A sequence dictionary is required to use an "
+                    + "accessibility mask: provide a reference with a dictionary or a variants "
+                    + "file with contig lines (including length) in the header");
+        }
+        return dictionary;
+    }
+
     @Override
     protected String[] customCommandLineValidation() {
+        if (accessibilityMask == null && referenceArguments.getReferenceFile() == null) {
+            throw new UserException.MissingReference("A reference or an accessibility mask is "
+                    + "required to compute the available sites");
+        }
         // validate teh sliding window arguments
         slidingWindowArgumentCollection.validateArguments();
         return super.customCommandLineValidation();
@@ -104,7 +171,8 @@ public abstract class IBDTool extends HaploidWalker {
     @Override
     public void onTraversalStart() {
         header = getHeaderForVariants();
-        output = new IBDOutput(outputPrefix, getIBDcollector(), minimumDifferences, !outputDiff);
+        output = new IBDOutput(outputPrefix, getIBDcollector(), minimumDifferences, !outputDiff,
+                diffFormat);
     }
 
     @Override
@@ -26,15 +26,16 @@
  */
 package org.magicdgs.thaplv.tools.ibd;
 
+import org.magicdgs.thaplv.cmd.argumentcollections.SampleComparisonArgumentCollection;
 import org.magicdgs.thaplv.cmd.programgroups.AnalysisProgramGroup;
-import org.magicdgs.thaplv.io.FastaNsCounter;
+import org.magicdgs.thaplv.io.NsCounter;
 import org.magicdgs.thaplv.tools.ibd.engine.IBDcollector;
+import org.magicdgs.thaplv.tools.ibd.engine.SamplePairIndex;
 
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.exceptions.UserException;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.util.List;
 
 /**
  * Tool for computing IBD regions
@@ -45,23 +46,44 @@ import java.io.FileNotFoundException;
         summary =
                 "Identify identity-by-descent (IBD) regions using the approach described in Langley et. al 2012, Genetics 192(2). "
                         + "Pairwise differences between individuals are computed in windows, and called as IBD tracks if the "
-                        + "differences per site are smaller than a threshold.",
+                        + "differences per site are smaller than a threshold. Comparisons could be restricted to pairs within/between "
+                        + "groups of samples or to a list of pairs.",
         oneLineSummary = "Compute IBD regions using pair-wise differences between individuals.",
         programGroup = AnalysisProgramGroup.class)
 public final class IBDcompute extends IBDTool {
 
     @Override
     protected IBDcollector getIBDcollector() {
-        final FastaNsCounter nCounter;
+        final NsCounter nCounter = getNsCounter();
+        return new IBDcollector(getSamplePairs(), nCounter,
+                slidingWindowArgumentCollection.windowSize,
+                slidingWindowArgumentCollection.stepSize, multiThreadArgumentCollection);
+    }
+
+    /** Gets the pairs to compare: all the pairs if the comparisons are not restricted. */
+    private SamplePairIndex getSamplePairs() {
+        final List<String> sampleNames = header.getSampleNamesInOrder();
+        final SampleComparisonArgumentCollection comparisons = sampleComparisonArgumentCollection;
+        if (!comparisons.restrictComparisons()) {
+            return SamplePairIndex.allPairs(sampleNames);
+        }
+        final SamplePairIndex pairs;
         try {
-            nCounter = new FastaNsCounter(referenceArguments.getReferenceFile());
-        } catch (FileNotFoundException e) {
-            throw new UserException.MissingReferenceFaiFile(
-                    new File(referenceArguments.getReferenceFileName() + ".fai"),
-                    referenceArguments.getReferenceFile());
+            if (comparisons.sampleGroups != null) {
+                pairs = SamplePairIndex.fromGroups(sampleNames,
+                        comparisons.readSampleGroups(sampleNames),
+                        comparisons.groupComparison
+                                == SampleComparisonArgumentCollection.GroupComparison.WITHIN);
+            } else {
+                pairs = SamplePairIndex.fromPairs(sampleNames,
+                        comparisons.readSamplePairs(sampleNames));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new UserException.BadInput(e.getMessage());
         }
-        return new IBDcollector(header, nCounter,
-                slidingWindowArgumentCollection.windowSize,
-                slidingWindowArgumentCollection.stepSize);
+        logger.info("Computing {} pairs out of {} possible comparisons.",
+                pairs.getNumberOfPairs(),
+                (long) sampleNames.size() * (sampleNames.size() - 1) / 2);
+        return pairs;
     }
 }
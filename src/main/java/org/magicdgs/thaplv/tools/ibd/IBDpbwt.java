@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd;
+
+import org.magicdgs.thaplv.cmd.programgroups.AnalysisProgramGroup;
+import org.magicdgs.thaplv.haplotypes.filters.HaplotypeFilterLibrary;
+import org.magicdgs.thaplv.haplotypes.filters.NumberOfMissingFilter;
+import org.magicdgs.thaplv.tools.ibd.engine.PBWTMatcher;
+import org.magicdgs.thaplv.tools.ibd.engine.PBWTOutput;
+
+import com.google.common.annotations.VisibleForTesting;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.engine.FeatureContext;
+import org.broadinstitute.hellbender.engine.HaploidWalker;
+import org.broadinstitute.hellbender.engine.ReadsContext;
+import org.broadinstitute.hellbender.engine.ReferenceContext;
+import org.broadinstitute.hellbender.engine.filters.VariantFilter;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.util.List;
+
+/**
+ * Tool for computing IBD regions as long shared matches between haplotypes, using the positional
+ * Burrows-Wheeler transform (see {@link PBWTMatcher}).
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+@CommandLineProgramProperties(
+        summary =
+                "Identify identity-by-descent (IBD) regions as long shared matches between haplotypes, using the positional Burrows-Wheeler transform (PBWT) described in Durbin 2014, Bioinformatics 30(9). "
+                        + "The time is linear in the number of haplotypes times the number of sites plus the number of reported tracks, so it scales to large number of samples. "
+                        + "Only biallelic sites without missing genotypes are used, and the output has the same format as the IBD tracks (.ibd) from IBDcompute.",
+        oneLineSummary = "Compute IBD regions using long shared matches between haplotypes (PBWT).",
+        programGroup = AnalysisProgramGroup.class)
+public final class IBDpbwt extends HaploidWalker {
+
+    @VisibleForTesting
+    static final String MINIMUM_LENGTH_ARGNAME = "minimum-length";
+    @VisibleForTesting
+    static final String MINIMUM_SITES_ARGNAME = "minimum-sites";
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Output prefix for the IBD tracks (.ibd)", optional = false)
+    public String outputPrefix;
+
+    @Argument(fullName = MINIMUM_LENGTH_ARGNAME, shortName = "ml", doc = "Minimum length (in bp, from the first to the last site) of a shared match to output as an IBD track", optional = true)
+    public int minimumLength = 500_000;
+
+    @Argument(fullName = MINIMUM_SITES_ARGNAME, shortName = "ms", doc = "Minimum number of sites of a shared match to output as an IBD track", optional = true)
+    public int minimumSites = 100;
+
+    private PBWTOutput output;
+
+    private PBWTMatcher matcher;
+
+    @Override
+    protected boolean requiresOutputPloidy() {
+        return false;
+    }
+
+    @Override
+    protected boolean allowsCheckOnly() {
+        return true;
+    }
+
+    /** Only biallelic variants without missing genotypes are used. */
+    @Override
+    protected VariantFilter makeVariantFilter() {
+        logger.warn("Variants with missing genotypes will be skipped");
+        return HaplotypeFilterLibrary.BIALLELIC_FILTER.and(new NumberOfMissingFilter(0));
+    }
+
+    @Override
+    protected String[] customCommandLineValidation() {
+        if (minimumLength < 1) {
+            throw new UserException.BadArgumentValue(MINIMUM_LENGTH_ARGNAME,
+                    String.valueOf(minimumLength), "should be a positive integer");
+        }
+        if (minimumSites < 1) {
+            throw new UserException.BadArgumentValue(MINIMUM_SITES_ARGNAME,
+                    String.valueOf(minimumSites), "should be a positive integer");
+        }
+        return super.customCommandLineValidation();
+    }
+
+    @Override
+    public void onTraversalStart() {
+        final List<String> sampleNames = getHeaderForVariants().getSampleNamesInOrder();
+        output = new PBWTOutput(outputPrefix, sampleNames);
+        matcher = new PBWTMatcher(sampleNames, minimumLength, minimumSites, output);
+    }
+
+    @Override
+    public void apply(final VariantContext variant, final ReadsContext readsContext,
+            final ReferenceContext referenceContext, final FeatureContext featureContext) {
+        matcher.addVariant(variant);
+    }
+
+    /** This reports the remaining matches and returns the number of IBD tracks. */
+    @Override
+    public Object onTraversalSuccess() {
+        matcher.finalizeMatches();
+        logger.info("Found {} IBD tracks.", output.getNumberOfTracks());
+        return output.getNumberOfTracks();
+    }
+
+    @Override
+    public void closeTool() {
+        if (output != null) {
+            output.close();
+        }
+    }
+}
@@ -27,15 +27,17 @@
 
 package org.magicdgs.thaplv.tools.ibd;
 
+import org.magicdgs.thaplv.cmd.argumentcollections.SampleComparisonArgumentCollection;
 import org.magicdgs.thaplv.cmd.programgroups.AnalysisProgramGroup;
-import org.magicdgs.thaplv.io.FastaNsCounter;
+import org.magicdgs.thaplv.io.NsCounter;
 import org.magicdgs.thaplv.tools.ibd.engine.IBDcollector;
 
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.exceptions.UserException;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Tool for compute IBD regions against a reference.
@@ -46,23 +48,58 @@ import java.io.FileNotFoundException;
         summary =
                 "Identify identity-by-descent (IBD) regions for the reference using the approach described in Langley et. al 2012, Genetics 192(2). "
                         + "Differences between individuals and the reference (from the VCF reference allele) are computed in windows, and called as IBD tracks if the "
-                        + "differences per site are smaller than a threshold.",
+                        + "differences per site are smaller than a threshold. Samples could be restricted to the ones in a groups file.",
         oneLineSummary = "Compute reference similarity (IBD regions w.r.t. reference) using the number of differences.",
         programGroup = AnalysisProgramGroup.class)
 public final class ReferenceSimilarity extends IBDTool {
 
     @Override
-    protected IBDcollector getIBDcollector() {
-        final FastaNsCounter nCounter;
-        try {
-            nCounter = new FastaNsCounter(referenceArguments.getReferenceFile());
-        } catch (FileNotFoundException e) {
-            throw new UserException.MissingReferenceFaiFile(
-                    new File(referenceArguments.getReferenceFileName() + ".fai"),
-                    referenceArguments.getReferenceFile());
+    protected String[] customCommandLineValidation() {
+        if (sampleComparisonArgumentCollection.samplePairs != null) {
+            throw new UserException.BadArgumentValue(
+                    SampleComparisonArgumentCollection.SAMPLE_PAIRS_LONG,
+                    sampleComparisonArgumentCollection.samplePairs.toString(),
+                    "samples are compared against the reference. Use --"
+                            + SampleComparisonArgumentCollection.SAMPLE_GROUPS_LONG
+                            + " to restrict the samples");
+        }
+        // samples are not compared between them, so only the samples in the groups are used
+        if (sampleComparisonArgumentCollection.groupComparison
+                != SampleComparisonArgumentCollection.GroupComparison.WITHIN) {
+            throw new UserException.BadArgumentValue(
+                    SampleComparisonArgumentCollection.GROUP_COMPARISON_LONG,
+                    sampleComparisonArgumentCollection.groupComparison.toString(),
+                    "samples are compared against the reference. Use --"
+                            + SampleComparisonArgumentCollection.SAMPLE_GROUPS_LONG
+                            + " to restrict the samples");
         }
-        return new IBDcollector(header.getSampleNamesInOrder(), nCounter,
+        return super.customCommandLineValidation();
+    }
+
+    @Override
+    protected IBDcollector getIBDcollector() {
+        final NsCounter nCounter = getNsCounter();
+        return new IBDcollector(getSampleNames(), nCounter,
                 slidingWindowArgumentCollection.windowSize,
-                slidingWindowArgumentCollection.stepSize);
+                slidingWindowArgumentCollection.stepSize, multiThreadArgumentCollection);
+    }
+
+    /** Gets the samples to compare with the reference, restricted to the groups if provided. */
+    private List<String> getSampleNames() {
+        final List<String> sampleNames = header.getSampleNamesInOrder();
+        if (sampleComparisonArgumentCollection.sampleGroups == null) {
+            return sampleNames;
+        }
+        final Map<String, String> groups =
+                sampleComparisonArgumentCollection.readSampleGroups(sampleNames);
+        final List<String> restricted = sampleNames.stream().filter(groups::containsKey)
+                .collect(Collectors.toList());
+        if (restricted.isEmpty()) {
+            throw new UserException.BadInput("no samples to compare in "
+                    + sampleComparisonArgumentCollection.sampleGroups);
+        }
+        logger.info("Computing reference similarity for {} out of {} samples.",
+                restricted.size(), sampleNames.size());
+        return restricted;
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import org.magicdgs.thaplv.io.AsciiTextBuilder;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary table for the pairwise differences (.diff.bin), as an alternative to the text
+ * output of {@link IBDOutput}. It can be converted into the text format with {@link
+ * #convertToText(File, OutputStream)}.
+ *
+ * All the numbers are 4-bytes big-endian signed integers (as read by {@link
+ * DataInputStream#readInt()}) and strings are encoded as their length (number of bytes) followed
+ * by the ASCII bytes, without terminator. The file contains, in order:
+ *
+ * <ol>
+ * <li>{@link #MAGIC}: the ASCII bytes {@code IBDDIFF} followed by a version byte (currently
+ * 1).</li>
+ * <li>The number of pairs (N).</li>
+ * <li>N pairs of strings, with the names of the first and second sample for each pair. The
+ * counts in the windows follow this order.</li>
+ * <li>Windows until the end of the file, each one with the contig (string), start, end,
+ * available sites and number of variants, followed by N pairs of integers with the number of
+ * missing sites and differences for each pair.</li>
+ * </ol>
+ *
+ * The differences per site in the text output are computed as {@code differences / (available
+ * sites - missing)}.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class BinaryDiffFile {
+
+    /** Extension for the binary table. */
+    public static final String EXTENSION = ".diff.bin";
+
+    /** Magic bytes at the start of the file, including the version. */
+    public static final byte[] MAGIC = {'I', 'B', 'D', 'D', 'I', 'F', 'F', 1};
+
+    // cannot be instantiated
+    private BinaryDiffFile() {}
+
+    /** Writes the header for the pairs into the buffer. */
+    static void writeHeader(final AsciiTextBuilder buffer, final SamplePairIndex pairs) {
+        buffer.append(MAGIC).appendBinary(pairs.getNumberOfPairs());
+        for (int pair = 0; pair < pairs.getNumberOfPairs(); pair++) {
+            writeString(buffer, pairs.getFirstSampleName(pair));
+            writeString(buffer, pairs.getSecondSampleName(pair));
+        }
+    }
+
+    /** Writes the information for the window (without the pairs) into the buffer. */
+    static void writeWindow(final AsciiTextBuilder buffer,
+            final PairwiseDifferencesWindow window) {
+        writeString(buffer, window.getContig());
+        buffer.appendBinary(window.getStart()).appendBinary(window.getEnd())
+                .appendBinary(window.getAvailableSites())
+                .appendBinary(window.getVariantsInWindow());
+    }
+
+    /** Writes the counts for a pair in the window into the buffer. */
+    static void writePair(final AsciiTextBuilder buffer, final PairwiseDifferencesWindow window,
+            final int pair) {
+        buffer.appendBinary(window.getNumberOfMissing(pair))
+                .appendBinary(window.getNumberOfDifferences(pair));
+    }
+
+    private static void writeString(final AsciiTextBuilder buffer, final String string) {
+        final byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+        buffer.appendBinary(bytes.length).append(bytes);
+    }
+
+    /**
+     * Converts a binary table into the text format written by {@link IBDOutput}.
+     *
+     * @param binaryFile the binary table.
+     * @param output     the stream to write the text into.
+     *
+     * @throws UserException.MalformedFile         if the file is not a binary table.
+     * @throws UserException.CouldNotReadInputFile if there is an IO error.
+     */
+    public static void convertToText(final File binaryFile, final OutputStream output) {
+        Utils.nonNull(binaryFile, "null file");
+        Utils.nonNull(output, "null output");
+        try (final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(binaryFile)))) {
+            final byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new UserException.MalformedFile(binaryFile, "not a binary .diff file");
+            }
+            final int numberOfPairs = input.readInt();
+            final byte[][] firstNames = new byte[numberOfPairs][];
+            final byte[][] secondNames = new byte[numberOfPairs][];
+            for (int pair = 0; pair < numberOfPairs; pair++) {
+                firstNames[pair] = readString(input);
+                secondNames[pair] = readString(input);
+            }
+            final AsciiTextBuilder buffer = new AsciiTextBuilder(1 << 16);
+            buffer.append(IBDOutput.DIFF_HEADER).append('\n');
+            for (byte[] contig = readContig(input); contig != null; contig = readContig(input)) {
+                final int start = input.readInt();
+                final int end = input.readInt();
+                final int availableSites = input.readInt();
+                final int variants = input.readInt();
+                for (int pair = 0; pair < numberOfPairs; pair++) {
+                    final int missing = input.readInt();
+                    final int differences = input.readInt();
+                    IBDOutput.appendDiffLine(buffer, firstNames[pair], secondNames[pair], contig,
+                            start, end, availableSites, variants, missing, differences);
+                }
+                buffer.writeTo(output);
+                buffer.clear();
+            }
+            buffer.writeTo(output);
+            output.flush();
+        } catch (EOFException e) {
+            throw new UserException.MalformedFile(binaryFile, "truncated binary .diff file");
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(binaryFile, e);
+        }
+    }
+
+    // returns null if there are no more windows
+    private static byte[] readContig(final DataInputStream input) throws IOException {
+        final int first = input.read();
+        if (first == -1) {
+            return null;
+        }
+        final int length = (first << 24) | (input.readUnsignedByte() << 16)
+                | (input.readUnsignedByte() << 8) | input.readUnsignedByte();
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static byte[] readString(final DataInputStream input) throws IOException {
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+}
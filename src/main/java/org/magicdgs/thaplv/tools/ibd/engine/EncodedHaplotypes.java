@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import htsjdk.samtools.util.Locatable;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.List;
+
+/**
+ * Haplotypes for a variant encoded as bitsets over the samples: one bit for the called samples and
+ * other for the samples carrying a non-reference allele. The variant is encoded only once, and
+ * then it could be added to every {@link PairwiseDifferencesWindow} overlapping it.
+ *
+ * WARNING: only works for haploid genotypes (the first allele is the one encoded).
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class EncodedHaplotypes implements Locatable {
+
+    private final VariantContext variant;
+
+    private final int numberOfSamples;
+
+    // bitset with the samples called
+    private final long[] called;
+
+    // bitset with the samples with the non-reference allele
+    private final long[] alternative;
+
+    /**
+     * Encodes the haplotypes for the samples in the variant.
+     *
+     * @param variant     the variant to encode.
+     * @param sampleNames the samples to encode, in order. Samples not present in the variant are
+     *                    encoded as missing.
+     */
+    public EncodedHaplotypes(final VariantContext variant, final List<String> sampleNames) {
+        Utils.nonNull(variant, "null variant");
+        Utils.nonNull(sampleNames, "null sampleNames");
+        this.variant = variant;
+        this.numberOfSamples = sampleNames.size();
+        final int words = (numberOfSamples + Long.SIZE - 1) / Long.SIZE;
+        this.called = new long[words];
+        this.alternative = new long[words];
+        for (int i = 0; i < numberOfSamples; i++) {
+            final Genotype genotype = variant.getGenotype(sampleNames.get(i));
+            if (genotype != null) {
+                final Allele allele = genotype.getAllele(0);
+                if (allele.isCalled()) {
+                    called[i / Long.SIZE] |= 1L << i;
+                    if (!allele.isReference()) {
+                        alternative[i / Long.SIZE] |= 1L << i;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Gets the encoded variant. */
+    public VariantContext getVariant() {
+        return variant;
+    }
+
+    /**
+     * Returns {@code true} if the variant is biallelic; {@code false} otherwise. Differences
+     * between samples could only be computed from the bitsets for biallelic variants.
+     */
+    public boolean isBiallelic() {
+        return variant.isBiallelic();
+    }
+
+    /** Gets the number of samples encoded. */
+    public int getNumberOfSamples() {
+        return numberOfSamples;
+    }
+
+    /** Gets the word of the called bitset (samples from {@code word * 64}). */
+    long getCalledWord(final int word) {
+        return called[word];
+    }
+
+    /** Gets the word of the alternative bitset (samples from {@code word * 64}). */
+    long getAlternativeWord(final int word) {
+        return alternative[word];
+    }
+
+    /** Gets the number of words in the bitsets. */
+    int getNumberOfWords() {
+        return called.length;
+    }
+
+    @Override
+    public String getContig() {
+        return variant.getContig();
+    }
+
+    @Override
+    public int getStart() {
+        return variant.getStart();
+    }
+
+    @Override
+    public int getEnd() {
+        return variant.getEnd();
+    }
+}
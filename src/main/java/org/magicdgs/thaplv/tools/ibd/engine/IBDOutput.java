@@ -26,47 +26,106 @@
  */
 package org.magicdgs.thaplv.tools.ibd.engine;
 
-import org.magicdgs.thaplv.haplotypes.pairs.DifferencesDistancePair;
+import org.magicdgs.thaplv.io.AsciiTextBuilder;
+import org.magicdgs.thaplv.io.AsyncBatchWriter;
 
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.broadinstitute.hellbender.exceptions.UserException;
-import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 /**
  * Creates a new processor for IBD
  *
+ * The output is formatted into batches of bytes, which are written by a background thread for
+ * each file (see {@link AsyncBatchWriter}), so the computation does not wait for the disk.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
 public class IBDOutput implements Closeable {
 
     private final static Logger logger = LogManager.getLogger(IBDOutput.class);
 
-    private final PrintStream ibdTracksWriter;
+    /** Format for the pairwise-differences output. */
+    public enum DiffFormat {
+        /** Tab-delimited text (.diff). */
+        TEXT(".diff"),
+        /** Tab-delimited text compressed in blocks (.diff.gz). */
+        BGZF(".diff.gz"),
+        /** Compact binary table (.diff.bin). See {@link BinaryDiffFile}. */
+        BINARY(BinaryDiffFile.EXTENSION);
+
+        private final String extension;
+
+        DiffFormat(final String extension) {
+            this.extension = extension;
+        }
+
+        /** Gets the extension for the output file. */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /** Header for the IBD tracks output. */
+    static final String IBD_HEADER = "Sample1\tSample2\tRef\tStart\tEnd";
+
+    /** Header for the pairwise-differences text output. */
+    static final String DIFF_HEADER =
+            "Sample1\tSample2\tRef\tStart\t\tEnd\tWin_length_length\tN_variants\tMissing\tN_diferences\tDiff_per_site";
+
+    // number of decimals for the differences per site
+    private static final int DIFF_PER_SITE_DECIMALS = 6;
+
+    // buffers are submitted to the writers when they reach this size
+    static final int BATCH_SIZE = 1 << 20;
+
+    // number of batches that could be filled or waiting to be written for each file
+    static final int NUMBER_OF_BATCHES = 4;
+
+    private final AsyncBatchWriter ibdTracksWriter;
+
+    private AsciiTextBuilder ibdTracksBuffer;
 
-    private final Optional<PrintStream> pairwiseDiffWritter;
+    private final Optional<AsyncBatchWriter> pairwiseDiffWritter;
+
+    private AsciiTextBuilder pairwiseDiffBuffer;
+
+    private final DiffFormat diffFormat;
 
     private final IBDcollector collector;
 
     private final double minDiff;
 
-    // this should iterate in the order of insertion
-    private final Map<String, SimpleInterval> pairIBDmap;
+    // the pairs in the windows
+    private final SamplePairIndex pairs;
+
+    // the ASCII names for each pair, to do not encode them for every window
+    private final byte[][] firstNames;
+    private final byte[][] secondNames;
+
+    // current IBD track for each pair index; the contig is null if there is no track for the pair
+    private final String[] trackContig;
+    private final int[] trackStart;
+    private final int[] trackEnd;
+
+    // order in which the current tracks were opened, to output the remaining ones in that order
+    private final long[] trackOrder;
+    private long numberOfOpenedTracks;
 
     /**
-     * Construct an output for IBD regions
+     * Construct an output for IBD regions, with the pairwise differences in text format
      *
      * @param outputPrefix       the prefix for the output files
      * @param collector          collector for compute IBD regions
@@ -77,23 +136,49 @@ public class IBDOutput implements Closeable {
      */
     public IBDOutput(final String outputPrefix, final IBDcollector collector,
             final double minimumDifferences, final boolean onlyIBD) {
-        final File ibdFile = new File(String.format("%s.ibd", outputPrefix));
-        try {
-            this.ibdTracksWriter = new PrintStream(ibdFile);
-        } catch (FileNotFoundException e) {
-            throw new UserException.CouldNotCreateOutputFile(ibdFile, e);
-        }
-        final File pairwiseDiffFile = new File(String.format("%s.diff", outputPrefix));
-        try {
-            this.pairwiseDiffWritter = (onlyIBD)
-                    ? Optional.empty() : Optional.of(new PrintStream(pairwiseDiffFile));
-        } catch (FileNotFoundException e) {
-            throw new UserException.CouldNotCreateOutputFile(pairwiseDiffFile, e);
-        }
+        this(outputPrefix, collector, minimumDifferences, onlyIBD, DiffFormat.TEXT);
+    }
+
+    /**
+     * Construct an output for IBD regions
+     *
+     * @param outputPrefix       the prefix for the output files
+     * @param collector          collector for compute IBD regions
+     * @param minimumDifferences the minimum number of differences
+     * @param onlyIBD            should only the IBD-tracks be output?
+     * @param diffFormat         the format for the pairwise differences
+     *
+     * @throws UserException.CouldNotCreateOutputFile if there is an IO error
+     */
+    public IBDOutput(final String outputPrefix, final IBDcollector collector,
+            final double minimumDifferences, final boolean onlyIBD, final DiffFormat diffFormat) {
+        Utils.nonNull(diffFormat, "null diff format");
+        this.ibdTracksWriter = new AsyncBatchWriter(new File(outputPrefix + ".ibd"), false,
+                NUMBER_OF_BATCHES, BATCH_SIZE);
+        this.ibdTracksBuffer = ibdTracksWriter.getBuffer();
+        this.diffFormat = diffFormat;
+        this.pairwiseDiffWritter = (onlyIBD) ? Optional.empty() : Optional.of(
+                new AsyncBatchWriter(new File(outputPrefix + diffFormat.getExtension()),
+                        diffFormat == DiffFormat.BGZF, NUMBER_OF_BATCHES, BATCH_SIZE));
+        this.pairwiseDiffBuffer = pairwiseDiffWritter.map(AsyncBatchWriter::getBuffer)
+                .orElse(null);
         this.collector = collector;
         this.minDiff = minimumDifferences;
+        this.pairs = collector.getPairs();
+        final int numberOfPairs = pairs.getNumberOfPairs();
+        this.firstNames = new byte[numberOfPairs][];
+        this.secondNames = new byte[numberOfPairs][];
+        for (int pair = 0; pair < numberOfPairs; pair++) {
+            firstNames[pair] = pairs.getFirstSampleName(pair).getBytes(StandardCharsets.US_ASCII);
+            secondNames[pair] =
+                    pairs.getSecondSampleName(pair).getBytes(StandardCharsets.US_ASCII);
+        }
+        this.trackContig = new String[numberOfPairs];
+        this.trackStart = new int[numberOfPairs];
+        this.trackEnd = new int[numberOfPairs];
+        this.trackOrder = new long[numberOfPairs];
+        this.numberOfOpenedTracks = 0;
         printHeader();
-        pairIBDmap = new LinkedHashMap<>();
     }
 
     /**
@@ -117,124 +202,179 @@ public class IBDOutput implements Closeable {
             final boolean dontCheck) {
         for (final PairwiseDifferencesWindow window : done) {
             if (dontCheck || window.getVariantsInWindow() != 0) {
-                for (final DifferencesDistancePair pair : window) {
+                final byte[] contig = window.getContig().getBytes(StandardCharsets.US_ASCII);
+                if (pairwiseDiffBuffer != null && diffFormat == DiffFormat.BINARY) {
+                    BinaryDiffFile.writeWindow(pairwiseDiffBuffer, window);
+                }
+                for (int pair = 0; pair < window.getNumberOfPairs(); pair++) {
                     // first print the pairwise difference
-                    printPairwiseDiff(window, pair);
+                    printPairwiseDiff(window, contig, pair);
                     // and later the IBD track
                     addToIBDtracks(pair, window);
 
                 }
-                flushWriters();
+                submitFullBuffers();
             }
         }
     }
 
     /** Add a pair to the IBD tracks and update if possible. In addition, output the IBD track. */
-    private void addToIBDtracks(final DifferencesDistancePair pair,
-            final PairwiseDifferencesWindow window) {
-        // retrieve the window
-        final SimpleInterval win = pairIBDmap.get(pair.getPairNames());
+    private void addToIBDtracks(final int pair, final PairwiseDifferencesWindow window) {
+        final boolean hasTrack = trackContig[pair] != null;
         // see if the window is bigger than the threshold and have sites
-        if (differencesPerSite(pair, window) < minDiff && pair.getNumberOfSites() != 0) {
-            // if there is a window present for this pair
-            if (win != null) {
+        if (differencesPerSite(pair, window) < minDiff && window.getNumberOfSites(pair) != 0) {
+            // if there is a track present for this pair
+            if (hasTrack) {
                 // if it is intersecting
                 // TODO: using overlaps() and meregeWithContiguous() breaks compatibility
                 // TODO: this was checked by converting to bed file and joining intervals
                 // TODO: now a test is covering this, but keeping this TODO for other tools that use this class
-                if (win.overlaps(window)) {
-                    // extend the window and return
-                    pairIBDmap.put(pair.getPairNames(), win.mergeWithContiguous(window));
+                if (trackOverlaps(pair, window)) {
+                    // extend the track and return
+                    trackStart[pair] = Math.min(trackStart[pair], window.getStart());
+                    trackEnd[pair] = Math.max(trackEnd[pair], window.getEnd());
                     return;
                 } else {
                     // if not, print the IBD region
-                    printIBDregion(pair.getSample1(), pair.getSample2(), win);
+                    printIBDregion(pair);
                 }
+            } else {
+                trackOrder[pair] = numberOfOpenedTracks++;
             }
-            // either if the window is not extended or is null for this sample, store the new window
-            pairIBDmap.put(pair.getPairNames(), window.getInterval());
-        } else if (win != null && !win.overlaps(window)) {
+            // either if the track is not extended or there is no track, store the new window
+            trackContig[pair] = window.getContig();
+            trackStart[pair] = window.getStart();
+            trackEnd[pair] = window.getEnd();
+        } else if (hasTrack && !trackOverlaps(pair, window)) {
             // if the window is not overlapping with the current, save space printing the IBD region
-            printIBDregion(pair.getSample1(), pair.getSample2(), win);
-            pairIBDmap.remove(pair.getPairNames());
+            printIBDregion(pair);
+            trackContig[pair] = null;
         }
     }
 
+    /** Returns {@code true} if the current track for the pair overlaps the window. */
+    private boolean trackOverlaps(final int pair, final PairwiseDifferencesWindow window) {
+        return trackContig[pair].equals(window.getContig())
+                && trackStart[pair] <= window.getEnd() && window.getStart() <= trackEnd[pair];
+    }
+
     /** Print the header for the writers. */
     private void printHeader() {
         // write the header for IBD tracks
-        ibdTracksWriter.println("Sample1\tSample2\tRef\tStart\tEnd");
+        ibdTracksBuffer.append(IBD_HEADER).append('\n');
         if (pairwiseDiffWritter.isPresent()) {
-            logger.debug("Pairwise-difference file (.diff) will be written");
-            pairwiseDiffWritter.get().println(
-                    "Sample1\tSample2\tRef\tStart\t\tEnd\tWin_length_length\tN_variants\tMissing\tN_diferences\tDiff_per_site");
+            logger.debug("Pairwise-difference file ({}) will be written",
+                    diffFormat.getExtension());
+            if (diffFormat == DiffFormat.BINARY) {
+                BinaryDiffFile.writeHeader(pairwiseDiffBuffer, pairs);
+            } else {
+                pairwiseDiffBuffer.append(DIFF_HEADER).append('\n');
+            }
         } else {
             logger.warn("Pairwise-difference file (.diff) won't be written");
         }
     }
 
-    /** Print the IBD region for a pair of samples */
-    private void printIBDregion(final String sample1, final String sample2,
-            final SimpleInterval window) {
-        ibdTracksWriter.println(String.format("%s\t%s\t%s\t%d\t%d",
-                sample1, sample2, window.getContig(), window.getStart(), window.getEnd()));
+    /** Print the current IBD track for a pair of samples */
+    private void printIBDregion(final int pair) {
+        ibdTracksBuffer.append(firstNames[pair]).append('\t')
+                .append(secondNames[pair]).append('\t')
+                .append(trackContig[pair]).append('\t')
+                .append(trackStart[pair]).append('\t')
+                .append(trackEnd[pair]).append('\n');
     }
 
     /** Print the pair-wise differences for a pair. */
-    private void printPairwiseDiff(final PairwiseDifferencesWindow window,
-            final DifferencesDistancePair pair) {
-        if (pairwiseDiffWritter.isPresent()) {
-            pairwiseDiffWritter.get()
-                    .println(String.format("%s\t%s\t%s\t%d\t%d\t%d\t%d\t%d\t%d\t%f",
-                            pair.getSample1(), pair.getSample2(), window.getContig(),
-                            window.getStart(),
-                            window.getEnd(),
-                            window.getAvailableSites(), window.getVariantsInWindow(),
-                            pair.getNumberOfMissing(), pair.getNumberOfDifferences(),
-                            differencesPerSite(pair, window)));
+    private void printPairwiseDiff(final PairwiseDifferencesWindow window, final byte[] contig,
+            final int pair) {
+        if (pairwiseDiffBuffer == null) {
+            return;
+        }
+        if (diffFormat == DiffFormat.BINARY) {
+            BinaryDiffFile.writePair(pairwiseDiffBuffer, window, pair);
+        } else {
+            appendDiffLine(pairwiseDiffBuffer, firstNames[pair], secondNames[pair], contig,
+                    window.getStart(), window.getEnd(), window.getAvailableSites(),
+                    window.getVariantsInWindow(), window.getNumberOfMissing(pair),
+                    window.getNumberOfDifferences(pair));
         }
     }
 
+    /** Appends a line of the pairwise-differences text output. */
+    static void appendDiffLine(final AsciiTextBuilder buffer, final byte[] sample1,
+            final byte[] sample2, final byte[] contig, final int start, final int end,
+            final int availableSites, final int variants, final int missing,
+            final int differences) {
+        buffer.append(sample1).append('\t')
+                .append(sample2).append('\t')
+                .append(contig).append('\t')
+                .append(start).append('\t')
+                .append(end).append('\t')
+                .append(availableSites).append('\t')
+                .append(variants).append('\t')
+                .append(missing).append('\t')
+                .append(differences).append('\t')
+                .appendDecimal(differencesPerSite(differences, availableSites, missing),
+                        DIFF_PER_SITE_DECIMALS)
+                .append('\n');
+    }
+
     /** Computes the differences per site. */
-    private double differencesPerSite(final DifferencesDistancePair pair,
-            final PairwiseDifferencesWindow window) {
-        return pair.getNumberOfDifferences() / (double) (window.getAvailableSites() - pair
-                .getNumberOfMissing());
+    private double differencesPerSite(final int pair, final PairwiseDifferencesWindow window) {
+        return differencesPerSite(window.getNumberOfDifferences(pair),
+                window.getAvailableSites(), window.getNumberOfMissing(pair));
     }
 
-    /** Flush the writers. */
-    private void flushWriters() {
-        ibdTracksWriter.flush();
-        if (pairwiseDiffWritter.isPresent()) {
-            pairwiseDiffWritter.get().flush();
+    /** Computes the differences per site. */
+    private static double differencesPerSite(final int differences, final int availableSites,
+            final int missing) {
+        return differences / (double) (availableSites - missing);
+    }
+
+    /** Submit the buffers to their writers if they are big enough. */
+    private void submitFullBuffers() {
+        if (ibdTracksBuffer.length() >= BATCH_SIZE) {
+            ibdTracksWriter.submit(ibdTracksBuffer);
+            ibdTracksBuffer = ibdTracksWriter.getBuffer();
+        }
+        if (pairwiseDiffBuffer != null && pairwiseDiffBuffer.length() >= BATCH_SIZE) {
+            pairwiseDiffWritter.get().submit(pairwiseDiffBuffer);
+            pairwiseDiffBuffer = pairwiseDiffWritter.get().getBuffer();
         }
     }
 
     public void close() {
-        logger.debug("Ending pending windows");
-        // TODO: should we break compatibility using dontCheck = true?
-        endWindows(collector.getWindows(), false);
-        logger.debug("Output the rest of IBD tracks");
-        // output the rest of IBD tracks
-        if (!pairIBDmap.isEmpty()) {
-            for (final Map.Entry<String, SimpleInterval> entry : pairIBDmap.entrySet()) {
-                if (entry.getValue() != null) {
-                    final String[] sampleNames = entry.getKey().split(",");
-                    printIBDregion(sampleNames[0].substring(1),
-                            sampleNames[1].substring(0, sampleNames[1].length() - 1),
-                            entry.getValue());
+        try {
+            logger.debug("Ending pending windows");
+            // TODO: should we break compatibility using dontCheck = true?
+            endWindows(collector.getWindows(), false);
+            logger.debug("Output the rest of IBD tracks");
+            // output the rest of IBD tracks, in the order they were opened
+            IntStream.range(0, trackContig.length).filter(pair -> trackContig[pair] != null)
+                    .boxed()
+                    .sorted(Comparator.comparingLong(pair -> trackOrder[pair]))
+                    .forEach(this::printIBDregion);
+            // submit the remaining output
+            ibdTracksWriter.submit(ibdTracksBuffer);
+            pairwiseDiffWritter.ifPresent(writer -> writer.submit(pairwiseDiffBuffer));
+        } finally {
+            ibdTracksBuffer = null;
+            pairwiseDiffBuffer = null;
+            // close the writers and the collector even if one of them fails
+            try {
+                logger.debug("Trying to close the .ibd file");
+                ibdTracksWriter.close();
+            } finally {
+                try {
+                    if (pairwiseDiffWritter.isPresent()) {
+                        logger.debug("Trying to close the {} file", diffFormat.getExtension());
+                        pairwiseDiffWritter.get().close();
+                    }
+                } finally {
+                    logger.debug("Trying to close the collector");
+                    CloserUtil.close(collector);
                 }
             }
         }
-        flushWriters();
-        // close the writers
-        logger.debug("Trying to close the .ibd file");
-        CloserUtil.close(ibdTracksWriter);
-        if (pairwiseDiffWritter.isPresent()) {
-            logger.debug("Trying to close the .diff file");
-            CloserUtil.close(pairwiseDiffWritter.get());
-        }
-        logger.debug("Trying to close the collectors counter");
-        CloserUtil.close(collector.nCounter);
     }
 }
@@ -26,7 +26,8 @@
  */
 package org.magicdgs.thaplv.tools.ibd.engine;
 
-import org.magicdgs.thaplv.io.FastaNsCounter;
+import org.magicdgs.thaplv.cmd.argumentcollections.TiledMultiThreadComputationArgumentCollection;
+import org.magicdgs.thaplv.io.NsCounter;
 
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFHeader;
@@ -34,19 +35,31 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.broadinstitute.hellbender.utils.Utils;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
 /**
  * Collector for variants to compute IBD.
  *
+ * Variants are added only once to a running counter for all the pairs, and each window gets the
+ * counts as the difference between the counter when it starts (first variant at or after the
+ * window start) and when it ends (first variant after the window end, or when it is removed from
+ * the queue). Thus, the cost per variant does not depend on the number of overlapping windows.
+ *
+ * The running counter could be updated in parallel for ranges of pairs; variants are still added
+ * in order and windows are returned in genomic order.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
-public class IBDcollector {
+public class IBDcollector implements Closeable {
 
     // logger for this class
     private final static Logger logger = LogManager.getLogger(IBDcollector.class);
@@ -57,8 +70,11 @@ public class IBDcollector {
     // the name of the samples
     private final List<String> sampleNames;
 
+    // the pairs to compare, shared by all the windows
+    private final SamplePairIndex pairs;
+
     // a simple class for count the number of Ns in a sequence
-    protected final FastaNsCounter nCounter;
+    protected final NsCounter nCounter;
 
     // the window size
     private final int windowSize;
@@ -69,7 +85,16 @@ public class IBDcollector {
     // cached maximum number of windows in RAM
     private final int maximumWindow;
 
-    private final BiConsumer<PairwiseDifferencesWindow, VariantContext> function;
+    private final BiConsumer<PairwiseDifferencesWindow, EncodedHaplotypes> function;
+
+    // executor for the ranges of pairs in the running counter
+    private final Optional<ThreadPoolExecutor> executor;
+
+    // running counter for all the variants in the queue
+    private final PairwiseDifferencesCounter runningCounter;
+
+    // cached snapshot of the running counter; null if variants were added after it
+    private PairwiseDifferencesCounter.Snapshot currentCounts;
 
     /** Creator for the windows using the contig and the start. */
     private final BiFunction<String, Integer, PairwiseDifferencesWindow> windowsCreator;
@@ -82,21 +107,29 @@ public class IBDcollector {
      * @param windowSize the window size
      * @param windowStep the window step
      */
-    public IBDcollector(final VCFHeader header, final FastaNsCounter nCounter, final int windowSize,
+    public IBDcollector(final VCFHeader header, final NsCounter nCounter, final int windowSize,
             final int windowStep) {
-        Utils.nonNull(header, "null header");
-        Utils.nonNull(nCounter, "null nCounter");
-        Utils.nonNull(nCounter.getDictionary(), "null nCounter dictionary");
-        this.sampleNames = header.getSampleNamesInOrder();
-        this.nCounter = nCounter;
-        this.windowSize = windowSize;
-        this.windowStep = windowStep;
-        // compute the cached number of windows
-        this.maximumWindow = computeMaximumNumberOfWindows(windowSize, windowStep);
-        this.queue = new LinkedList<>();
-        this.function = PairwiseDifferencesWindow::addVariant;
-        this.windowsCreator = (contig, start) -> new PairwiseDifferencesWindow(contig, start,
-                start + this.windowSize, sampleNames, this.nCounter);
+        this(header, nCounter, windowSize, windowStep,
+                new TiledMultiThreadComputationArgumentCollection());
+    }
+
+    /**
+     * New IBD collector for the samples in a VCF header
+     *
+     * @param header            the header where the samples are stored
+     * @param nCounter          the class for count the Ns in the reference
+     * @param windowSize        the window size
+     * @param windowStep        the window step
+     * @param multiThreadParams parameters for counting ranges of pairs in parallel (the tile
+     *                          size is the minimum number of pairs for each thread)
+     */
+    public IBDcollector(final VCFHeader header, final NsCounter nCounter, final int windowSize,
+            final int windowStep,
+            final TiledMultiThreadComputationArgumentCollection multiThreadParams) {
+        this(PairwiseDifferencesWindow::addVariant,
+                SamplePairIndex.allPairs(Utils.nonNull(header, "null header")
+                        .getSampleNamesInOrder()),
+                nCounter, windowSize, windowStep, multiThreadParams);
     }
 
     /**
@@ -107,19 +140,74 @@ public class IBDcollector {
      * @param windowSize the window size
      * @param windowStep the window step
      */
-    public IBDcollector(final List<String> sampleNames, final FastaNsCounter nCounter, final int windowSize,  final int windowStep) {
+    public IBDcollector(final List<String> sampleNames, final NsCounter nCounter, final int windowSize,  final int windowStep) {
+        this(sampleNames, nCounter, windowSize, windowStep,
+                new TiledMultiThreadComputationArgumentCollection());
+    }
+
+    /**
+     * New IBD collector for the reference comparison
+     *
+     * @param sampleNames       the name of the samples to include
+     * @param nCounter          the class for count the Ns in the reference
+     * @param windowSize        the window size
+     * @param windowStep        the window step
+     * @param multiThreadParams parameters for counting ranges of pairs in parallel (the tile
+     *                          size is the minimum number of pairs for each thread)
+     */
+    public IBDcollector(final List<String> sampleNames, final NsCounter nCounter,
+            final int windowSize, final int windowStep,
+            final TiledMultiThreadComputationArgumentCollection multiThreadParams) {
+        this(PairwiseDifferencesWindow::addVariantReferenceComparison,
+                SamplePairIndex.againstReference("Reference", sampleNames), nCounter, windowSize,
+                windowStep, multiThreadParams);
+    }
+
+    /**
+     * New IBD collector for an arbitrary set of pairs (e.g., a subset of the pair-wise
+     * comparisons). Only the samples in the pairs are used.
+     *
+     * @param pairs             the pairs to compare
+     * @param nCounter          the class for count the Ns in the reference
+     * @param windowSize        the window size
+     * @param windowStep        the window step
+     * @param multiThreadParams parameters for counting ranges of pairs in parallel (the tile
+     *                          size is the minimum number of pairs for each thread)
+     */
+    public IBDcollector(final SamplePairIndex pairs, final NsCounter nCounter,
+            final int windowSize, final int windowStep,
+            final TiledMultiThreadComputationArgumentCollection multiThreadParams) {
+        this(PairwiseDifferencesWindow::addVariant, pairs, nCounter, windowSize, windowStep,
+                multiThreadParams);
+    }
+
+    private IBDcollector(final BiConsumer<PairwiseDifferencesWindow, EncodedHaplotypes> function,
+            final SamplePairIndex pairs, final NsCounter nCounter, final int windowSize,
+            final int windowStep,
+            final TiledMultiThreadComputationArgumentCollection multiThreadParams) {
         Utils.nonNull(nCounter, "null nCounter");
         Utils.nonNull(nCounter.getDictionary(), "null nCounter dictionary");
-        this.sampleNames = sampleNames;
+        Utils.nonNull(pairs, "null pairs");
+        Utils.nonNull(multiThreadParams, "null multiThreadParams");
+        this.sampleNames = pairs.getSampleNames();
         this.nCounter = nCounter;
         this.windowSize = windowSize;
         this.windowStep = windowStep;
         // compute the cached number of windows
         this.maximumWindow = computeMaximumNumberOfWindows(windowSize, windowStep);
         this.queue = new LinkedList<>();
-        this.function = PairwiseDifferencesWindow::addVariantReferenceComparison;
+        this.function = function;
+        this.pairs = pairs;
+        this.executor = multiThreadParams.getFixedThreadPoolWithBoundedQueue();
+        this.runningCounter = new PairwiseDifferencesCounter(pairs, executor,
+                multiThreadParams.getTileSize());
         this.windowsCreator = (contig, start) -> new PairwiseDifferencesWindow(contig, start,
-                start + this.windowSize, "Reference", sampleNames, this.nCounter);
+                start + this.windowSize, pairs, this.nCounter);
+    }
+
+    /** Get the pairs compared by this collector, shared by all the windows. */
+    public SamplePairIndex getPairs() {
+        return pairs;
     }
 
     /** Compute the cached number of windows. */
@@ -141,8 +229,12 @@ public class IBDcollector {
         while (!queue.isEmpty() && !queue.peek().getInterval().overlaps(variant)) {
             windows.add(queue.pop());
         }
+        windows.forEach(this::endAccumulation);
         // if the queue is empty, generate the first queue from this variant and add
         if (queue.isEmpty()) {
+            // no window requires the previous counts
+            runningCounter.clear();
+            currentCounts = null;
             // logger.debug("Queue is empty");
             addFirstVariant(variant);
         } else {
@@ -165,13 +257,15 @@ public class IBDcollector {
     }
 
     /**
-     * Get the current queue. Useful for processing the last variants.
+     * Get the current queue. Useful for processing the last variants, because the windows end
+     * the accumulation of variants.
      *
      * WARNING: it is not a copy, so it will be modified
      *
      * @return the current queue
      */
     Deque<PairwiseDifferencesWindow> getWindows() {
+        queue.forEach(this::endAccumulation);
         return queue;
     }
 
@@ -205,10 +299,41 @@ public class IBDcollector {
     }
 
     /**
-     * Add the variant to the loaded queue
+     * Add the variant to the loaded queue, encoding the haplotypes only once. Windows start
+     * accumulating with the first variant at or after its start and end with the first variant
+     * after its end; variants overlapping the start of a window are added directly to it.
      */
     private void addVariantToQueue(final VariantContext variant) {
-        queue.stream().forEach(win -> function.accept(win, variant));
+        final EncodedHaplotypes haplotypes = new EncodedHaplotypes(variant, sampleNames);
+        for (final PairwiseDifferencesWindow window : queue) {
+            if (!window.isAccumulating() && !window.isAccumulationFinished()) {
+                if (variant.getStart() >= window.getStart()) {
+                    window.startAccumulation(getCurrentCounts());
+                } else {
+                    function.accept(window, haplotypes);
+                }
+            }
+            if (window.isAccumulating() && variant.getStart() > window.getEnd()) {
+                window.endAccumulation(getCurrentCounts());
+            }
+        }
+        runningCounter.add(haplotypes);
+        currentCounts = null;
+    }
+
+    /** Ends the accumulation of variants for the window, if it is accumulating. */
+    private void endAccumulation(final PairwiseDifferencesWindow window) {
+        if (window.isAccumulating()) {
+            window.endAccumulation(getCurrentCounts());
+        }
+    }
+
+    /** Gets the counts for the running counter, cached until a new variant is added. */
+    private PairwiseDifferencesCounter.Snapshot getCurrentCounts() {
+        if (currentCounts == null) {
+            currentCounts = runningCounter.snapshot();
+        }
+        return currentCounts;
     }
 
     /**
@@ -241,4 +366,11 @@ public class IBDcollector {
             queue.add(windowsCreator.apply(contig, i));
         }
     }
+
+    /** Closes the reference N counter and shuts down the executor (if any). */
+    @Override
+    public void close() throws IOException {
+        executor.ifPresent(ThreadPoolExecutor::shutdown);
+        nCounter.close();
+    }
 }
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Detects long shared matches between haplotypes using the positional Burrows-Wheeler transform
+ * (PBWT) described in Durbin 2014, Bioinformatics 30(9).
+ *
+ * The haplotypes are kept sorted by their reversed prefix (prefix array), together with the site
+ * where the match with the previous haplotype in the order starts (divergence array). Both arrays
+ * are updated for each site in time linear with the number of haplotypes, and the matches that
+ * end at the previous site (because the alleles differ) are reported if they are long enough. The
+ * matches that are still open are reported at the end of each contig.
+ *
+ * Only the pairs of haplotypes with different alleles are visited for each site, and the start of
+ * each match is a range maximum over the divergence array (see {@link DivergenceRangeMax}); thus,
+ * the time for each site is linear in the number of haplotypes plus the number of reported
+ * matches.
+ *
+ * WARNING: only works for biallelic sites without missing genotypes (the first allele of each
+ * genotype is the one used).
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class PBWTMatcher {
+
+    /** Consumer for the matches found. */
+    @FunctionalInterface
+    public interface MatchConsumer {
+
+        /**
+         * Accepts a match between two haplotypes.
+         *
+         * @param sample1 the index of the first sample (smaller than the second).
+         * @param sample2 the index of the second sample.
+         * @param contig  the contig for the match.
+         * @param start   the position of the first site in the match.
+         * @param end     the position of the last site in the match.
+         */
+        void accept(final int sample1, final int sample2, final String contig, final int start,
+                final int end);
+    }
+
+    private final List<String> sampleNames;
+
+    private final int minimumLength;
+
+    private final int minimumSites;
+
+    private final MatchConsumer consumer;
+
+    // haplotypes sorted by their reversed prefix
+    private final int[] prefix;
+
+    // site where the match of each haplotype in the prefix array with the previous one starts
+    private final int[] divergence;
+
+    // temporary arrays for the haplotypes with the second allele while updating
+    private final int[] secondAllelePrefix;
+    private final int[] secondAlleleDivergence;
+
+    // allele (0 or 1) for each haplotype in the current site
+    private final byte[] alleles;
+
+    // indexes in the prefix array of the haplotypes with each allele in a block
+    private final int[] blockFirstAllele;
+    private final int[] blockSecondAllele;
+
+    // range maximum queries over the divergence array for a block
+    private final DivergenceRangeMax divergenceRangeMax;
+
+    // current contig and positions for its sites
+    private String contig = null;
+    private int[] positions = new int[1024];
+    private int numberOfSites = 0;
+
+    /**
+     * Constructor for a PBWT matcher.
+     *
+     * @param sampleNames   the name of the samples (haplotypes).
+     * @param minimumLength minimum length for a match (in bp, from the first to the last site).
+     * @param minimumSites  minimum number of sites in a match.
+     * @param consumer      consumer for the matches.
+     */
+    public PBWTMatcher(final List<String> sampleNames, final int minimumLength,
+            final int minimumSites, final MatchConsumer consumer) {
+        Utils.nonEmpty(sampleNames, "empty sampleNames");
+        Utils.validateArg(minimumLength > 0, "minimumLength should be positive");
+        Utils.validateArg(minimumSites > 0, "minimumSites should be positive");
+        Utils.nonNull(consumer, "null consumer");
+        this.sampleNames = sampleNames;
+        this.minimumLength = minimumLength;
+        this.minimumSites = minimumSites;
+        this.consumer = consumer;
+        final int numberOfSamples = sampleNames.size();
+        this.prefix = new int[numberOfSamples];
+        this.divergence = new int[numberOfSamples];
+        this.secondAllelePrefix = new int[numberOfSamples];
+        this.secondAlleleDivergence = new int[numberOfSamples];
+        this.alleles = new byte[numberOfSamples];
+        this.blockFirstAllele = new int[numberOfSamples];
+        this.blockSecondAllele = new int[numberOfSamples];
+        this.divergenceRangeMax = new DivergenceRangeMax(divergence);
+        resetArrays();
+    }
+
+    /**
+     * Adds a variant to the PBWT, reporting the matches that end at the previous site. If the
+     * variant is in a different contig, all the matches for the previous contig are reported.
+     *
+     * @param variant the variant to add (sorted by position).
+     *
+     * @throws IllegalArgumentException if the variant is not biallelic or contains missing
+     *                                  genotypes.
+     */
+    public void addVariant(final VariantContext variant) {
+        Utils.nonNull(variant, "null variant");
+        if (!variant.getContig().equals(contig)) {
+            finalizeMatches();
+            contig = variant.getContig();
+        }
+        encodeAlleles(variant);
+        reportMatches(false);
+        updateArrays();
+        if (numberOfSites == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[numberOfSites++] = variant.getStart();
+    }
+
+    /** Reports all the open matches for the current contig and starts again. */
+    public void finalizeMatches() {
+        if (numberOfSites != 0) {
+            reportMatches(true);
+        }
+        resetArrays();
+    }
+
+    // encodes the allele for each haplotype as 0 (same as the first haplotype) or 1
+    private void encodeAlleles(final VariantContext variant) {
+        Allele first = null;
+        Allele second = null;
+        for (int i = 0; i < alleles.length; i++) {
+            final String sample = sampleNames.get(i);
+            final Genotype genotype = variant.getGenotype(sample);
+            final Allele allele = (genotype == null) ? Allele.NO_CALL : genotype.getAllele(0);
+            Utils.validateArg(allele.isCalled(), () -> "missing genotype for " + sample + " at "
+                    + variant.getContig() + ":" + variant.getStart());
+            if (first == null || first.equals(allele)) {
+                first = allele;
+                alleles[i] = 0;
+            } else {
+                Utils.validateArg(second == null || second.equals(allele),
+                        () -> "non biallelic variant at " + variant.getContig() + ":"
+                                + variant.getStart());
+                second = allele;
+                alleles[i] = 1;
+            }
+        }
+    }
+
+    // updates the prefix and divergence arrays with the current alleles (Algorithm 2 in Durbin)
+    private void updateArrays() {
+        // haplotypes with the first allele are stored in place, because they are never ahead
+        int firstAlleleCount = 0;
+        int secondAlleleCount = 0;
+        int firstAlleleStart = numberOfSites + 1;
+        int secondAlleleStart = numberOfSites + 1;
+        for (int i = 0; i < prefix.length; i++) {
+            final int haplotype = prefix[i];
+            firstAlleleStart = Math.max(firstAlleleStart, divergence[i]);
+            secondAlleleStart = Math.max(secondAlleleStart, divergence[i]);
+            if (alleles[haplotype] == 0) {
+                prefix[firstAlleleCount] = haplotype;
+                divergence[firstAlleleCount++] = firstAlleleStart;
+                firstAlleleStart = 0;
+            } else {
+                secondAllelePrefix[secondAlleleCount] = haplotype;
+                secondAlleleDivergence[secondAlleleCount++] = secondAlleleStart;
+                secondAlleleStart = 0;
+            }
+        }
+        System.arraycopy(secondAllelePrefix, 0, prefix, firstAlleleCount, secondAlleleCount);
+        System.arraycopy(secondAlleleDivergence, 0, divergence, firstAlleleCount,
+                secondAlleleCount);
+    }
+
+    // reports the long matches ending at the last site, either because the alleles differ in the
+    // current site (Algorithm 4 in Durbin) or because all of them end (at the end of the contig)
+    private void reportMatches(final boolean allMatches) {
+        final int maxStart = maxMatchStart();
+        if (maxStart < 0) {
+            return;
+        }
+        int blockStart = 0;
+        boolean hasFirstAllele = false;
+        boolean hasSecondAllele = false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (divergence[i] > maxStart) {
+                if (allMatches || (hasFirstAllele && hasSecondAllele)) {
+                    reportBlock(blockStart, i, allMatches);
+                }
+                blockStart = i;
+                hasFirstAllele = false;
+                hasSecondAllele = false;
+            }
+            if (alleles[prefix[i]] == 0) {
+                hasFirstAllele = true;
+            } else {
+                hasSecondAllele = true;
+            }
+        }
+        if (allMatches || (hasFirstAllele && hasSecondAllele)) {
+            reportBlock(blockStart, prefix.length, allMatches);
+        }
+    }
+
+    // reports the matches in a block of haplotypes sharing a long match up to the last site
+    private void reportBlock(final int from, final int to, final boolean allMatches) {
+        if (allMatches) {
+            reportAllPairs(from, to);
+        } else {
+            reportDifferentAllelePairs(from, to);
+        }
+    }
+
+    // reports all the pairs in the block (every pair is a match)
+    private void reportAllPairs(final int from, final int to) {
+        final int end = positions[numberOfSites - 1];
+        for (int i = from; i < to; i++) {
+            final int first = prefix[i];
+            int start = 0;
+            for (int j = i + 1; j < to; j++) {
+                // the match starts at the maximum divergence between both haplotypes
+                start = Math.max(start, divergence[j]);
+                final int second = prefix[j];
+                consumer.accept(Math.min(first, second), Math.max(first, second), contig,
+                        positions[start], end);
+            }
+        }
+    }
+
+    // reports the pairs in the block with different alleles in the current site, splitting the
+    // block by allele to do not visit the pairs with the same allele (Algorithm 4 in Durbin)
+    private void reportDifferentAllelePairs(final int from, final int to) {
+        int firstAlleleCount = 0;
+        int secondAlleleCount = 0;
+        for (int i = from; i < to; i++) {
+            if (alleles[prefix[i]] == 0) {
+                blockFirstAllele[firstAlleleCount++] = i;
+            } else {
+                blockSecondAllele[secondAlleleCount++] = i;
+            }
+        }
+        divergenceRangeMax.build(from, to);
+        final int end = positions[numberOfSites - 1];
+        // number of haplotypes with each allele up to the current one (included)
+        int firstAlleleSeen = 0;
+        int secondAlleleSeen = 0;
+        for (int i = from; i < to; i++) {
+            final int first = prefix[i];
+            final int[] others;
+            final int othersFrom;
+            final int othersTo;
+            if (alleles[first] == 0) {
+                firstAlleleSeen++;
+                others = blockSecondAllele;
+                othersFrom = secondAlleleSeen;
+                othersTo = secondAlleleCount;
+            } else {
+                secondAlleleSeen++;
+                others = blockFirstAllele;
+                othersFrom = firstAlleleSeen;
+                othersTo = firstAlleleCount;
+            }
+            // pairs with the haplotypes with the other allele after this one in the block
+            for (int k = othersFrom; k < othersTo; k++) {
+                final int j = others[k];
+                // the match starts at the maximum divergence between both haplotypes
+                final int start = divergenceRangeMax.max(i + 1, j);
+                final int second = prefix[j];
+                consumer.accept(Math.min(first, second), Math.max(first, second), contig,
+                        positions[start], end);
+            }
+        }
+    }
+
+    // returns the maximum site where a match ending at the last site should start to be
+    // reported; negative if no match could be long enough
+    private int maxMatchStart() {
+        final int maxStart = numberOfSites - minimumSites;
+        if (maxStart < 0) {
+            return -1;
+        }
+        // the last site with a position far enough from the end
+        final int maxPosition = positions[numberOfSites - 1] - minimumLength + 1;
+        int low = 0;
+        int high = maxStart + 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (positions[middle] <= maxPosition) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    private void resetArrays() {
+        for (int i = 0; i < prefix.length; i++) {
+            prefix[i] = i;
+        }
+        Arrays.fill(divergence, 0);
+        numberOfSites = 0;
+    }
+
+    /**
+     * Sparse table for range maximum queries over a block of the divergence array, built in time
+     * {@code O(n log n)} for a block of size {@code n} and queried in constant time. The tables
+     * for each level are allocated lazily and reused between blocks.
+     */
+    private static final class DivergenceRangeMax {
+
+        private final int[] divergence;
+
+        // maximum for the ranges of length 2^level starting at each index in the block
+        private final int[][] levels;
+
+        // first index of the block in the divergence array
+        private int from;
+
+        private DivergenceRangeMax(final int[] divergence) {
+            this.divergence = divergence;
+            this.levels =
+                    new int[Integer.SIZE - Integer.numberOfLeadingZeros(divergence.length)][];
+        }
+
+        // builds the table for the block [from, to)
+        private void build(final int from, final int to) {
+            this.from = from;
+            final int size = to - from;
+            // the first level is the divergence array itself
+            for (int level = 1; (1 << level) <= size; level++) {
+                if (levels[level] == null) {
+                    levels[level] = new int[divergence.length - (1 << level) + 1];
+                }
+                final int half = 1 << (level - 1);
+                final int[] current = levels[level];
+                for (int i = 0; i + (1 << level) <= size; i++) {
+                    current[i] = Math.max(get(level - 1, i), get(level - 1, i + half));
+                }
+            }
+        }
+
+        // gets the maximum for the range of length 2^level starting at the index in the block
+        private int get(final int level, final int index) {
+            return (level == 0) ? divergence[from + index] : levels[level][index];
+        }
+
+        // maximum in the range [start, end] of the divergence array (inside the block)
+        private int max(final int start, final int end) {
+            final int level = 31 - Integer.numberOfLeadingZeros(end - start + 1);
+            return Math.max(get(level, start - from), get(level, end - from - (1 << level) + 1));
+        }
+    }
+}
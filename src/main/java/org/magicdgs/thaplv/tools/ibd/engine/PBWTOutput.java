@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import org.magicdgs.thaplv.io.AsciiTextBuilder;
+import org.magicdgs.thaplv.io.AsyncBatchWriter;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Output for the matches found by {@link PBWTMatcher}, with the same format as the IBD tracks
+ * output by {@link IBDOutput} (.ibd file).
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PBWTOutput implements PBWTMatcher.MatchConsumer, Closeable {
+
+    private final AsyncBatchWriter ibdTracksWriter;
+
+    private AsciiTextBuilder ibdTracksBuffer;
+
+    // the ASCII names for each sample, to do not encode them for every match
+    private final byte[][] sampleNames;
+
+    // the last contig and its ASCII name
+    private String contig = null;
+    private byte[] contigName = null;
+
+    private long numberOfTracks = 0;
+
+    /**
+     * Construct an output for the matches.
+     *
+     * @param outputPrefix the prefix for the output file.
+     * @param sampleNames  the name of the samples, in the same order as in the matcher.
+     *
+     * @throws UserException.CouldNotCreateOutputFile if there is an IO error.
+     */
+    public PBWTOutput(final String outputPrefix, final List<String> sampleNames) {
+        Utils.nonNull(outputPrefix, "null outputPrefix");
+        Utils.nonEmpty(sampleNames, "empty sampleNames");
+        this.sampleNames = new byte[sampleNames.size()][];
+        for (int i = 0; i < sampleNames.size(); i++) {
+            this.sampleNames[i] = sampleNames.get(i).getBytes(StandardCharsets.US_ASCII);
+        }
+        this.ibdTracksWriter = new AsyncBatchWriter(new File(outputPrefix + ".ibd"), false,
+                IBDOutput.NUMBER_OF_BATCHES, IBDOutput.BATCH_SIZE);
+        this.ibdTracksBuffer = ibdTracksWriter.getBuffer();
+        ibdTracksBuffer.append(IBDOutput.IBD_HEADER).append('\n');
+    }
+
+    @Override
+    public void accept(final int sample1, final int sample2, final String contig,
+            final int start, final int end) {
+        if (!contig.equals(this.contig)) {
+            this.contig = contig;
+            this.contigName = contig.getBytes(StandardCharsets.US_ASCII);
+        }
+        ibdTracksBuffer.append(sampleNames[sample1]).append('\t')
+                .append(sampleNames[sample2]).append('\t')
+                .append(contigName).append('\t')
+                .append(start).append('\t')
+                .append(end).append('\n');
+        numberOfTracks++;
+        if (ibdTracksBuffer.length() >= IBDOutput.BATCH_SIZE) {
+            ibdTracksWriter.submit(ibdTracksBuffer);
+            ibdTracksBuffer = ibdTracksWriter.getBuffer();
+        }
+    }
+
+    /** Gets the number of IBD tracks output. */
+    public long getNumberOfTracks() {
+        return numberOfTracks;
+    }
+
+    @Override
+    public void close() {
+        ibdTracksWriter.submit(ibdTracksBuffer);
+        ibdTracksBuffer = null;
+        ibdTracksWriter.close();
+    }
+}
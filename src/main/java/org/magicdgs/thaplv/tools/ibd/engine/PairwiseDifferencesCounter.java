@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import org.magicdgs.thaplv.utils.AlleleUtils;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Counter for the differences, sites and missing calls of pairs of haplotypes.
+ *
+ * Biallelic variants are accumulated in blocks of 64 as per-sample bitsets (one bit for each
+ * variant in the block) and the counts for all the pairs are updated once the block is full (or on
+ * {@link #flush()}), using XOR/AND and popcount over the block. Other variants are compared pair
+ * by pair. Samples in the pairs that are not in the sample names ({@link
+ * SamplePairIndex#REFERENCE_INDEX}) are considered as the reference (always called with the
+ * reference allele).
+ *
+ * The counts are stored in one array for each counter, indexed by the pair index. If an executor
+ * is provided, the pairs are partitioned in contiguous ranges that are updated in parallel
+ * (each range by a single thread, so no locking is needed); the calling thread waits until all
+ * the ranges are updated, so the counts are always complete after each call.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class PairwiseDifferencesCounter {
+
+    private final SamplePairIndex pairs;
+
+    // counts for each pair
+    private final int[] differences;
+    private final int[] sites;
+    private final int[] missing;
+
+    // number of variants added
+    private int variants;
+
+    // block of variants for each sample (bit i is the i-th variant in the block)
+    private final long[] blockCalled;
+    private final long[] blockAlternative;
+
+    // number of variants in the block
+    private int blockSize;
+
+    // alleles for each sample for variants compared pair by pair
+    private final Allele[] alleles;
+
+    // executor for the ranges of pairs
+    private final Optional<ThreadPoolExecutor> executor;
+
+    // starts for the ranges of pairs (the last one is the number of pairs)
+    private final int[] rangeStarts;
+
+    /**
+     * Constructs a new counter for the pairs.
+     *
+     * @param pairs the pairs to count, with the sample names in the same order as the encoded
+     *              haplotypes.
+     */
+    public PairwiseDifferencesCounter(final SamplePairIndex pairs) {
+        this(pairs, Optional.empty(), 1);
+    }
+
+    /**
+     * Constructs a new counter for the pairs, computing the counts for ranges of pairs in
+     * parallel.
+     *
+     * @param pairs        the pairs to count, with the sample names in the same order as the
+     *                     encoded haplotypes.
+     * @param executor     the executor for the ranges of pairs. If empty, the counts are
+     *                     computed in the calling thread.
+     * @param minRangeSize the minimum number of pairs in each range.
+     */
+    public PairwiseDifferencesCounter(final SamplePairIndex pairs,
+            final Optional<ThreadPoolExecutor> executor, final int minRangeSize) {
+        Utils.nonNull(pairs, "null pairs");
+        Utils.nonNull(executor, "null executor");
+        Utils.validateArg(minRangeSize > 0, "minimum range size should be positive");
+        this.pairs = pairs;
+        this.executor = executor;
+        final int numberOfRanges = executor.map(e -> Math.max(1,
+                Math.min(e.getCorePoolSize(), pairs.getNumberOfPairs() / minRangeSize)))
+                .orElse(1);
+        this.rangeStarts = new int[numberOfRanges + 1];
+        for (int i = 0; i <= numberOfRanges; i++) {
+            rangeStarts[i] = (int) ((long) pairs.getNumberOfPairs() * i / numberOfRanges);
+        }
+        this.alleles = new Allele[pairs.getSampleNames().size()];
+        this.differences = new int[pairs.getNumberOfPairs()];
+        this.sites = new int[pairs.getNumberOfPairs()];
+        this.missing = new int[pairs.getNumberOfPairs()];
+        this.variants = 0;
+        this.blockCalled = new long[pairs.getSampleNames().size()];
+        this.blockAlternative = new long[pairs.getSampleNames().size()];
+        this.blockSize = 0;
+    }
+
+    /** Gets the pairs in the counter. */
+    public SamplePairIndex getPairs() {
+        return pairs;
+    }
+
+    /** Gets the number of differences for the pair, including the pending variants. */
+    public int getNumberOfDifferences(final int pair) {
+        flush();
+        return differences[pair];
+    }
+
+    /** Gets the number of sites (called in both samples) for the pair. */
+    public int getNumberOfSites(final int pair) {
+        flush();
+        return sites[pair];
+    }
+
+    /** Gets the number of missing calls (in one or both samples) for the pair. */
+    public int getNumberOfMissing(final int pair) {
+        flush();
+        return missing[pair];
+    }
+
+    /** Gets the number of variants added to the counter. */
+    public int getNumberOfVariants() {
+        return variants;
+    }
+
+    /**
+     * Adds the encoded haplotypes to the counts.
+     *
+     * @param haplotypes the encoded haplotypes for the sample names.
+     */
+    public void add(final EncodedHaplotypes haplotypes) {
+        Utils.validateArg(haplotypes.getNumberOfSamples() == blockCalled.length,
+                "encoded haplotypes does not match the sample names");
+        variants++;
+        if (!haplotypes.isBiallelic()) {
+            addPairByPair(haplotypes.getVariant());
+            return;
+        }
+        final long variantBit = 1L << blockSize;
+        for (int word = 0; word < haplotypes.getNumberOfWords(); word++) {
+            setBits(blockCalled, word, haplotypes.getCalledWord(word), variantBit);
+            setBits(blockAlternative, word, haplotypes.getAlternativeWord(word), variantBit);
+        }
+        if (++blockSize == Long.SIZE) {
+            flush();
+        }
+    }
+
+    // set the variant bit in the block for the samples in the word
+    private static void setBits(final long[] block, final int word, final long samples,
+            final long variantBit) {
+        long remaining = samples;
+        while (remaining != 0) {
+            block[word * Long.SIZE + Long.numberOfTrailingZeros(remaining)] |= variantBit;
+            remaining &= remaining - 1;
+        }
+    }
+
+    // compare the alleles for each pair, for variants that cannot be encoded
+    private void addPairByPair(final VariantContext variant) {
+        for (int i = 0; i < alleles.length; i++) {
+            final Genotype genotype = variant.getGenotype(pairs.getSampleNames().get(i));
+            alleles[i] = (genotype == null) ? Allele.NO_CALL : genotype.getAllele(0);
+        }
+        final Allele reference = variant.getReference();
+        forEachRange((start, end) -> addPairByPair(reference, start, end));
+    }
+
+    // compare the alleles for the pairs in the range
+    private void addPairByPair(final Allele reference, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            switch (AlleleUtils.scaledDifference(getAllele(reference, pairs.getFirstSample(i)),
+                    getAllele(reference, pairs.getSecondSample(i)))) {
+                case 1: // missing
+                    missing[i]++;
+                    break;
+                case 2: // difference
+                    differences[i]++;
+                    sites[i]++;
+                    break;
+                case 0: // no difference
+                    sites[i]++;
+                    break;
+                default:
+                    throw new RuntimeException("Unreacheable code");
+            }
+        }
+    }
+
+    // gets the allele for the sample, or the reference allele if it is the reference
+    private Allele getAllele(final Allele reference, final int sample) {
+        return (sample == SamplePairIndex.REFERENCE_INDEX) ? reference : alleles[sample];
+    }
+
+    /** Updates the counts with the variants pending in the current block. */
+    public void flush() {
+        if (blockSize == 0) {
+            return;
+        }
+        final long mask = (blockSize == Long.SIZE) ? -1L : (1L << blockSize) - 1;
+        forEachRange((start, end) -> flush(mask, start, end));
+        Arrays.fill(blockCalled, 0);
+        Arrays.fill(blockAlternative, 0);
+        blockSize = 0;
+    }
+
+    // updates the counts for the pairs in the range with the current block
+    private void flush(final long mask, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final int first = pairs.getFirstSample(i);
+            final int second = pairs.getSecondSample(i);
+            final long called = getBlock(blockCalled, first, mask)
+                    & getBlock(blockCalled, second, mask);
+            final long different = getBlock(blockAlternative, first, 0)
+                    ^ getBlock(blockAlternative, second, 0);
+            final int calledSites = Long.bitCount(called);
+            differences[i] += Long.bitCount(different & called);
+            sites[i] += calledSites;
+            missing[i] += blockSize - calledSites;
+        }
+    }
+
+    // applies the action to every range of pairs, waiting until all of them are finished
+    private void forEachRange(final RangeAction action) {
+        if (rangeStarts.length == 2) {
+            action.apply(0, differences.length);
+            return;
+        }
+        // the first range is computed in the calling thread
+        final Future<?>[] futures = new Future<?>[rangeStarts.length - 2];
+        for (int i = 0; i < futures.length; i++) {
+            final int start = rangeStarts[i + 1];
+            final int end = rangeStarts[i + 2];
+            futures[i] = executor.get().submit(() -> action.apply(start, end));
+        }
+        action.apply(rangeStarts[0], rangeStarts[1]);
+        try {
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while counting pairwise differences", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while counting pairwise differences", e.getCause());
+        }
+    }
+
+    /** Action over a range of pairs. */
+    @FunctionalInterface
+    private interface RangeAction {
+        void apply(final int start, final int end);
+    }
+
+    // gets the block for the sample, or the reference value if it is the reference
+    private static long getBlock(final long[] block, final int sample, final long reference) {
+        return (sample == SamplePairIndex.REFERENCE_INDEX) ? reference : block[sample];
+    }
+
+    /** Gets a copy of the current counts, including the variants pending in the block. */
+    public Snapshot snapshot() {
+        flush();
+        return new Snapshot(variants, differences.clone(), sites.clone(), missing.clone());
+    }
+
+    /**
+     * Adds the counts (and number of variants) between two snapshots of a counter for the same
+     * pairs.
+     *
+     * @param start the snapshot at the start.
+     * @param end   the snapshot at the end.
+     */
+    public void addCountsBetween(final Snapshot start, final Snapshot end) {
+        Utils.validateArg(start.differences.length == differences.length
+                && end.differences.length == differences.length,
+                "snapshots does not match the counter");
+        for (int i = 0; i < differences.length; i++) {
+            differences[i] += end.differences[i] - start.differences[i];
+            sites[i] += end.sites[i] - start.sites[i];
+            missing[i] += end.missing[i] - start.missing[i];
+        }
+        variants += end.variants - start.variants;
+    }
+
+    /** Clears all the counts, including the pending variants. */
+    public void clear() {
+        Arrays.fill(blockCalled, 0);
+        Arrays.fill(blockAlternative, 0);
+        blockSize = 0;
+        Arrays.fill(differences, 0);
+        Arrays.fill(sites, 0);
+        Arrays.fill(missing, 0);
+        variants = 0;
+    }
+
+    /**
+     * Counts for all the pairs at some point of the accumulation. Counts for the variants added
+     * between two snapshots are the difference between them (see {@link
+     * #addCountsBetween(Snapshot, Snapshot)}).
+     */
+    public static final class Snapshot {
+
+        private final int variants;
+        private final int[] differences;
+        private final int[] sites;
+        private final int[] missing;
+
+        private Snapshot(final int variants, final int[] differences, final int[] sites,
+                final int[] missing) {
+            this.variants = variants;
+            this.differences = differences;
+            this.sites = sites;
+            this.missing = missing;
+        }
+    }
+}
@@ -24,10 +24,10 @@
  * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  *
  */
+
 package org.magicdgs.thaplv.tools.ibd.engine;
 
-import org.magicdgs.thaplv.haplotypes.pairs.DifferencesDistancePair;
-import org.magicdgs.thaplv.io.FastaNsCounter;
+import org.magicdgs.thaplv.io.NsCounter;
 
 import htsjdk.samtools.util.Locatable;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -37,47 +37,62 @@ import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
  * Pair-wise difference window for compute differences
  *
+ * The counts for the pairs are stored in primitive arrays indexed by the pair index in {@link
+ * #getPairs()}, and the sample names should be resolved from it only for output.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
-public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePair>, Locatable {
+public class PairwiseDifferencesWindow implements Locatable {
 
     private final static Logger logger = LogManager.getLogger(IBDOutput.class);
 
     private final SimpleInterval interval;
 
     /**
-     * The ordered pairs
+     * The pairs, shared between windows
      */
-    protected final List<DifferencesDistancePair> orderedPairsBySampleNameInHeader;
+    private final SamplePairIndex pairs;
 
     /**
-     * The number of availables sites in the window
+     * Counts for the pairs in the window
      */
-    protected final int availableSites;
+    private final PairwiseDifferencesCounter counter;
+
+    /**
+     * Counts of the collector when the window started to accumulate; {@code null} if it is not
+     * accumulating
+     */
+    private PairwiseDifferencesCounter.Snapshot startCounts;
 
     /**
-     * The number of variants added to the window
+     * Is the accumulation from the collector counts already finished?
      */
-    protected int variantsInWindow;
+    private boolean accumulationFinished;
+
+    /**
+     * The number of availables sites in the window
+     */
+    protected final int availableSites;
 
     /** Is this window the last one over the genome */
     private final boolean isLast;
 
     /**
-     * Private constructor for initialize everything except the pairs
+     * Constructor for the pairs in the index
      *
      * @param interval the interval configuring the window
+     * @param pairs    the pairs to compare
      * @param counter  counter for the Ns in the FASTA file
      */
-    private PairwiseDifferencesWindow(final SimpleInterval interval, final FastaNsCounter counter) {
+    public PairwiseDifferencesWindow(final SimpleInterval interval, final SamplePairIndex pairs,
+            final NsCounter counter) {
         Utils.nonNull(interval, "null interval");
+        Utils.nonNull(pairs, "null pairs");
         Utils.nonNull(counter, "null counter");
         if (IntervalUtils.intervalIsOnDictionaryContig(interval, counter.getDictionary())) {
             this.interval = interval;
@@ -88,11 +103,14 @@ public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePa
         }
         // TODO: this is -1 to keep consistency with the first implementation
         // TODO: we should check at some point if this is real
-        this.availableSites = interval.size() - counter.countNsRegion(interval) - 1;
-        this.variantsInWindow = 0;
-        orderedPairsBySampleNameInHeader = new ArrayList<>();
+        // the clipped interval is used to do not query outside the contig
+        this.availableSites = this.interval.size() - counter.countNsRegion(this.interval) - 1;
+        this.pairs = pairs;
+        this.counter = new PairwiseDifferencesCounter(pairs);
+        this.startCounts = null;
+        this.accumulationFinished = false;
         logger.debug("Generated PairwiseDifferencesWindow at {} with {} available sites.",
-                interval, availableSites);
+                this.interval, availableSites);
     }
 
     /**
@@ -104,11 +122,8 @@ public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePa
      * @param counter          counter for the Ns in the FASTA file
      */
     public PairwiseDifferencesWindow(final SimpleInterval interval, final String comparisonSample,
-            final List<String> sampleNames, final FastaNsCounter counter) {
-        this(interval, counter);
-        Utils.nonNull(comparisonSample, "null comparisonSample");
-        Utils.nonEmpty(sampleNames, "empty sampleNames");
-        initPairs(comparisonSample, sampleNames);
+            final List<String> sampleNames, final NsCounter counter) {
+        this(interval, SamplePairIndex.againstSample(comparisonSample, sampleNames), counter);
     }
 
     /**
@@ -119,30 +134,33 @@ public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePa
      * @param counter     counter for the Ns in the FASTA file
      */
     public PairwiseDifferencesWindow(final SimpleInterval interval, final List<String> sampleNames,
-            final FastaNsCounter counter) {
-        this(interval, counter);
-        Utils.nonEmpty(sampleNames, "empty sampleNames");
-        initPairs(sampleNames);
+            final NsCounter counter) {
+        this(interval, SamplePairIndex.allPairs(sampleNames), counter);
     }
 
     public PairwiseDifferencesWindow(final String contig, final int start, final int end,
-            final List<String> sampleNames, final FastaNsCounter counter) {
+            final List<String> sampleNames, final NsCounter counter) {
         this(new SimpleInterval(contig, start, end), sampleNames, counter);
     }
 
     public PairwiseDifferencesWindow(final String contig, final int start, final int end,
             final String comparisonSample, final List<String> sampleNames,
-            final FastaNsCounter counter) {
+            final NsCounter counter) {
         this(new SimpleInterval(contig, start, end), comparisonSample, sampleNames, counter);
     }
 
+    public PairwiseDifferencesWindow(final String contig, final int start, final int end,
+            final SamplePairIndex pairs, final NsCounter counter) {
+        this(new SimpleInterval(contig, start, end), pairs, counter);
+    }
+
     /**
      * Get the number of variants in this window
      *
      * @return the number of variants accumulated
      */
     public int getVariantsInWindow() {
-        return variantsInWindow;
+        return counter.getNumberOfVariants();
     }
 
     /**
@@ -160,36 +178,12 @@ public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePa
     }
 
     /**
-     * Initialize the pairs.
-     */
-    private void initPairs(final String sampleName, final List<String> otherSamples) {
-        logger.debug("Comparing {} against other {} samples",
-                sampleName, otherSamples.size());
-        for (final String sample : otherSamples) {
-            // only if they are different
-            if (!sampleName.equals(sample)) {
-                orderedPairsBySampleNameInHeader
-                        .add(new DifferencesDistancePair(sampleName, sample));
-            } else {
-                logger.debug("Equal samples found: ignoring this pair");
-            }
-        }
-
-        logger.debug("Number of pair-wise comparisons to perform: {}",
-                orderedPairsBySampleNameInHeader.size());
-    }
-
-    /**
-     * Initialize the pairs
+     * Get the pairs in the window
+     *
+     * @return the index of pairs
      */
-    private void initPairs(final List<String> sampleNames) {
-        for (int i = 0; i < sampleNames.size() - 1; i++) {
-            for (int j = i + 1; j < sampleNames.size(); j++) {
-                orderedPairsBySampleNameInHeader
-                        .add(new DifferencesDistancePair(sampleNames.get(i),
-                                sampleNames.get(j)));
-            }
-        }
+    public SamplePairIndex getPairs() {
+        return pairs;
     }
 
     /**
@@ -198,7 +192,22 @@ public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePa
      * @return the number of pairs
      */
     public int getNumberOfPairs() {
-        return orderedPairsBySampleNameInHeader.size();
+        return pairs.getNumberOfPairs();
+    }
+
+    /** Get the number of real differences for the pair, without accounting for missing calls. */
+    public int getNumberOfDifferences(final int pair) {
+        return counter.getNumberOfDifferences(pair);
+    }
+
+    /** Get the number of sites for the pair (called in both samples). */
+    public int getNumberOfSites(final int pair) {
+        return counter.getNumberOfSites(pair);
+    }
+
+    /** Get the number of missing calls for the pair (in one or both samples). */
+    public int getNumberOfMissing(final int pair) {
+        return counter.getNumberOfMissing(pair);
     }
 
     /**
@@ -207,11 +216,17 @@ public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePa
      * @param variant the variant to add
      */
     public void addVariant(final VariantContext variant) {
-        if (interval.overlaps(variant)) {
-            for (final DifferencesDistancePair currentPair : orderedPairsBySampleNameInHeader) {
-                currentPair.add(variant);
-            }
-            variantsInWindow++;
+        addVariant(new EncodedHaplotypes(variant, pairs.getSampleNames()));
+    }
+
+    /**
+     * Add the encoded haplotypes to the window
+     *
+     * @param haplotypes the encoded haplotypes to add
+     */
+    public void addVariant(final EncodedHaplotypes haplotypes) {
+        if (interval.overlaps(haplotypes)) {
+            counter.add(haplotypes);
         }
     }
 
@@ -221,17 +236,52 @@ public class PairwiseDifferencesWindow implements Iterable<DifferencesDistancePa
      * @param variant the variant to add
      */
     public void addVariantReferenceComparison(final VariantContext variant) {
-        if (interval.overlaps(variant)) {
-            for (final DifferencesDistancePair currentPair : orderedPairsBySampleNameInHeader) {
-                currentPair.addReference(variant.getGenotype(currentPair.getSample2()));
-            }
-            variantsInWindow++;
-        }
+        addVariantReferenceComparison(new EncodedHaplotypes(variant, pairs.getSampleNames()));
     }
 
-    @Override
-    public Iterator<DifferencesDistancePair> iterator() {
-        return orderedPairsBySampleNameInHeader.iterator();
+    /**
+     * Add the encoded haplotypes for a reference comparison
+     *
+     * @param haplotypes the encoded haplotypes to add
+     */
+    public void addVariantReferenceComparison(final EncodedHaplotypes haplotypes) {
+        // the reference is not in the sample names, so it is handled by the counter
+        addVariant(haplotypes);
+    }
+
+    /** Returns {@code true} if the window is accumulating the counts from a collector. */
+    boolean isAccumulating() {
+        return startCounts != null;
+    }
+
+    /** Returns {@code true} if the window already accumulated the counts from a collector. */
+    boolean isAccumulationFinished() {
+        return accumulationFinished;
+    }
+
+    /**
+     * Starts the accumulation of the counts from a collector. All the variants added to the
+     * collector counter until {@link #endAccumulation(PairwiseDifferencesCounter.Snapshot)} will
+     * be included in the window.
+     *
+     * @param start the counts of the collector when the accumulation starts
+     */
+    void startAccumulation(final PairwiseDifferencesCounter.Snapshot start) {
+        Utils.validateArg(!isAccumulating() && !accumulationFinished,
+                "accumulation already started");
+        startCounts = start;
+    }
+
+    /**
+     * Ends the accumulation of the counts from a collector, adding the counts since the start.
+     *
+     * @param end the counts of the collector when the accumulation ends
+     */
+    void endAccumulation(final PairwiseDifferencesCounter.Snapshot end) {
+        Utils.validateArg(isAccumulating(), "accumulation not started");
+        counter.addCountsBetween(startCounts, end);
+        startCounts = null;
+        accumulationFinished = true;
     }
 
     @Override
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import org.magicdgs.thaplv.haplotypes.pairs.SamplePair;
+
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Index for the pairs of samples to compare, shared by all the windows and counters. Each pair is
+ * identified by an integer index, and the samples are stored as indexes in the sample names, so
+ * the names are only resolved when they are output.
+ *
+ * For all the pair-wise comparisons, pairs are in triangular order ((0,1), (0,2), ..., (1,2),
+ * ...). Subsets of the pair-wise comparisons (from sample groups or explicit pairs) keep the same
+ * order, and only the samples involved in any pair are included in the sample names.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public final class SamplePairIndex {
+
+    /** Sample index used for a sample not in the sample names (e.g., the reference). */
+    public static final int REFERENCE_INDEX = -1;
+
+    private final List<String> sampleNames;
+
+    // name for the sample not in the sample names; null if all the samples are in the names
+    private final String referenceName;
+
+    // indexes in the sample names for the first and second sample in the pairs
+    private final int[] firstSample;
+    private final int[] secondSample;
+
+    private SamplePairIndex(final List<String> sampleNames, final String referenceName,
+            final int[] firstSample, final int[] secondSample) {
+        this.sampleNames = Collections.unmodifiableList(sampleNames);
+        this.referenceName = referenceName;
+        this.firstSample = firstSample;
+        this.secondSample = secondSample;
+    }
+
+    /**
+     * Creates an index for all the pair-wise comparisons between the samples, in triangular order.
+     *
+     * @param sampleNames the names of the samples.
+     *
+     * @return the index of pairs.
+     */
+    public static SamplePairIndex allPairs(final List<String> sampleNames) {
+        Utils.nonEmpty(sampleNames, "empty sampleNames");
+        final int numberOfSamples = sampleNames.size();
+        final int numberOfPairs = numberOfSamples * (numberOfSamples - 1) / 2;
+        final int[] first = new int[numberOfPairs];
+        final int[] second = new int[numberOfPairs];
+        int pair = 0;
+        for (int i = 0; i < numberOfSamples - 1; i++) {
+            for (int j = i + 1; j < numberOfSamples; j++) {
+                first[pair] = i;
+                second[pair++] = j;
+            }
+        }
+        return new SamplePairIndex(sampleNames, null, first, second);
+    }
+
+    /**
+     * Creates an index for the pairs of samples in the same group (within groups) or in different
+     * groups (between groups). Samples without group are not included.
+     *
+     * @param sampleNames  the names of the samples, in the order of the haplotypes.
+     * @param sampleGroups the group for each sample.
+     * @param withinGroups {@code true} for the pairs within groups; {@code false} for the pairs
+     *                     between groups.
+     *
+     * @return the index of pairs.
+     *
+     * @throws IllegalArgumentException if there are no pairs to compare.
+     */
+    public static SamplePairIndex fromGroups(final List<String> sampleNames,
+            final Map<String, String> sampleGroups, final boolean withinGroups) {
+        Utils.nonEmpty(sampleNames, "empty sampleNames");
+        Utils.nonNull(sampleGroups, "null sampleGroups");
+        final List<String> groups = new ArrayList<>(sampleNames.size());
+        for (final String sample : sampleNames) {
+            groups.add(sampleGroups.get(sample));
+        }
+        final List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < sampleNames.size() - 1; i++) {
+            if (groups.get(i) == null) {
+                continue;
+            }
+            for (int j = i + 1; j < sampleNames.size(); j++) {
+                if (groups.get(j) != null
+                        && groups.get(i).equals(groups.get(j)) == withinGroups) {
+                    pairs.add(new int[] {i, j});
+                }
+            }
+        }
+        return subset(sampleNames, pairs);
+    }
+
+    /**
+     * Creates an index for a list of pairs of samples. Pairs are sorted in the triangular order
+     * of the sample names, independently of the order of the samples in the pair, and duplicated
+     * pairs are included only once.
+     *
+     * @param sampleNames the names of the samples, in the order of the haplotypes.
+     * @param pairs       the pairs to compare.
+     *
+     * @return the index of pairs.
+     *
+     * @throws IllegalArgumentException if a sample is not in the sample names, a pair contains
+     *                                  the same sample twice or there are no pairs to compare.
+     */
+    public static SamplePairIndex fromPairs(final List<String> sampleNames,
+            final Collection<? extends SamplePair> pairs) {
+        Utils.nonEmpty(sampleNames, "empty sampleNames");
+        Utils.nonNull(pairs, "null pairs");
+        final Map<String, Integer> sampleIndexes = new HashMap<>(sampleNames.size());
+        for (int i = 0; i < sampleNames.size(); i++) {
+            sampleIndexes.put(sampleNames.get(i), i);
+        }
+        final List<int[]> indexes = new ArrayList<>(pairs.size());
+        for (final SamplePair pair : pairs) {
+            final int first = getIndex(sampleIndexes, pair.getSample1());
+            final int second = getIndex(sampleIndexes, pair.getSample2());
+            Utils.validateArg(first != second, () -> "same sample in pair " + pair.getPairNames());
+            indexes.add(new int[] {Math.min(first, second), Math.max(first, second)});
+        }
+        // sort in triangular order and remove duplicates
+        indexes.sort((p1, p2) -> (p1[0] == p2[0])
+                ? Integer.compare(p1[1], p2[1]) : Integer.compare(p1[0], p2[0]));
+        final List<int[]> unique = new ArrayList<>(indexes.size());
+        for (final int[] pair : indexes) {
+            if (unique.isEmpty() || !Arrays.equals(unique.get(unique.size() - 1), pair)) {
+                unique.add(pair);
+            }
+        }
+        return subset(sampleNames, unique);
+    }
+
+    private static int getIndex(final Map<String, Integer> sampleIndexes, final String sample) {
+        final Integer index = sampleIndexes.get(sample);
+        Utils.validateArg(index != null, () -> "unknown sample: " + sample);
+        return index;
+    }
+
+    // creates the index for the pairs (indexes in the sample names), keeping only the samples
+    // involved in any pair
+    private static SamplePairIndex subset(final List<String> sampleNames,
+            final List<int[]> pairs) {
+        Utils.validateArg(!pairs.isEmpty(), "no pairs to compare");
+        final int[] newIndexes = new int[sampleNames.size()];
+        Arrays.fill(newIndexes, -1);
+        for (final int[] pair : pairs) {
+            newIndexes[pair[0]] = 0;
+            newIndexes[pair[1]] = 0;
+        }
+        final List<String> involved = new ArrayList<>();
+        for (int i = 0; i < sampleNames.size(); i++) {
+            if (newIndexes[i] != -1) {
+                newIndexes[i] = involved.size();
+                involved.add(sampleNames.get(i));
+            }
+        }
+        final int[] first = new int[pairs.size()];
+        final int[] second = new int[pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            first[i] = newIndexes[pairs.get(i)[0]];
+            second[i] = newIndexes[pairs.get(i)[1]];
+        }
+        return new SamplePairIndex(involved, null, first, second);
+    }
+
+    /**
+     * Creates an index for the comparison of every sample against the reference, indexed as
+     * {@link #REFERENCE_INDEX}. No sample is excluded, even if it has the same name as the
+     * reference.
+     *
+     * @param referenceName the name for the reference in the pairs.
+     * @param sampleNames   the samples to compare with the reference.
+     *
+     * @return the index of pairs.
+     */
+    public static SamplePairIndex againstReference(final String referenceName,
+            final List<String> sampleNames) {
+        Utils.nonNull(referenceName, "null referenceName");
+        Utils.nonEmpty(sampleNames, "empty sampleNames");
+        final int[] first = new int[sampleNames.size()];
+        final int[] second = new int[sampleNames.size()];
+        Arrays.fill(first, REFERENCE_INDEX);
+        for (int i = 0; i < second.length; i++) {
+            second[i] = i;
+        }
+        return new SamplePairIndex(sampleNames, referenceName, first, second);
+    }
+
+    /**
+     * Creates an index for the comparison of one sample against the rest. If the comparison
+     * sample is not in the sample names (e.g., the reference), it is indexed as {@link
+     * #REFERENCE_INDEX}.
+     *
+     * @param comparisonSample the sample to use for comparison.
+     * @param sampleNames      the rest of the samples to compare with {@code comparisonSample}.
+     *
+     * @return the index of pairs.
+     */
+    public static SamplePairIndex againstSample(final String comparisonSample,
+            final List<String> sampleNames) {
+        Utils.nonNull(comparisonSample, "null comparisonSample");
+        Utils.nonEmpty(sampleNames, "empty sampleNames");
+        final int comparisonIndex = sampleNames.indexOf(comparisonSample);
+        final int numberOfPairs = sampleNames.size() - ((comparisonIndex == -1) ? 0 : 1);
+        final int[] first = new int[numberOfPairs];
+        final int[] second = new int[numberOfPairs];
+        int pair = 0;
+        for (int i = 0; i < sampleNames.size(); i++) {
+            // only if they are different
+            if (i != comparisonIndex) {
+                first[pair] = (comparisonIndex == -1) ? REFERENCE_INDEX : comparisonIndex;
+                second[pair++] = i;
+            }
+        }
+        return new SamplePairIndex(sampleNames, (comparisonIndex == -1) ? comparisonSample : null,
+                first, second);
+    }
+
+    /** Gets the names of the samples (unmodifiable). */
+    public List<String> getSampleNames() {
+        return sampleNames;
+    }
+
+    /** Gets the number of pairs. */
+    public int getNumberOfPairs() {
+        return firstSample.length;
+    }
+
+    /** Gets the index in the sample names for the first sample in the pair. */
+    public int getFirstSample(final int pair) {
+        return firstSample[pair];
+    }
+
+    /** Gets the index in the sample names for the second sample in the pair. */
+    public int getSecondSample(final int pair) {
+        return secondSample[pair];
+    }
+
+    /** Gets the name of the first sample in the pair. */
+    public String getFirstSampleName(final int pair) {
+        return getSampleName(firstSample[pair]);
+    }
+
+    /** Gets the name of the second sample in the pair. */
+    public String getSecondSampleName(final int pair) {
+        return getSampleName(secondSample[pair]);
+    }
+
+    /**
+     * Gets the formatted name for the pair, as in {@link
+     * org.magicdgs.thaplv.haplotypes.pairs.SamplePair#getPairNames()}.
+     */
+    public String getPairNames(final int pair) {
+        return String.format("(%s,%s)", getFirstSampleName(pair), getSecondSampleName(pair));
+    }
+
+    // gets the sample name for the index
+    private String getSampleName(final int sample) {
+        return (sample == REFERENCE_INDEX) ? referenceName : sampleNames.get(sample);
+    }
+}
@@ -28,12 +28,14 @@
 package org.magicdgs.thaplv.tools.ld;
 
 import org.magicdgs.thaplv.cmd.argumentcollections.LengthBinningArgumentCollection;
-import org.magicdgs.thaplv.cmd.argumentcollections.MultiThreadComputationArgumentCollection;
+import org.magicdgs.thaplv.cmd.argumentcollections.TiledMultiThreadComputationArgumentCollection;
 import org.magicdgs.thaplv.cmd.programgroups.AlphaProgramGroup;
 import org.magicdgs.thaplv.haplotypes.filters.HaplotypeFilterLibrary;
 import org.magicdgs.thaplv.haplotypes.filters.NumberOfMissingFilter;
+import org.magicdgs.thaplv.tools.ld.engine.ContigParallelLD;
 import org.magicdgs.thaplv.tools.ld.engine.LDdecayOutput;
 import org.magicdgs.thaplv.tools.ld.engine.QueueLD;
+import org.magicdgs.thaplv.utils.stats.popgen.SignificanceThresholdTable;
 
 import com.google.common.annotations.VisibleForTesting;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -48,6 +50,10 @@ import org.broadinstitute.hellbender.engine.ReferenceContext;
 import org.broadinstitute.hellbender.engine.filters.VariantFilter;
 import org.broadinstitute.hellbender.exceptions.UserException;
 
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
 /**
  * Computes linkage disequilibrium statistics (based on Pearson's correlation r<sup>2</sup>)
  * binning
@@ -71,6 +77,8 @@ public final class LDdecay extends HaploidWalker {
     static final String MINIMUM_SAMPLES_ARGNAME = "minimum-samples";
     @VisibleForTesting
     static final String INCLUDE_SINGLETONS_ARGNAME = "include-singletons";
+    @VisibleForTesting
+    static final String PARALLEL_CONTIGS_ARGNAME = "parallel-contigs";
 
 
     @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Output prefix for LD results.", optional = false)
@@ -80,9 +88,10 @@ public final class LDdecay extends HaploidWalker {
     public LengthBinningArgumentCollection lengthBinningArgumentCollection =
             new LengthBinningArgumentCollection(0, 10_000, 1_000);
 
+    // the buffer is for tiles of pairs, so it should be smaller than the default
     @ArgumentCollection
-    public MultiThreadComputationArgumentCollection multiThreadArgumentCollection =
-            new MultiThreadComputationArgumentCollection();
+    public TiledMultiThreadComputationArgumentCollection multiThreadArgumentCollection =
+            new TiledMultiThreadComputationArgumentCollection(1_000);
 
     @Argument(fullName = CHI_SQR_QUANTILE_ARGNAME, doc = "Chi-square quantile to assess the significance of max. correlation and compute LD.", optional = true)
     public double chiSqrQuantile = 0.95;
@@ -93,6 +102,9 @@ public final class LDdecay extends HaploidWalker {
     @Argument(fullName = INCLUDE_SINGLETONS_ARGNAME, doc = "Include pairs where the minor variant is a singleton if it fullfit the requirements.", optional = true)
     public boolean includeSingletons = false;
 
+    @Argument(fullName = PARALLEL_CONTIGS_ARGNAME, doc = "Compute each contig independently, using the threads for different contigs. Requires an indexed variants file with contigs in the header; the output is the same as the sequential computation over the same intervals.", optional = true)
+    public boolean parallelContigs = false;
+
     @Override
     protected boolean requiresOutputPloidy() {
         return false;
@@ -103,9 +115,15 @@ public final class LDdecay extends HaploidWalker {
         return true;
     }
 
+    // output for the binned results
+    private LDdecayOutput output;
+
     // this is the queue for store the ld results
     private QueueLD queue;
 
+    // computation by contig (only if parallel contigs are requested)
+    private ContigParallelLD contigLD;
+
     // number of variants processed
     private int nVariants = 0;
 
@@ -145,11 +163,36 @@ public final class LDdecay extends HaploidWalker {
                     "All variant pairs will be included in the analysis because chi-square quantile is set to 0.");
         }
 
-        // create queue
-        final LDdecayOutput output =
-                new LDdecayOutput(outputPrefix, lengthBinningArgumentCollection.binDistance);
-        queue = new QueueLD(output, lengthBinningArgumentCollection, minSamples, !includeSingletons,
-                chiSqrQuantile, multiThreadArgumentCollection);
+        // create output
+        output = new LDdecayOutput(outputPrefix);
+        // the thresholds are computed once for every possible number of haplotypes
+        final SignificanceThresholdTable thresholds =
+                new SignificanceThresholdTable(chiSqrQuantile, nSamples);
+        if (parallelContigs) {
+            logger.info("Contigs will be computed in parallel.");
+            contigLD = new ContigParallelLD(lengthBinningArgumentCollection, minSamples,
+                    !includeSingletons, thresholds, multiThreadArgumentCollection);
+        } else {
+            // create queue
+            queue = new QueueLD(output::write, lengthBinningArgumentCollection, minSamples,
+                    !includeSingletons, thresholds, multiThreadArgumentCollection);
+        }
+    }
+
+    @Override
+    protected boolean traverseByContig() {
+        return parallelContigs;
+    }
+
+    @Override
+    protected boolean supportsTraversalByContig() {
+        return true;
+    }
+
+    @Override
+    protected void traverseContigs(final List<String> contigs,
+            final Function<String, Stream<VariantContext>> haploidVariants) {
+        contigLD.compute(contigs, haploidVariants, output::write);
     }
 
     /** Overrides to validate the arguments. */
@@ -180,10 +223,18 @@ public final class LDdecay extends HaploidWalker {
     /** This return the number of pairs computed. */
     @Override
     public Object onTraversalSuccess() {
-        queue.finalizeQueue();
-        final int computedPairs = queue.computedPairs();
+        final int computedPairs;
+        final int addedPairs;
+        if (parallelContigs) {
+            computedPairs = contigLD.computedPairs();
+            addedPairs = contigLD.addedPairs();
+        } else {
+            queue.finalizeQueue();
+            computedPairs = queue.computedPairs();
+            addedPairs = queue.addedPairs();
+        }
         logger.info("Computed linkage disequilibrium statistics on {} pairs out of {}.",
-                () -> computedPairs, () -> queue.addedPairs());
+                computedPairs, addedPairs);
         return computedPairs;
     }
 
@@ -192,5 +243,8 @@ public final class LDdecay extends HaploidWalker {
         if (queue != null) {
             queue.close();
         }
+        if (output != null) {
+            output.close();
+        }
     }
 }
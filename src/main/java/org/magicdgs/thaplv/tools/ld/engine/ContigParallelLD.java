@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ld.engine;
+
+import org.magicdgs.thaplv.cmd.argumentcollections.LengthBinningArgumentCollection;
+import org.magicdgs.thaplv.cmd.argumentcollections.TiledMultiThreadComputationArgumentCollection;
+import org.magicdgs.thaplv.utils.stats.popgen.SignificanceThresholdTable;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Class for computing LD for several contigs in parallel. Each contig is computed in a single
+ * thread with its own {@link QueueLD} (and thus its own window and bins), and the binned results
+ * are written in the order of the contigs once they are finished. Thus, the output is the same
+ * as processing the contigs sequentially.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class ContigParallelLD {
+
+    // logger for this class
+    private static final Logger logger = LogManager.getLogger(ContigParallelLD.class);
+
+    private final AtomicInteger computedPairs = new AtomicInteger(0);
+    private final AtomicInteger addedPairs = new AtomicInteger(0);
+
+    // PARAMETERS
+    private final LengthBinningArgumentCollection binningParams;
+    private final int minimumSamples;
+    private final boolean rmSingletons;
+    private final SignificanceThresholdTable thresholds;
+    private final int nThreads;
+    // parameters for the queue of each contig (single-thread)
+    private final TiledMultiThreadComputationArgumentCollection contigThreadParams;
+
+    /**
+     * Initialize the computation of LD by contig.
+     *
+     * @param binningParams     the parameters for binning.
+     * @param minimumSamples    the minimum number of samples to allow computation.
+     * @param rmSingletons      if {@code true}, filter-out singletons.
+     * @param thresholds        the pre-computed thresholds to use for compute if max. correlation
+     *                          is significant.
+     * @param multiThreadParams parameters for multi-thread computation; the threads are used to
+     *                          compute different contigs.
+     */
+    public ContigParallelLD(final LengthBinningArgumentCollection binningParams,
+            final int minimumSamples, final boolean rmSingletons,
+            final SignificanceThresholdTable thresholds,
+            final TiledMultiThreadComputationArgumentCollection multiThreadParams) {
+        this.binningParams = binningParams;
+        this.minimumSamples = minimumSamples;
+        this.rmSingletons = rmSingletons;
+        this.thresholds = thresholds;
+        this.nThreads = multiThreadParams.nThreads;
+        this.contigThreadParams = new TiledMultiThreadComputationArgumentCollection(1);
+        this.contigThreadParams.tileSize = multiThreadParams.getTileSize();
+    }
+
+    /** Gets the number of computed pairs. Note: this are the ones which passed all the filters. */
+    public int computedPairs() {
+        return computedPairs.intValue();
+    }
+
+    /** Gets the number of added pairs. Note: the unfiltered ones. */
+    public int addedPairs() {
+        return addedPairs.intValue();
+    }
+
+    /**
+     * Computes LD for every contig.
+     *
+     * @param contigs        the contigs to compute, in the order for the output.
+     * @param contigVariants function returning the variants for a contig. It should be safe to
+     *                       call it from different threads.
+     * @param binsWriter     the writer for the binned results of each contig (see {@link
+     *                       LDdecayBins#format(String)}).
+     */
+    public void compute(final List<String> contigs,
+            final Function<String, Stream<VariantContext>> contigVariants,
+            final Consumer<String[]> binsWriter) {
+        logger.debug("Computing {} contigs in {} threads", contigs::size, () -> nThreads);
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            final List<Future<String[]>> results = new ArrayList<>(contigs.size());
+            for (final String contig : contigs) {
+                results.add(executor.submit(() -> computeContig(contig, contigVariants)));
+            }
+            // write in order
+            for (int i = 0; i < contigs.size(); i++) {
+                binsWriter.accept(results.get(i).get());
+                logger.debug("Finished contig {}", contigs.get(i));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while computing LD by contig", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error while computing LD by contig", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Computes LD for one contig and returns the formatted bins. */
+    private String[] computeContig(final String contig,
+            final Function<String, Stream<VariantContext>> contigVariants) {
+        final StringBuilder[] tables = new StringBuilder[LDdecayOutput.statsToBin.size()];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = new StringBuilder();
+        }
+        try (final QueueLD queue = new QueueLD(formatted -> {
+                for (int i = 0; i < tables.length; i++) {
+                    tables[i].append(formatted[i]);
+                }
+            }, binningParams, minimumSamples, rmSingletons, thresholds, contigThreadParams);
+                final Stream<VariantContext> variants = contigVariants.apply(contig)) {
+            variants.forEach(queue::add);
+            queue.finalizeQueue();
+            computedPairs.addAndGet(queue.computedPairs());
+            addedPairs.addAndGet(queue.addedPairs());
+        }
+        final String[] formatted = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            formatted[i] = tables[i].toString();
+        }
+        return formatted;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ld.engine;
+
+import org.magicdgs.thaplv.haplotypes.light.SNPpair;
+import org.magicdgs.thaplv.utils.stats.LengthBinning;
+import org.magicdgs.thaplv.utils.stats.popgen.LDfunctions;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binned statistics for LDdecay. It contains the abstraction of adding the statistics for pairs
+ * and formatting them as tables for {@link LDdecayOutput}.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ * @deprecated the engine for ld will be re-implemented from scratch
+ */
+@Deprecated
+public class LDdecayBins {
+
+    private static final char TAB_SEPARATOR = '\t';
+
+    // number of values accumulated by each worker for a statistic before adding them to the bins
+    private static final int ACCUMULATOR_CAPACITY = 8_192;
+    // initial capacity for the accumulators, which grow till ACCUMULATOR_CAPACITY
+    private static final int ACCUMULATOR_INITIAL_CAPACITY = 64;
+
+    // indexes in statsToBin for each statistic in LDfunctions.rStatisticsOrder (-1 if not binned)
+    private static final int[] binIndex = new int[LDfunctions.rStatisticsOrder.length];
+    private static final int[] posIndex = new int[LDfunctions.rStatisticsOrder.length];
+    private static final int[] negIndex = new int[LDfunctions.rStatisticsOrder.length];
+
+    static {
+        for (int i = 0; i < LDfunctions.rStatisticsOrder.length; i++) {
+            binIndex[i] = LDdecayOutput.statsToBin.indexOf(LDfunctions.rStatisticsOrder[i]);
+            posIndex[i] = LDdecayOutput.statsToBin.indexOf(LDfunctions.rStatisticsOrder[i] + "_pos");
+            negIndex[i] = LDdecayOutput.statsToBin.indexOf(LDfunctions.rStatisticsOrder[i] + "_neg");
+        }
+    }
+
+    // format for the values (not thread-safe, so it is not shared among bins)
+    private final DecimalFormat roundedFormat = new DecimalFormat("#.#######");
+
+    // array that contains the binning in the order: positive rw, negative rw, r2 and r2'
+    private final LengthBinning[] binningStats;
+
+    // accumulators for every thread that added values, to merge them before formatting
+    private final List<BinAccumulator> accumulators = new ArrayList<>();
+    // accumulator for the current thread
+    private final ThreadLocal<BinAccumulator> threadAccumulator =
+            ThreadLocal.withInitial(this::newAccumulator);
+
+    /**
+     * Creates the bins for LDdecay.
+     *
+     * @param binLength   lenght for binning.
+     * @param maxDistance maximum distance between pairs; {@code null} if unknown.
+     */
+    public LDdecayBins(final int binLength, final Integer maxDistance) {
+        final double[] quantiles = LDdecayOutput.quantiles.stream().mapToDouble(d -> d).toArray();
+        binningStats = new LengthBinning[LDdecayOutput.statsToBin.size()];
+        for (int i = 0; i < binningStats.length; i++) {
+            binningStats[i] = new LengthBinning(binLength, maxDistance, quantiles);
+        }
+    }
+
+    /**
+     * Formats all the histograms, appending the contig to each bin. There is one table for each
+     * statistic in {@link LDdecayOutput#statsToBin}.
+     *
+     * Note: values added by other threads are merged before formatting, so they should be
+     * finished.
+     */
+    public String[] format(final String contig) {
+        flushAccumulators();
+        final String[] tables = new String[binningStats.length];
+        for (int i = 0; i < binningStats.length; i++) {
+            tables[i] = formatBins(contig, binningStats[i]);
+        }
+        return tables;
+    }
+
+    /** Converts a {@link LengthBinning} into a histogram string format, appending the contig to it. */
+    private String formatBins(final String contig, final LengthBinning bins) {
+        final StringBuilder builder = new StringBuilder();
+        bins.getBinStats().entrySet().stream().filter(bin -> bin.getValue().numDataValues() != 0)
+                .forEach(bin -> {
+                    builder.append(contig).append(TAB_SEPARATOR);
+                    builder.append(bin.getKey()).append(TAB_SEPARATOR);
+                    builder.append(bin.getValue().numDataValues()).append(TAB_SEPARATOR);
+                    builder.append(roundedFormat.format(bin.getValue().mean()))
+                            .append(TAB_SEPARATOR);
+                    builder.append(roundedFormat.format(bin.getValue().sampleStandardDeviation()))
+                            .append(TAB_SEPARATOR);
+                    builder.append(roundedFormat.format(bin.getValue().median()))
+                            .append(TAB_SEPARATOR);
+                    for (final double quantile : bin.getValue().getAllQuantiles().values()) {
+                        builder.append(roundedFormat.format(quantile)).append(TAB_SEPARATOR);
+                    }
+                    builder.append('\n');
+                });
+        return builder.toString();
+    }
+
+
+    /**
+     * Adds to a distance bin a value for the statistic idx. The value is accumulated in the
+     * current thread accumulator to avoid contention.
+     */
+    private void addToBin(int idx, int distance, double value) {
+        threadAccumulator.get().add(idx, distance, value);
+    }
+
+    /** Creates and registers an accumulator for a thread. */
+    private BinAccumulator newAccumulator() {
+        final BinAccumulator accumulator = new BinAccumulator();
+        synchronized (accumulators) {
+            accumulators.add(accumulator);
+        }
+        return accumulator;
+    }
+
+    /** Merges the values in all the accumulators into the binned statistics. */
+    private void flushAccumulators() {
+        synchronized (accumulators) {
+            accumulators.forEach(BinAccumulator::flush);
+        }
+    }
+
+
+    /** Adds a SNP pair and associated values. */
+    public void add(final SNPpair pair, final double[] values) {
+        final String chromosomeName = pair.getReferenceA();
+        if (!chromosomeName.equals(pair.getReferenceB())) {
+            throw new IllegalArgumentException(
+                    "Output for pairs in different chromosomes not implemented");
+        }
+        add(pair.getDistance(), values);
+    }
+
+    /** Adds a new value to bin. */
+    private void add(int distance, double[] values) {
+        if (values.length != LDfunctions.rStatisticsOrder.length) {
+            throw new IllegalArgumentException("Only " + LDfunctions.rStatisticsOrder.length
+                    + " statistics could be written in the output file");
+        }
+        // iterate over the values
+        for (int i = 0; i < LDfunctions.rStatisticsOrder.length; i++) {
+            // if it have an index, added
+            if (binIndex[i] != -1) {
+                addToBin(binIndex[i], distance, values[i]);
+            } else {
+                // bin according to the sign of the value
+                // TODO: value of 0 is actually bin to the negative, but it could be added to the positive too or both/none
+                // TODO: discussion in https://github.com/magicDGS/thaplv/issues/39
+                if (posIndex[i] != -1 && values[i] > 0) {
+                    addToBin(posIndex[i], distance, values[i]);
+                } else if (negIndex[i] != -1 && values[i] <= 0) {
+                    addToBin(negIndex[i], distance, values[i]);
+                }
+
+            }
+        }
+    }
+
+    /** Clears all the already computed binned statistics. */
+    public void clear() {
+        synchronized (accumulators) {
+            accumulators.forEach(BinAccumulator::clear);
+        }
+        for (int i = 0; i < binningStats.length; i++) {
+            binningStats[i].clear();
+        }
+    }
+
+    /**
+     * Per-thread accumulator for the binned statistics. Values are stored in primitive arrays and
+     * added to the shared bins in batches (when they are full or before formatting), in the same
+     * order as they were accumulated.
+     */
+    private final class BinAccumulator {
+
+        private final int[][] distances =
+                new int[binningStats.length][ACCUMULATOR_INITIAL_CAPACITY];
+        private final double[][] values =
+                new double[binningStats.length][ACCUMULATOR_INITIAL_CAPACITY];
+        private final int[] sizes = new int[binningStats.length];
+
+        private void add(final int idx, final int distance, final double value) {
+            // grow the arrays if needed; small contigs do not require the full capacity
+            if (sizes[idx] == distances[idx].length) {
+                final int capacity = Math.min(2 * sizes[idx], ACCUMULATOR_CAPACITY);
+                distances[idx] = Arrays.copyOf(distances[idx], capacity);
+                values[idx] = Arrays.copyOf(values[idx], capacity);
+            }
+            distances[idx][sizes[idx]] = distance;
+            values[idx][sizes[idx]] = value;
+            if (++sizes[idx] == ACCUMULATOR_CAPACITY) {
+                flush(idx);
+            }
+        }
+
+        private void flush(final int idx) {
+            final LengthBinning bins = binningStats[idx];
+            synchronized (bins) {
+                for (int i = 0; i < sizes[idx]; i++) {
+                    bins.add(distances[idx][i], values[idx][i]);
+                }
+            }
+            sizes[idx] = 0;
+        }
+
+        private void flush() {
+            for (int idx = 0; idx < sizes.length; idx++) {
+                flush(idx);
+            }
+        }
+
+        private void clear() {
+            Arrays.fill(sizes, 0);
+        }
+    }
+}
@@ -27,10 +27,6 @@
 
 package org.magicdgs.thaplv.tools.ld.engine;
 
-import org.magicdgs.thaplv.haplotypes.light.SNPpair;
-import org.magicdgs.thaplv.utils.stats.LengthBinning;
-import org.magicdgs.thaplv.utils.stats.popgen.LDfunctions;
-
 import com.google.common.annotations.VisibleForTesting;
 import org.broadinstitute.hellbender.exceptions.UserException;
 
@@ -39,13 +35,13 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * Output for LDdecay. It contains the abstraction of adding/writing the binning statistics.
+ * Output for LDdecay. It contains the abstraction of writing the tables for the binned
+ * statistics ({@link LDdecayBins}) in their respective files.
  *
  * @author Daniel Gomez-Sanchez (magicDGS)
  * @deprecated the engine for ld will be re-implemented from scratch
@@ -55,10 +51,8 @@ public class LDdecayOutput implements Closeable {
 
     private static final char TAB_SEPARATOR = '\t';
 
-    // format for the values
-    private static final DecimalFormat ROUNDED_FORMAT = new DecimalFormat("#.#######");
-
-    private static final List<Double> quantiles = new ArrayList<Double>() {{
+    // quantiles computed for each bin
+    static final List<Double> quantiles = new ArrayList<Double>() {{
         add(1D);
         add(5D);
         add(95D);
@@ -81,8 +75,6 @@ public class LDdecayOutput implements Closeable {
         add("rw_neg");
     }};
 
-    // array that contains the binning in the order: positive rw, negative rw, r2 and r2'
-    private final LengthBinning[] binningStats;
     private final BufferedWriter[] writers;
     private final File[] outputFiles;
 
@@ -90,22 +82,18 @@ public class LDdecayOutput implements Closeable {
      * Creates a LDdecay output.
      *
      * @param outputPrefix prefix for binned histograms.
-     * @param binLength    lenght for binning.
      *
      * @throws UserException.CouldNotCreateOutputFile if an IO occurs
      */
-    public LDdecayOutput(final String outputPrefix, final int binLength) {
+    public LDdecayOutput(final String outputPrefix) {
         final String header = baseHeader + TAB_SEPARATOR
                 + String.join(String.valueOf(TAB_SEPARATOR), stringQuantiles);
 
         // init a new Array with the length og the stats to bin
-        binningStats = new LengthBinning[statsToBin.size()];
         writers = new BufferedWriter[statsToBin.size()];
         outputFiles = new File[statsToBin.size()];
 
         for (int i = 0; i < statsToBin.size(); i++) {
-            binningStats[i] =
-                    new LengthBinning(binLength, quantiles.stream().mapToDouble(d -> d).toArray());
             outputFiles[i] = new File(String.format("%s.%s", outputPrefix, statsToBin.get(i)));
             try {
                 writers[i] = new BufferedWriter(new FileWriter(outputFiles[i]));
@@ -117,101 +105,29 @@ public class LDdecayOutput implements Closeable {
         }
     }
 
-    /** Writes all the histograms to their respective files. */
-    public void write(final String contig) {
+    /**
+     * Writes the tables for the binned statistics to their respective files.
+     *
+     * @param tables one table for each statistic in {@link #statsToBin}, as returned by {@link
+     *               LDdecayBins#format(String)}.
+     */
+    public synchronized void write(final String[] tables) {
+        if (tables.length != statsToBin.size()) {
+            throw new IllegalArgumentException("Only " + statsToBin.size()
+                    + " tables could be written in the output files");
+        }
         for (int i = 0; i < statsToBin.size(); i++) {
-            // get the length binning
             try {
-                writers[i].write(formatBins(contig, binningStats[i]));
+                writers[i].write(tables[i]);
             } catch (IOException e) {
                 throw new UserException.CouldNotCreateOutputFile(outputFiles[i], e);
             }
         }
-
-    }
-
-    /** Converts a {@link LengthBinning} into a histogram string format, appending the contig to it. */
-    private static String formatBins(final String contig, final LengthBinning bins) {
-        final StringBuilder builder = new StringBuilder();
-        bins.getBinStats().entrySet().stream().filter(bin -> bin.getValue().numDataValues() != 0)
-                .forEach(bin -> {
-                    builder.append(contig).append(TAB_SEPARATOR);
-                    builder.append(bin.getKey()).append(TAB_SEPARATOR);
-                    builder.append(bin.getValue().numDataValues()).append(TAB_SEPARATOR);
-                    builder.append(ROUNDED_FORMAT.format(bin.getValue().mean()))
-                            .append(TAB_SEPARATOR);
-                    builder.append(ROUNDED_FORMAT.format(bin.getValue().sampleStandardDeviation()))
-                            .append(TAB_SEPARATOR);
-                    builder.append(ROUNDED_FORMAT.format(bin.getValue().median()))
-                            .append(TAB_SEPARATOR);
-                    for (final double quantile : bin.getValue().getAllQuantiles().values()) {
-                        builder.append(ROUNDED_FORMAT.format(quantile)).append(TAB_SEPARATOR);
-                    }
-                    builder.append('\n');
-                });
-        return builder.toString();
-    }
-
-
-    /** Adds to a distance bin a value for the statistic idx. */
-    private synchronized void addToBin(int idx, int distance, double value) {
-        binningStats[idx].add(distance, value);
-    }
-
-
-    /** Adds a SNP pair and associated values. */
-    public void add(final SNPpair pair, final double[] values) {
-        final String chromosomeName = pair.getReferenceA();
-        if (!chromosomeName.equals(pair.getReferenceB())) {
-            throw new IllegalArgumentException(
-                    "Output for pairs in different chromosomes not implemented");
-        }
-        add(pair.getDistance(), values);
-    }
-
-    /** Adds a new value to bin. */
-    private void add(int distance, double[] values) {
-        if (values.length != LDfunctions.rStatisticsOrder.length) {
-            throw new IllegalArgumentException("Only " + LDfunctions.rStatisticsOrder.length
-                    + " statistics could be written in the output file");
-        }
-        // iterate over the values
-        for (int i = 0; i < LDfunctions.rStatisticsOrder.length; i++) {
-            // update the binnings if this value is binned
-            final int idx = statsToBin.indexOf(LDfunctions.rStatisticsOrder[i]);
-            // if it have an index, added
-            if (idx != -1) {
-                // Only this needs to be synchronized
-                addToBin(idx, distance, values[i]);
-            } else {
-                // check if it is asked to separate positive and negative values
-                final int posIndex = statsToBin
-                        .indexOf(String.format("%s_pos", LDfunctions.rStatisticsOrder[i]));
-                final int negIndex = statsToBin
-                        .indexOf(String.format("%s_neg", LDfunctions.rStatisticsOrder[i]));
-                // bin according to the sign of the value
-                // TODO: value of 0 is actually bin to the negative, but it could be added to the positive too or both/none
-                // TODO: discussion in https://github.com/magicDGS/thaplv/issues/39
-                if (posIndex != -1 && values[i] > 0) {
-                    addToBin(posIndex, distance, values[i]);
-                } else if (negIndex != -1 && values[i] <= 0) {
-                    addToBin(negIndex, distance, values[i]);
-                }
-
-            }
-        }
-    }
-
-    /** Clears all the already computed binned statistics. */
-    public void clear() {
-        for (int i = 0; i < statsToBin.size(); i++) {
-            binningStats[i].clear();
-        }
     }
 
     /** Closes all the output binned stats. */
     @Override
-    public void close() {
+    public synchronized void close() {
         for (int i = 0; i < statsToBin.size(); i++) {
             // get the length binning
             try {
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ld.engine;
+
+import org.magicdgs.thaplv.haplotypes.light.PackedGenotype;
+
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Window of variants for LD computation, stored as {@link PackedGenotype} in a pre-allocated ring
+ * buffer. Variants are added at the end and removed from the beginning, and could be accessed by
+ * their index in the window (0 is the first variant).
+ *
+ * If the window is full, the buffer is re-allocated with the double of capacity, so the number of
+ * variants in memory is only limited by the data.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+class PackedGenotypeWindow {
+
+    // default capacity for the window
+    static final int DEFAULT_CAPACITY = 1024;
+
+    // buffer for the variants
+    private PackedGenotype[] buffer;
+    // index of the first variant in the buffer
+    private int head;
+    // number of variants in the buffer
+    private int size;
+
+    /** Creates a window with the default capacity. */
+    PackedGenotypeWindow() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a window with the provided initial capacity.
+     *
+     * @param initialCapacity the number of variants pre-allocated.
+     */
+    PackedGenotypeWindow(final int initialCapacity) {
+        Utils.validateArg(initialCapacity > 0, () -> "invalid capacity: " + initialCapacity);
+        this.buffer = new PackedGenotype[initialCapacity];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /** Returns the number of variants in the window. */
+    int size() {
+        return size;
+    }
+
+    /** Returns {@code true} if the window does not contain variants; {@code false} otherwise. */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Adds a variant at the end of the window. */
+    void add(final PackedGenotype genotype) {
+        Utils.nonNull(genotype, "null genotype");
+        if (size == buffer.length) {
+            grow();
+        }
+        buffer[(head + size) % buffer.length] = genotype;
+        size++;
+    }
+
+    /**
+     * Gets the variant at the index position in the window. The first index is 0.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    PackedGenotype get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index out of range: " + index);
+        }
+        return buffer[(head + index) % buffer.length];
+    }
+
+    /**
+     * Gets the first variant in the window.
+     *
+     * @throws NoSuchElementException if the window is empty.
+     */
+    PackedGenotype first() {
+        checkNotEmpty();
+        return buffer[head];
+    }
+
+    /**
+     * Gets the last variant in the window.
+     *
+     * @throws NoSuchElementException if the window is empty.
+     */
+    PackedGenotype last() {
+        checkNotEmpty();
+        return buffer[(head + size - 1) % buffer.length];
+    }
+
+    /**
+     * Removes the first variant in the window.
+     *
+     * @return the removed variant.
+     *
+     * @throws NoSuchElementException if the window is empty.
+     */
+    PackedGenotype removeFirst() {
+        checkNotEmpty();
+        final PackedGenotype removed = buffer[head];
+        // release the reference
+        buffer[head] = null;
+        head = (head + 1) % buffer.length;
+        size--;
+        return removed;
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new NoSuchElementException("empty window");
+        }
+    }
+
+    // doubles the capacity, copying the variants starting from the head
+    private void grow() {
+        final PackedGenotype[] newBuffer = new PackedGenotype[buffer.length * 2];
+        for (int i = 0; i < size; i++) {
+            newBuffer[i] = buffer[(head + i) % buffer.length];
+        }
+        buffer = newBuffer;
+        head = 0;
+    }
+}
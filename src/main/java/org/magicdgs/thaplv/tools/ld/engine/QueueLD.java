@@ -28,19 +28,24 @@
 package org.magicdgs.thaplv.tools.ld.engine;
 
 import org.magicdgs.thaplv.cmd.argumentcollections.LengthBinningArgumentCollection;
-import org.magicdgs.thaplv.cmd.argumentcollections.MultiThreadComputationArgumentCollection;
-import org.magicdgs.thaplv.haplotypes.light.LightGenotype;
+import org.magicdgs.thaplv.cmd.argumentcollections.TiledMultiThreadComputationArgumentCollection;
+import org.magicdgs.thaplv.haplotypes.light.PackedGenotype;
 import org.magicdgs.thaplv.haplotypes.light.SNPpair;
 import org.magicdgs.thaplv.utils.stats.popgen.LDfunctions;
+import org.magicdgs.thaplv.utils.stats.popgen.SignificanceThresholdTable;
 
 import htsjdk.variant.variantcontext.VariantContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 
 import java.io.Closeable;
-import java.util.Deque;
-import java.util.LinkedList;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
@@ -48,6 +53,10 @@ import java.util.function.Consumer;
 /**
  * Class for computing LD using a queue of variants, keep the necessary ones.
  *
+ * Each contig is binned independently: once the traversal moves to the next contig, the bins for
+ * the previous one are formatted and written by a background writer as soon as all its pairs are
+ * computed, in the same order as the contigs were added.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  * @deprecated the engine for ld will be re-implemented from scratch
  */
@@ -63,53 +72,68 @@ public class QueueLD implements Closeable {
     // Executor for the thread pool
     private final Optional<ThreadPoolExecutor> executor;
     // this is a simple way of encapsulating both multi-thread and no-multi thread processing
-    private final Consumer<LDcomputation> runner;
+    private final Consumer<LDtile> runner;
+    // number of pairs for each tile
+    private final int tileSize;
+    // tile where the pairs are accumulated before running it
+    private LDtile currentTile;
 
-    // queue with the light genotypes
-    private final Deque<LightGenotype> snpQueue;
+    // window with the packed genotypes
+    private final PackedGenotypeWindow snpQueue;
 
     // current contig
     private String currentContig = null;
-    // bin Writer
-    private final LDdecayOutput output;
+    // computation for the current contig (null if there is no contig in progress)
+    private ContigComputation currentComputation = null;
+    // writer for the formatted bins once a contig is finished
+    private final Consumer<String[]> binsWriter;
+    // background writer for the bins
+    private final ExecutorService writer;
+    // last contig scheduled for writing
+    private CompletableFuture<Void> lastWrite;
 
     // PARAMETERS
     private final LengthBinningArgumentCollection binningParams;
     private final int minimumSamples;
     private final boolean rmSingletons;
-    private final double chiSqrQuantile;
+    private final SignificanceThresholdTable thresholds;
 
     /**
      * Initialize the queue for LD computation.
      *
-     * @param output            the output for bin the results.
+     * @param binsWriter        the writer for the binned results of each contig (see {@link
+     *                          LDdecayBins#format(String)}).
      * @param binningParams     the parameters for binning.
      * @param minimumSamples    the minimum number of samples to allow computation.
      * @param rmSingletons      if {@code true}, filter-out singletons.
-     * @param chiSqrQuantile    the chi-square quantile to use for compute if max. correlation is
-     *                          significant.
+     * @param thresholds        the pre-computed thresholds to use for compute if max. correlation
+     *                          is significant.
      * @param multiThreadParams parameters for multi-thread computation.
      */
-    public QueueLD(final LDdecayOutput output, final LengthBinningArgumentCollection binningParams,
-            final int minimumSamples, final boolean rmSingletons, final double chiSqrQuantile,
-            final MultiThreadComputationArgumentCollection multiThreadParams) {
+    public QueueLD(final Consumer<String[]> binsWriter,
+            final LengthBinningArgumentCollection binningParams,
+            final int minimumSamples, final boolean rmSingletons,
+            final SignificanceThresholdTable thresholds,
+            final TiledMultiThreadComputationArgumentCollection multiThreadParams) {
         this.binningParams = binningParams;
         this.minimumSamples = minimumSamples;
-        this.chiSqrQuantile = chiSqrQuantile;
+        this.thresholds = thresholds;
         this.rmSingletons = rmSingletons;
         this.executor = multiThreadParams.getFixedThreadPoolWithBoundedQueue();
         if (executor.isPresent()) {
             this.runner = executor.get()::execute;
         } else {
             logger.debug("Using QueueLD in the current thread.");
-            this.runner = LDcomputation::run;
+            this.runner = LDtile::run;
         }
-        // linked list could handle up to 1.5 million variants (stored as LightGenotype)
-        this.snpQueue = new LinkedList<>();
+        this.tileSize = multiThreadParams.getTileSize();
+        // the window grows if more variants are in range
+        this.snpQueue = new PackedGenotypeWindow();
         this.computedPairs = new AtomicInteger(0);
         this.addedPairs = new AtomicInteger(0);
-        this.output = output;
-
+        this.binsWriter = binsWriter;
+        this.writer = Executors.newSingleThreadExecutor();
+        this.lastWrite = CompletableFuture.completedFuture(null);
     }
 
     /** Returns the number of records in memory. */
@@ -131,64 +155,137 @@ public class QueueLD implements Closeable {
     public boolean add(final VariantContext variant) {
         // get the contig
         final String contig = variant.getContig();
-        if (currentContig == null) {
-            currentContig = contig;
+        if (currentComputation == null) {
+            startContig(contig);
         }
         // check if the queue is empty
         if (snpQueue.isEmpty() ||
                 // or if it is in the contig and in the first variant, add directly
                 (currentContig.equals(contig) && binningParams.bellowMaximumDistance(
-                        variant.getStart(), snpQueue.peek().getPosition()))) {
+                        variant.getStart(), snpQueue.first().getPosition()))) {
             // directly added
-            return snpQueue.add(new LightGenotype(variant));
+            snpQueue.add(new PackedGenotype(variant));
+            return true;
         }
         // if it is not, check if it change the chromosome
-        if (snpQueue.peekLast().getContig().equals(contig)) {
+        if (snpQueue.last().getContig().equals(contig)) {
             // compute only for the firs variant
             computeQueueLD();
             // recursive call
             return add(variant);
         } else {
-            finalizeQueue();
+            // compute the rest of the variants, but do not wait for the contig to finish
+            computeRemaining();
+            finishContig();
             // we changed the contig
-            currentContig = contig;
+            startContig(contig);
             // add variant to the queue
-            return snpQueue.add(new LightGenotype(variant));
+            snpQueue.add(new PackedGenotype(variant));
+            return true;
         }
     }
 
-    /** Computes LD for the first element in the queue against all the other. */
+    /**
+     * Computes LD for the first element in the queue against all the other. The pairs are
+     * accumulated in tiles, which are submitted once they are full.
+     */
     private void computeQueueLD() {
         // extract the first variant
-        final LightGenotype firstVariant = snpQueue.remove();
-        for (final LightGenotype second : snpQueue) {
-            final LDcomputation toCompute = new LDcomputation(firstVariant, second);
+        final PackedGenotype firstVariant = snpQueue.removeFirst();
+        for (int i = 0; i < snpQueue.size(); i++) {
+            final PackedGenotype secondVariant = snpQueue.get(i);
+            // only generate the pair if the minimum distance threshold is hold
+            if (!binningParams.exceedMinimumDistance(firstVariant.getPosition(),
+                    secondVariant.getPosition())) {
+                continue;
+            }
+            // pairs pruned before counting are still added pairs
+            if (isPrunable(firstVariant, secondVariant)) {
+                addedPairs.incrementAndGet();
+                continue;
+            }
+            currentTile.add(firstVariant, secondVariant);
+            if (currentTile.isFull()) {
+                submitCurrentTile();
+            }
+        }
+    }
+
+    /**
+     * Checks if a pair could be discarded without counting the haplotypes. This is only possible
+     * if both variants do not have missing genotypes: in that case, the counts for the pair are
+     * the same as the counts for each variant and the conditions for computing the LD statistics
+     * are tested as in {@link LDtile}.
+     *
+     * @return {@code true} if the pair is known to be discarded; {@code false} otherwise.
+     */
+    private boolean isPrunable(final PackedGenotype geno1, final PackedGenotype geno2) {
+        if (!geno1.isComplete() || !geno2.isComplete()) {
+            return false;
+        }
+        final int totalCounts = geno1.size();
+        return totalCounts < minimumSamples
+                || geno1.getMinorAlleleCount() == 0
+                || geno2.getMinorAlleleCount() == 0
+                || (rmSingletons
+                && (geno1.getMinorAlleleCount() == 1 || geno2.getMinorAlleleCount() == 1))
+                || !thresholds.isSignificantR2(
+                LDfunctions.maxR2(geno1.getMajorAlleleFrequency(),
+                        geno2.getMajorAlleleFrequency()), totalCounts);
+    }
+
+    /** Submits the current tile (if it is not empty) and starts a new one. */
+    private void submitCurrentTile() {
+        if (!currentTile.isEmpty()) {
+            // the tile arrives to the phaser once it is finished
+            currentTile.computation.phaser.register();
             // run this job, either in this thread or in the thread pool
-            runner.accept(toCompute);
+            runner.accept(currentTile);
+            currentTile = new LDtile(tileSize, currentTile.computation);
         }
     }
 
-    /** Writes the bins and reset them. */
-    private void writeBins() {
-        // wait till completion
-        waitUntilFinish();
-        output.write(currentContig);
-        output.clear();
+    /** Starts the computation for a new contig. */
+    private void startContig(final String contig) {
+        currentContig = contig;
+        currentComputation = new ContigComputation(contig);
+        currentTile = new LDtile(tileSize, currentComputation);
     }
 
-    /** Waits for the executor to finish all the loaded task. */
-    private void waitUntilFinish() {
-        if (executor.isPresent()) {
-            while (!executor.get().getQueue().isEmpty()) {
-                try {
-                    monitorLogging();
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+    /**
+     * Finishes the current contig, scheduling the writing of its bins once all its pairs are
+     * computed and the previous contigs are written. It does not wait for the computation.
+     */
+    private void finishContig() {
+        if (currentComputation == null) {
+            return;
+        }
+        submitCurrentTile();
+        final ContigComputation computation = currentComputation;
+        currentComputation = null;
+        // the producer does not submit more tiles
+        computation.phaser.arriveAndDeregister();
+        // if a tile failed, the bins are incomplete and the write is skipped
+        lastWrite = CompletableFuture.allOf(lastWrite, computation.finished)
+                .thenRunAsync(() -> binsWriter.accept(computation.bins.format(computation.contig)),
+                        writer);
+    }
+
+    /** Waits until all the finished contigs are computed and written. */
+    private void waitUntilWritten() {
+        monitorLogging();
+        try {
+            lastWrite.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            monitorLogging();
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new GATKException("Error while computing LD", e.getCause());
         }
+        monitorLogging();
     }
 
     /** Logs the executor status with a monitor. */
@@ -203,62 +300,132 @@ public class QueueLD implements Closeable {
         }
     }
 
-    /** Finalizes all the pending variants in the queue. */
-    public void finalizeQueue() {
-        logger.debug("Finalizing queue");
+    /** Computes all the pending variants in the queue. */
+    private void computeRemaining() {
         // empty the queue
         while (!snpQueue.isEmpty()) {
             computeQueueLD();
         }
-        // write the bins
-        writeBins();
     }
 
-    /** Closes the queue and finishes computation. */
+    /** Finalizes all the pending variants in the queue and waits until the bins are written. */
+    public void finalizeQueue() {
+        logger.debug("Finalizing queue");
+        computeRemaining();
+        finishContig();
+        waitUntilWritten();
+    }
+
+    /** Closes the queue and finishes computation. The bins writer is not closed. */
     @Override
     public void close() {
         logger.debug("Closing queue");
-        // finalize the current state
-        finalizeQueue();
-        if (executor.isPresent()) {
-            logger.debug("Shutdown the executor");
-            executor.get().shutdown();
+        try {
+            // finalize the current state
+            finalizeQueue();
+        } finally {
+            if (executor.isPresent()) {
+                logger.debug("Shutdown the executor");
+                executor.get().shutdown();
+            }
+            writer.shutdown();
+            monitorLogging();
+        }
+    }
+
+    /**
+     * Computation state for a contig: the bins and a phaser to track the tiles in progress. The
+     * phaser has a party for the producer (until the contig is finished) and one for each tile
+     * submitted and not computed yet.
+     */
+    private final class ContigComputation {
+
+        private final String contig;
+        private final LDdecayBins bins;
+        // completed once all the parties arrived
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private final Phaser phaser = new Phaser(1) {
+            @Override
+            protected boolean onAdvance(final int phase, final int registeredParties) {
+                finished.complete(null);
+                return true;
+            }
+        };
+
+        private ContigComputation(final String contig) {
+            this.contig = contig;
+            this.bins = new LDdecayBins(binningParams.binDistance, binningParams.max);
         }
-        output.close();
-        monitorLogging();
     }
 
-    /** Runnable class for compute SNP pairs and LD statistics. */
-    private class LDcomputation implements Runnable {
+    /**
+     * Runnable class for compute SNP pairs and LD statistics. A tile contains the pairs between
+     * one or more anchor variants and a contiguous block of their partners in the window, which
+     * are computed in a tight loop by the same thread.
+     */
+    private class LDtile implements Runnable {
+
+        private final ContigComputation computation;
+        private final PackedGenotype[] firsts;
+        private final PackedGenotype[] seconds;
+        private int size;
+
+        public LDtile(final int tileSize, final ContigComputation computation) {
+            this.computation = computation;
+            this.firsts = new PackedGenotype[tileSize];
+            this.seconds = new PackedGenotype[tileSize];
+            this.size = 0;
+        }
 
-        private final LightGenotype geno1, geno2;
+        /** Adds a pair to the tile. */
+        public void add(final PackedGenotype genotype1, final PackedGenotype genotype2) {
+            firsts[size] = genotype1;
+            seconds[size] = genotype2;
+            size++;
+        }
 
-        public LDcomputation(final LightGenotype genotype1, final LightGenotype genotype2) {
-            this.geno1 = genotype1;
-            this.geno2 = genotype2;
+        public boolean isFull() {
+            return size == firsts.length;
         }
 
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Computes the pairs in the tile. Any failure completes exceptionally the computation for
+         * the contig before arriving to the phaser, so it is not lost in the thread pool.
+         */
         @Override
         public void run() {
-            // only generate the pair if the minimum distance threshold is hold; may be faster than generate it
-            if (binningParams.exceedMinimumDistance(geno1.getPosition(), geno2.getPosition())) {
-                // generate the SNP pair
-                final SNPpair pair = new SNPpair(geno1, geno2);
-                addedPairs.incrementAndGet();
-                // check if the conditions are met
-                if (!(pair.getTotalCounts() < minimumSamples
-                        // total counts are lower than the minimum samples
-                        || pair.isInvariantA()                        // A is invariant
-                        || pair.isInvariantB()                        // B is invariant
-                        || (rmSingletons && pair.oneIsSingleton())))  // remove singletons
-                {
-                    // compute LD statistic for the pair
-                    final double[] LD = LDfunctions.rStatistics(pair, chiSqrQuantile);
-                    // add to the binning if computed
-                    if (LD != null) {
-                        output.add(pair, LD);
-                        computedPairs.incrementAndGet();
-                    }
+            try {
+                for (int i = 0; i < size; i++) {
+                    compute(firsts[i], seconds[i]);
+                }
+            } catch (Throwable t) {
+                computation.finished.completeExceptionally(t);
+            } finally {
+                computation.phaser.arriveAndDeregister();
+            }
+        }
+
+        private void compute(final PackedGenotype geno1, final PackedGenotype geno2) {
+            // generate the SNP pair (minimum distance was already checked)
+            final SNPpair pair = new SNPpair(geno1, geno2);
+            addedPairs.incrementAndGet();
+            // check if the conditions are met
+            if (!(pair.getTotalCounts() < minimumSamples
+                    // total counts are lower than the minimum samples
+                    || pair.isInvariantA()                        // A is invariant
+                    || pair.isInvariantB()                        // B is invariant
+                    || (rmSingletons && pair.oneIsSingleton())))  // remove singletons
+            {
+                // compute LD statistic for the pair
+                final double[] LD = LDfunctions.rStatistics(pair, thresholds);
+                // add to the binning if computed
+                if (LD != null) {
+                    computation.bins.add(pair, LD);
+                    computedPairs.incrementAndGet();
                 }
             }
         }
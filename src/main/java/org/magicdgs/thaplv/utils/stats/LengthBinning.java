@@ -30,7 +30,7 @@ package org.magicdgs.thaplv.utils.stats;
 import com.google.common.annotations.VisibleForTesting;
 import org.broadinstitute.hellbender.utils.Utils;
 
-import java.util.Map;
+import java.util.Arrays;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.stream.DoubleStream;
@@ -38,19 +38,35 @@ import java.util.stream.DoubleStream;
 /**
  * Class that bin a double based on the length, computing mean, median and quantiles.
  *
+ * The bins are stored in an array indexed by the bin number (the bin divided by the bin size),
+ * which grows when a longer length is added. If the maximum length is known, lengths over it are
+ * not allowed.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
 public class LengthBinning {
 
-    // value that contains the bins
-    private final SortedMap<Integer, RunningStats> binStat;
+    // initial number of bins
+    private static final int INITIAL_NUMBER_OF_BINS = 16;
+
+    // bins indexed by bin number (null if there is no value for the bin)
+    private RunningStats[] binStat;
+
+    // the maximum bin number with values (0 if there is no value)
+    private int lastBinNumber;
 
     // value that contains the bin size
     private final int binSize;
 
+    // maximum length (inclusive) that could be added; null if unknown
+    private final Integer maxLength;
+
     // which quantiles should be computed?
     private final double[] quantiles;
 
+    // shared empty statistics for the bins without values
+    private final RunningStats emptyBin;
+
     private boolean empty;
 
     /**
@@ -63,16 +79,32 @@ public class LengthBinning {
     }
 
     /**
-     * Constructs a binning by lenght using the provided quantiles.
+     * Constructs a binning by lenght using the provided quantiles, without a maximum length.
      *
      * @param binSize   size of the bin.
      * @param quantiles quantiles to add in the range (1, 100).
      */
     public LengthBinning(final int binSize, final double... quantiles) {
+        this(binSize, null, quantiles);
+    }
+
+    /**
+     * Constructs a binning by lenght using the provided quantiles.
+     *
+     * @param binSize   size of the bin.
+     * @param maxLength maximum length (inclusive) that could be added; {@code null} if unknown.
+     * @param quantiles quantiles to add in the range (1, 100).
+     */
+    public LengthBinning(final int binSize, final Integer maxLength, final double[] quantiles) {
         Utils.validateArg(binSize >= 1, "Binning cannot be performed for bins lower than 1 bp");
-        this.binStat = new TreeMap<>();
+        Utils.validateArg(maxLength == null || maxLength >= 0,
+                () -> "Maximum length should be positive or 0: " + maxLength);
         this.binSize = binSize;
+        this.maxLength = maxLength;
+        this.binStat = new RunningStats[INITIAL_NUMBER_OF_BINS];
+        this.lastBinNumber = 0;
         this.quantiles = quantiles;
+        this.emptyBin = new RunningStats(quantiles);
         empty = true;
     }
 
@@ -86,13 +118,23 @@ public class LengthBinning {
      *
      * @param length the length associated with this value.
      * @param value  the value to add to the computation of the statistic.
+     *
+     * @throws IllegalArgumentException if the length is over the maximum length.
      */
     public synchronized void add(final int length, final double value) {
-        final int cBin = toBin(length, binSize);
-        RunningStats stats = binStat.get(cBin);
+        Utils.validateArg(maxLength == null || length <= maxLength,
+                () -> "Length over the maximum for the binning: " + length);
+        final int binNumber = toBinNumber(length, binSize);
+        if (binNumber >= binStat.length) {
+            // computed as long to do not overflow
+            final long newLength = Math.max(binNumber + 1L, 2L * binStat.length);
+            binStat = Arrays.copyOf(binStat, (int) Math.min(newLength, Integer.MAX_VALUE));
+        }
+        RunningStats stats = binStat[binNumber];
         if (stats == null) {
             stats = new RunningStats(quantiles);
-            binStat.put(cBin, stats);
+            binStat[binNumber] = stats;
+            lastBinNumber = Math.max(lastBinNumber, binNumber);
         }
         if (stats.add(value)) {
             empty = false;
@@ -102,22 +144,30 @@ public class LengthBinning {
     /** Gets the bin for a concrete value. */
     @VisibleForTesting
     static int toBin(final int length, final int binSize) {
-        int bin = (int) Math.floor((length - 1) / binSize);
-        bin *= binSize;
-        bin += binSize;
-        return bin;
+        return toBinNumber(length, binSize) * binSize;
+    }
+
+    /**
+     * Gets the bin number for a concrete value (the bin divided by the bin size). Lengths in the
+     * range [1, binSize] are in the bin number 1; a length of 0 is in the first bin number except
+     * for a bin size of 1.
+     */
+    private static int toBinNumber(final int length, final int binSize) {
+        return (length - 1) / binSize + 1;
     }
 
     // for testing
     @Override
     public synchronized String toString() {
         final StringBuilder builder = new StringBuilder();
-        for (final Map.Entry<Integer, RunningStats> bin : binStat.entrySet()) {
-            builder.append("\tBin #");
-            builder.append(bin.getKey());
-            builder.append("\t-> ");
-            builder.append(bin.getValue());
-            builder.append('\n');
+        for (int i = 0; i <= lastBinNumber; i++) {
+            if (binStat[i] != null) {
+                builder.append("\tBin #");
+                builder.append(i * binSize);
+                builder.append("\t-> ");
+                builder.append(binStat[i]);
+                builder.append('\n');
+            }
         }
         return builder.toString();
     }
@@ -126,8 +176,9 @@ public class LengthBinning {
      * Gets the binned statistics for this object. The sorted map will contain all bins until the
      * next one.
      *
-     * Note that the object is copied and modifications of the statistics will not be reflected in
-     * this instance. Every time that the method is called it generates a new map.
+     * Note that the map is a copy and adding/removing bins will not be reflected in this instance.
+     * Every time that the method is called it generates a new map. Bins without values share the
+     * same empty statistics, which should not be modified.
      *
      * @return a copy of the binned statistics (including 0-element ones); emty map if {@link
      * #isEmpty()} is {@code true}.
@@ -135,10 +186,8 @@ public class LengthBinning {
     public synchronized SortedMap<Integer, RunningStats> getBinStats() {
         final SortedMap<Integer, RunningStats> toReturn = new TreeMap<>();
         if (!isEmpty()) {
-            final int lastBin = binStat.lastKey();
-            for (int i = binSize; i <= lastBin; i += binSize) {
-                final RunningStats stats = binStat.getOrDefault(i, new RunningStats(quantiles));
-                toReturn.put(i, stats);
+            for (int i = 1; i <= lastBinNumber; i++) {
+                toReturn.put(i * binSize, (binStat[i] == null) ? emptyBin : binStat[i]);
             }
         }
         return toReturn;
@@ -155,7 +204,8 @@ public class LengthBinning {
      * After calling this method, {@link #isEmpty()} will return {@code true}.
      */
     public synchronized void clear() {
-        binStat.clear();
+        Arrays.fill(binStat, 0, lastBinNumber + 1, null);
+        lastBinNumber = 0;
         empty = true;
     }
 }
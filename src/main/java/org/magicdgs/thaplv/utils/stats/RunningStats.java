@@ -27,8 +27,8 @@
 
 package org.magicdgs.thaplv.utils.stats;
 
-import org.apache.commons.math3.stat.descriptive.moment.Variance;
 import org.apache.commons.math3.stat.descriptive.rank.PSquarePercentile;
+import org.broadinstitute.hellbender.utils.Utils;
 
 import java.util.List;
 import java.util.Map;
@@ -36,20 +36,28 @@ import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 /**
- * Class for computing running statistics including mean, standard deviation and quantiles (using
- * {@link PSquarePercentile}).
+ * Class for computing running statistics including mean, standard deviation and quantiles.
+ *
+ * Quantiles are estimated by default using {@link PSquarePercentile}, which cannot be merged. For
+ * combining partial results with {@link #merge(RunningStats)}, the statistics should be
+ * constructed with {@link #withSketch(double, double...)}, which estimates all the quantiles with
+ * a mergeable {@link TDigest}.
  *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
 public class RunningStats {
+
+    // running moments, updated as in commons-math SecondMoment
+    private long n;
     private double newMean, newStdDev;
+
+    // P-square estimators for the median and the quantiles (null if the sketch is used)
     private final PSquarePercentile median;
-    // the quantiles always includes the median
+    // the quantiles always includes the median; values are null if the sketch is used
     private final Map<Double, PSquarePercentile> quantiles;
 
-    /** @deprecated use the running implementation instead. */
-    @Deprecated
-    private final Variance sampleVar;
+    // mergeable sketch for all the quantiles (null if P-square is used)
+    private final TDigest sketch;
 
     /**
      * Constructs a new running statistic without quantiles. Computes the mean, variance, standard
@@ -57,8 +65,8 @@ public class RunningStats {
      */
     public RunningStats() {
         median = new PSquarePercentile(50.0D);
-        sampleVar = new Variance();
         quantiles = new TreeMap<>();
+        sketch = null;
     }
 
     /**
@@ -75,6 +83,36 @@ public class RunningStats {
         }
     }
 
+    // constructor for the sketch backend
+    private RunningStats(final TDigest sketch, final double... quantiles) {
+        this.median = null;
+        this.quantiles = new TreeMap<>();
+        this.sketch = sketch;
+        for (final double quan : quantiles) {
+            Utils.validateArg(quan > 0 && quan < 100, () -> "invalid quantile: " + quan);
+            if (quan != 50.0D) {
+                this.quantiles.put(quan, null);
+            }
+        }
+    }
+
+    /**
+     * Constructs a new running statistics with the provided quantiles, estimated with a {@link
+     * TDigest}. Statistics constructed in this way could be merged.
+     *
+     * @param compression compression for the sketch (higher is more accurate but uses more
+     *                    memory). See {@link TDigest#TDigest(double)}.
+     * @param quantiles   quantiles to add in the range (1, 100).
+     */
+    public static RunningStats withSketch(final double compression, final double... quantiles) {
+        return new RunningStats(new TDigest(compression), quantiles);
+    }
+
+    /** Returns {@code true} if this statistics could be merged; {@code false} otherwise. */
+    public final boolean isMergeable() {
+        return sketch != null;
+    }
+
     /**
      * Adds a new value to the statistics. {@link Double#NaN} will be ignored.
      *
@@ -98,38 +136,94 @@ public class RunningStats {
      */
     public synchronized boolean add(final double x) {
         if (!Double.isNaN(x)) {
-            median.increment(x);
-            // See Knuth TAOCP vol 2, 3rd edition, page 232
-            if (median.getN() == 1) {
+            // See Knuth TAOCP vol 2, 3rd edition, page 232 (same operations as commons-math)
+            if (++n == 1) {
                 newMean = x;
                 newStdDev = 0.0;
             } else {
-                final double oldMean = newMean;
-                newMean = oldMean + (x - oldMean) / median.getN();
-                newStdDev = newStdDev + (x - oldMean) * (x - newMean);
+                final double dev = x - newMean;
+                final double nDev = dev / n;
+                newMean += nDev;
+                newStdDev += (n - 1) * dev * nDev;
             }
-            sampleVar.increment(x);
-            for (final PSquarePercentile quan : quantiles.values()) {
-                quan.increment(x);
+            if (sketch == null) {
+                median.increment(x);
+                for (final PSquarePercentile quan : quantiles.values()) {
+                    quan.increment(x);
+                }
+            } else {
+                sketch.add(x);
             }
             return true;
         }
         return false;
     }
 
+    /**
+     * Merges the values summarized in other statistics into this one. Mean and variance are
+     * combined exactly, and the quantile sketches are merged.
+     *
+     * Note: the other statistics are not modified.
+     *
+     * @param other the statistics to merge.
+     *
+     * @throws IllegalArgumentException if any of the statistics is not mergeable or the quantiles
+     *                                  are different.
+     */
+    public void merge(final RunningStats other) {
+        Utils.nonNull(other, "null stats");
+        Utils.validateArg(isMergeable() && other.isMergeable(),
+                "only statistics constructed with a sketch could be merged");
+        Utils.validateArg(quantiles.keySet().equals(other.quantiles.keySet()),
+                "statistics with different quantiles cannot be merged");
+        // copy the other to avoid holding both locks
+        final long otherN;
+        final double otherMean;
+        final double otherStdDev;
+        final TDigest otherSketch;
+        synchronized (other) {
+            otherN = other.n;
+            otherMean = other.newMean;
+            otherStdDev = other.newStdDev;
+            otherSketch = other.sketch.copy();
+        }
+        synchronized (this) {
+            if (otherN == 0) {
+                return;
+            }
+            if (n == 0) {
+                newMean = otherMean;
+                newStdDev = otherStdDev;
+            } else {
+                // See Chan, Golub and LeVeque (1979)
+                final long total = n + otherN;
+                final double delta = otherMean - newMean;
+                newMean += delta * otherN / total;
+                newStdDev += otherStdDev + delta * delta * n * otherN / total;
+            }
+            n += otherN;
+            sketch.merge(otherSketch);
+        }
+    }
+
     /** Clear all the data in this instance. */
     public final synchronized void clear() {
-        median.clear();
-        for (final PSquarePercentile q : quantiles.values()) {
-            q.clear();
+        if (sketch == null) {
+            median.clear();
+            for (final PSquarePercentile q : quantiles.values()) {
+                q.clear();
+            }
+        } else {
+            sketch.clear();
         }
+        n = 0;
         newMean = 0;
         newStdDev = 0;
     }
 
     /** Get the number of data values. */
     public final synchronized long numDataValues() {
-        return median.getN();
+        return n;
     }
 
     /**
@@ -138,7 +232,7 @@ public class RunningStats {
      * @return the current mean; {@link Double#NaN} if no value was added.
      */
     public final synchronized double mean() {
-        return (median.getN() > 0) ? newMean : Double.NaN;
+        return (n > 0) ? newMean : Double.NaN;
     }
 
     /**
@@ -147,7 +241,7 @@ public class RunningStats {
      * @return the current variance; {@link Double#NaN} if no value was added.
      */
     public final synchronized double variance() {
-        return ((median.getN() > 1) ? newStdDev / (median.getN() - 1) : Double.NaN);
+        return ((n > 1) ? newStdDev / (n - 1) : Double.NaN);
     }
 
     /**
@@ -159,7 +253,8 @@ public class RunningStats {
      */
     @Deprecated
     public final synchronized double sampleVariance() {
-        return sampleVar.getResult();
+        // this is the same as commons-math Variance, which returns 0 for only one value
+        return (n == 1) ? 0 : variance();
     }
 
     /**
@@ -168,7 +263,7 @@ public class RunningStats {
      * @return the current median; {@link Double#NaN} if no value was added.
      */
     public final synchronized double median() {
-        return median.getResult();
+        return (sketch == null) ? median.getResult() : sketchQuantile(50.0D);
     }
 
     /**
@@ -187,15 +282,20 @@ public class RunningStats {
      */
     public final synchronized double getQuantile(final double quantile) {
         if (quantile == 50.0D) {
-            return median.getResult();
+            return median();
         }
         if (hasQuantile(quantile)) {
-            return quantiles.get(quantile).getResult();
+            return (sketch == null) ? quantiles.get(quantile).getResult() : sketchQuantile(quantile);
         }
         throw new IllegalArgumentException(
                 "Running stats must be initialized with the requested quantile");
     }
 
+    // the sketch quantile, with NaN for empty statistics
+    private double sketchQuantile(final double quantile) {
+        return (n == 0) ? Double.NaN : sketch.quantile(quantile / 100);
+    }
+
     /**
      * Gets the current standard deviation.
      *
@@ -224,8 +324,7 @@ public class RunningStats {
      */
     public final synchronized Map<Double, Double> getAllQuantiles() {
         final TreeMap<Double, Double> toReturn = new TreeMap<>();
-        quantiles.entrySet().stream()
-                .forEach(q -> toReturn.put(q.getKey(), q.getValue().getResult()));
+        quantiles.keySet().forEach(q -> toReturn.put(q, getQuantile(q)));
         return toReturn;
     }
 
@@ -252,7 +351,7 @@ public class RunningStats {
         builder.append(variance());
         builder.append("; ");
         builder.append("Median: ");
-        builder.append(median.getResult());
+        builder.append(median());
         builder.append("; ");
         builder.append("Quantiles computed: ");
         builder.append(quantiles.keySet());
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.utils.stats;
+
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch based on the merging t-digest (Dunning and Ertl, 2019). Values are
+ * summarized as weighted centroids, which are small close to the tails and larger close to the
+ * median, so the quantile error is bounded in rank and lower for extreme quantiles.
+ *
+ * The compression parameter controls the accuracy/memory trade-off: the sketch keeps at most
+ * {@code compression} centroids, and the error for a quantile {@code q} is proportional to
+ * {@code q * (1 - q) / compression}.
+ *
+ * Two sketches could be combined with {@link #merge(TDigest)}, and the result has the same bounds
+ * as a sketch computed over all the data.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class TDigest {
+
+    /** Default compression for the sketch. */
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    // centroids, sorted by mean
+    private double[] means;
+    private double[] weights;
+    private int numberOfCentroids;
+
+    // values not merged yet into the centroids
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferSize;
+
+    private double totalWeight;
+    private double min;
+    private double max;
+
+    /** Constructs a sketch with {@link #DEFAULT_COMPRESSION}. */
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructs an empty sketch.
+     *
+     * @param compression the compression parameter (higher values are more accurate).
+     */
+    public TDigest(final double compression) {
+        Utils.validateArg(compression >= 10, () -> "compression should be at least 10: " + compression);
+        this.compression = compression;
+        // after merging, the k1 scale function keeps at most compression centroids
+        this.means = new double[(int) Math.ceil(compression) + 1];
+        this.weights = new double[means.length];
+        this.bufferMeans = new double[5 * means.length];
+        this.bufferWeights = new double[bufferMeans.length];
+        clear();
+    }
+
+    /** Returns the compression parameter for this sketch. */
+    public double getCompression() {
+        return compression;
+    }
+
+    /** Returns the number of values added to the sketch. */
+    public long size() {
+        return (long) totalWeight;
+    }
+
+    /** Adds a value to the sketch. */
+    public void add(final double x) {
+        add(x, 1);
+    }
+
+    // adds a value with a weight to the buffer
+    private void add(final double x, final double weight) {
+        if (bufferSize == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferSize] = x;
+        bufferWeights[bufferSize] = weight;
+        bufferSize++;
+        totalWeight += weight;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+    }
+
+    /**
+     * Adds all the values summarized in other sketch to this one. The other sketch is not modified.
+     *
+     * @param other the sketch to merge.
+     */
+    public void merge(final TDigest other) {
+        for (int i = 0; i < other.numberOfCentroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        for (int i = 0; i < other.bufferSize; i++) {
+            add(other.bufferMeans[i], other.bufferWeights[i]);
+        }
+        // centroids does not keep the extremes
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** Removes all the values from the sketch. */
+    public void clear() {
+        numberOfCentroids = 0;
+        bufferSize = 0;
+        totalWeight = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Returns a copy of this sketch. */
+    public TDigest copy() {
+        final TDigest copy = new TDigest(compression);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Gets the estimated quantile.
+     *
+     * @param q the quantile in the range [0, 1].
+     *
+     * @return the value for the quantile; {@link Double#NaN} if no value was added.
+     */
+    public double quantile(final double q) {
+        Utils.validateArg(q >= 0 && q <= 1, () -> "quantile should be in the range [0, 1]: " + q);
+        compress();
+        if (numberOfCentroids == 0) {
+            return Double.NaN;
+        }
+        if (numberOfCentroids == 1) {
+            return means[0];
+        }
+        final double index = q * totalWeight;
+        // between the minimum and the center of the first centroid
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        // between the centers of two centroids
+        double center = weights[0] / 2;
+        for (int i = 0; i < numberOfCentroids - 1; i++) {
+            final double distance = (weights[i] + weights[i + 1]) / 2;
+            if (center + distance > index) {
+                final double fraction = (index - center) / distance;
+                return means[i] + (means[i + 1] - means[i]) * fraction;
+            }
+            center += distance;
+        }
+        // between the center of the last centroid and the maximum
+        final double lastHalf = weights[numberOfCentroids - 1] / 2;
+        final double fraction = Math.min(1, (index - center) / lastHalf);
+        return means[numberOfCentroids - 1]
+                + (max - means[numberOfCentroids - 1]) * fraction;
+    }
+
+    // scale function k1, which limits the size of the centroids close to the tails
+    private double scale(final double q) {
+        return compression * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1) / (2 * Math.PI);
+    }
+
+    /** Merges the buffered values into the centroids. */
+    private void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        // sort the buffer and merge it with the already sorted centroids
+        sort(bufferMeans, bufferWeights, 0, bufferSize - 1);
+        final int total = numberOfCentroids + bufferSize;
+        final double[] sortedMeans = new double[total];
+        final double[] sortedWeights = new double[total];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < total; k++) {
+            if (j == bufferSize || (i < numberOfCentroids && means[i] <= bufferMeans[j])) {
+                sortedMeans[k] = means[i];
+                sortedWeights[k] = weights[i++];
+            } else {
+                sortedMeans[k] = bufferMeans[j];
+                sortedWeights[k] = bufferWeights[j++];
+            }
+        }
+        bufferSize = 0;
+
+        // merge neighbour centroids while they fit in one unit of the scale function
+        numberOfCentroids = 0;
+        double weightSoFar = 0;
+        double currentMean = sortedMeans[0];
+        double currentWeight = sortedWeights[0];
+        for (int k = 1; k < total; k++) {
+            final double proposedWeight = currentWeight + sortedWeights[k];
+            if (scale((weightSoFar + proposedWeight) / totalWeight)
+                    - scale(weightSoFar / totalWeight) <= 1) {
+                currentMean += (sortedMeans[k] - currentMean) * sortedWeights[k] / proposedWeight;
+                currentWeight = proposedWeight;
+            } else {
+                weightSoFar += currentWeight;
+                addCentroid(currentMean, currentWeight);
+                currentMean = sortedMeans[k];
+                currentWeight = sortedWeights[k];
+            }
+        }
+        addCentroid(currentMean, currentWeight);
+    }
+
+    private void addCentroid(final double mean, final double weight) {
+        if (numberOfCentroids == means.length) {
+            means = Arrays.copyOf(means, means.length * 2);
+            weights = Arrays.copyOf(weights, weights.length * 2);
+        }
+        means[numberOfCentroids] = mean;
+        weights[numberOfCentroids] = weight;
+        numberOfCentroids++;
+    }
+
+    // quick-sort of the values with their weights
+    private static void sort(final double[] values, final double[] weights, int low, int high) {
+        while (low < high) {
+            final double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    swap(weights, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // recursion in the smaller part to bound the stack
+            if (j - low < high - i) {
+                sort(values, weights, low, j);
+                low = i;
+            } else {
+                sort(values, weights, i, high);
+                high = j;
+            }
+        }
+    }
+
+    private static void swap(final double[] array, final int i, final int j) {
+        final double temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    @Override
+    public String toString() {
+        compress();
+        return "TDigest(compression=" + compression + ", n=" + size() + ", centroids="
+                + numberOfCentroids + ")";
+    }
+}
@@ -184,13 +184,30 @@ public class LDfunctions {
      */
     @Deprecated
     public static double[] rStatistics(final SNPpair pair, final double chiSqrQuantile) {
+        return rStatistics(pair, new SignificanceThresholdTable(chiSqrQuantile, 0));
+    }
+
+    /**
+     * Computes all the r statistics for a SNPpair with pre-computed thresholds for the
+     * significance of maxR2.
+     *
+     * @param pair       polarized pair.
+     * @param thresholds the table of thresholds to asses significance of maxR2.
+     *
+     * @return array with the values if rmax is upper the threshold; null otherwise
+     *
+     * @deprecated use the single statistics directly.
+     */
+    @Deprecated
+    public static double[] rStatistics(final SNPpair pair,
+            final SignificanceThresholdTable thresholds) {
         // maf for A and B
         final double pA = pair.getMajorAlleleFrequencyForA();
         final double pB = pair.getMajorAlleleFrequencyForB();
         // compute the maximum r2 that can be reached
         final double maxR2 = maxR2(pA, pB);
         // if the maximum r2 is not significant, it is not worthy to compute the rest of the stuff
-        if (!isSignificantR2(maxR2, pair.getTotalCounts(), chiSqrQuantile)) {
+        if (!thresholds.isSignificantR2(maxR2, pair.getTotalCounts())) {
             return null;
         }
         // compute rw and r2 (fast way)
@@ -229,6 +246,8 @@ public class LDfunctions {
      * @param chiSqrQuantile     the chi-squared quantile to asses significance of the test.
      *
      * @return the minimum r2 that can be considered significantly different from 0
+     *
+     * @see SignificanceThresholdTable for computing the threshold for several number of haplotypes.
      */
     public static double significantThreshold(final int numberOfHaplotypes,
             final double chiSqrQuantile) {
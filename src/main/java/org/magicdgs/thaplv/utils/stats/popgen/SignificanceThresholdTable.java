@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.utils.stats.popgen;
+
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.broadinstitute.hellbender.utils.Utils;
+
+/**
+ * Pre-computed table with the minimum pearson correlation (r2) that could be significant for a
+ * chi-square quantile and every number of haplotypes up to a maximum. The inverse of the
+ * chi-square distribution is computed only once, and the thresholds are the same as {@link
+ * LDfunctions#significantThreshold(int, double)}.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class SignificanceThresholdTable {
+
+    /** Chi-square distribution with 1 degree of freedom. */
+    private static final ChiSquaredDistribution chiSqr = new ChiSquaredDistribution(null, 1);
+
+    private final double chiSqrQuantile;
+    private final double criticalValue;
+
+    // thresholds indexed by number of haplotypes
+    private final double[] thresholds;
+
+    /**
+     * Constructs the table for a chi-square quantile.
+     *
+     * @param chiSqrQuantile     the chi-squared quantile to asses significance of the test.
+     * @param maxHaplotypes      the maximum number of haplotypes in the table.
+     */
+    public SignificanceThresholdTable(final double chiSqrQuantile, final int maxHaplotypes) {
+        Utils.validateArg(chiSqrQuantile >= 0 && chiSqrQuantile <= 1,
+                () -> "chi-square quantile should be in the range [0, 1]: " + chiSqrQuantile);
+        Utils.validateArg(maxHaplotypes >= 0, () -> "negative haplotypes: " + maxHaplotypes);
+        this.chiSqrQuantile = chiSqrQuantile;
+        this.criticalValue = chiSqr.inverseCumulativeProbability(chiSqrQuantile);
+        this.thresholds = new double[maxHaplotypes + 1];
+        for (int i = 0; i <= maxHaplotypes; i++) {
+            thresholds[i] = criticalValue / i;
+        }
+    }
+
+    /** Returns the chi-square quantile for this table. */
+    public double getChiSqrQuantile() {
+        return chiSqrQuantile;
+    }
+
+    /**
+     * Return the minimum pearson correlation that could be significant for the provided number of
+     * haplotypes.
+     *
+     * @param numberOfHaplotypes the number of haplotypes.
+     *
+     * @return the minimum r2 that can be considered significantly different from 0
+     */
+    public double significantThreshold(final int numberOfHaplotypes) {
+        // the table does not cover the number of haplotypes
+        if (numberOfHaplotypes < 0 || numberOfHaplotypes >= thresholds.length) {
+            return criticalValue / numberOfHaplotypes;
+        }
+        return thresholds[numberOfHaplotypes];
+    }
+
+    /**
+     * Tests if a value for pearson correlation (r2) is significant for the provided number of
+     * haplotypes.
+     *
+     * @param r2                 the r2 value to test.
+     * @param numberOfHaplotypes the number of haplotypes.
+     *
+     * @return {@code true} if r2 is significant; {@code false} otherwise.
+     */
+    public boolean isSignificantR2(final double r2, final int numberOfHaplotypes) {
+        return r2 >= significantThreshold(numberOfHaplotypes);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.cmd.argumentcollections;
+
+import org.magicdgs.thaplv.haplotypes.pairs.SamplePair;
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class SampleComparisonArgumentCollectionUnitTest extends BaseTest {
+
+    private static final List<String> SAMPLES = Arrays.asList("s1", "s2", "s3");
+
+    private File writeTempFile(final String name, final String content) throws Exception {
+        final File file = createTempFile(name, ".txt");
+        try (final PrintStream stream = new PrintStream(file)) {
+            stream.print(content);
+        }
+        return file;
+    }
+
+    @Test
+    public void testDefaults() {
+        final SampleComparisonArgumentCollection args = new SampleComparisonArgumentCollection();
+        Assert.assertFalse(args.restrictComparisons());
+        Assert.assertEquals(args.groupComparison,
+                SampleComparisonArgumentCollection.GroupComparison.WITHIN);
+    }
+
+    @Test
+    public void testReadSampleGroups() throws Exception {
+        final SampleComparisonArgumentCollection args = new SampleComparisonArgumentCollection();
+        args.sampleGroups = writeTempFile("testReadSampleGroups", "s3\tA\n\ns1\tB\ns3\tA\n");
+        Assert.assertTrue(args.restrictComparisons());
+        final Map<String, String> groups = args.readSampleGroups(SAMPLES);
+        Assert.assertEquals(groups.size(), 2);
+        Assert.assertEquals(groups.get("s3"), "A");
+        Assert.assertEquals(groups.get("s1"), "B");
+    }
+
+    @Test
+    public void testReadSamplePairs() throws Exception {
+        final SampleComparisonArgumentCollection args = new SampleComparisonArgumentCollection();
+        args.samplePairs = writeTempFile("testReadSamplePairs", "s3\ts1\ns1\ts2\n");
+        Assert.assertTrue(args.restrictComparisons());
+        final List<SamplePair> pairs = args.readSamplePairs(SAMPLES);
+        Assert.assertEquals(pairs.size(), 2);
+        Assert.assertEquals(pairs.get(0).getPairNames(), "(s3,s1)");
+        Assert.assertEquals(pairs.get(1).getPairNames(), "(s1,s2)");
+    }
+
+    @DataProvider(name = "malformedFiles")
+    public Object[][] malformedFiles() {
+        return new Object[][] {
+                {"s1\n"},
+                {"s1\tA\tB\n"},
+                {"s1\tA\ns1\tB\n"}
+        };
+    }
+
+    @Test(dataProvider = "malformedFiles", expectedExceptions = UserException.MalformedFile.class)
+    public void testMalformedSampleGroups(final String content) throws Exception {
+        final SampleComparisonArgumentCollection args = new SampleComparisonArgumentCollection();
+        args.sampleGroups = writeTempFile("testMalformedSampleGroups", content);
+        args.readSampleGroups(SAMPLES);
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testSelfPair() throws Exception {
+        final SampleComparisonArgumentCollection args = new SampleComparisonArgumentCollection();
+        args.samplePairs = writeTempFile("testSelfPair", "s1\ts1\n");
+        args.readSamplePairs(SAMPLES);
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testUnknownSample() throws Exception {
+        final SampleComparisonArgumentCollection args = new SampleComparisonArgumentCollection();
+        args.samplePairs = writeTempFile("testUnknownSample", "s1\ts4\n");
+        args.readSamplePairs(SAMPLES);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.haplotypes.light;
+
+import static org.magicdgs.thaplv.haplotypes.light.LightGenotype.SNP;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PackedGenotypeUnitTest extends BaseTest {
+
+    // creates a haploid variant with the alleles for each sample (null for no-call)
+    private static VariantContext createVariant(final String contig, final int position,
+            final List<Allele> alleles, final Allele... sampleAlleles) {
+        final List<Genotype> genotypes = new ArrayList<>();
+        for (int i = 0; i < sampleAlleles.length; i++) {
+            genotypes.add(GenotypeBuilder.create("sample" + i, Collections.singletonList(
+                    (sampleAlleles[i] == null) ? Allele.NO_CALL : sampleAlleles[i])));
+        }
+        return new VariantContextBuilder("test", contig, position, position, alleles)
+                .genotypes(genotypes).make();
+    }
+
+    private static VariantContext createVariant(final List<Allele> alleles,
+            final Allele... sampleAlleles) {
+        return createVariant("2L", 10, alleles, sampleAlleles);
+    }
+
+    /**
+     * Creates a biallelic haploid variant where the A allele is the reference, the a allele the
+     * alternative and N a no-call.
+     */
+    static VariantContext createVariant(final String contig, final int position,
+            final SNP... snps) {
+        final Allele ref = Allele.create("A", true);
+        final Allele alt = Allele.create("T", false);
+        final Allele[] sampleAlleles = new Allele[snps.length];
+        for (int i = 0; i < snps.length; i++) {
+            sampleAlleles[i] = (snps[i] == SNP.A) ? ref : (snps[i] == SNP.a) ? alt : null;
+        }
+        return createVariant(contig, position, Arrays.asList(ref, alt), sampleAlleles);
+    }
+
+    @DataProvider(name = "genotypes")
+    public Object[][] genotypesToPack() throws Exception {
+        // genotypes in the limit of one word
+        final SNP[] oneWord = new SNP[64];
+        for (int i = 0; i < oneWord.length; i++) {
+            oneWord[i] = (i % 2 == 0) ? SNP.A : SNP.a;
+        }
+        // genotypes with more than one word
+        final SNP[] large = new SNP[150];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (i % 3 == 0) ? SNP.N : (i % 2 == 0) ? SNP.A : SNP.a;
+        }
+        return new Object[][] {
+                {"2L", 1, new SNP[] {SNP.A, SNP.a, SNP.N}},
+                {"2L", 10, new SNP[] {SNP.N, SNP.N, SNP.N, SNP.N}},
+                {"2R", 100, oneWord},
+                {"X", 1000, large}
+        };
+    }
+
+    @Test(dataProvider = "genotypes")
+    public void testPackedGenotype(final String contig, final int position, final SNP[] genotypes)
+            throws Exception {
+        final PackedGenotype packed =
+                new PackedGenotype(createVariant(contig, position, genotypes));
+        final LightGenotype genotype = new LightGenotype(contig, position, genotypes);
+        Assert.assertEquals(packed.getContig(), contig);
+        Assert.assertEquals(packed.getPosition(), position);
+        Assert.assertEquals(packed.size(), genotypes.length);
+        Assert.assertEquals(packed.getNumberOfA(), genotype.getNumberOfA());
+        Assert.assertEquals(packed.getNumberOfa(), genotype.getNumberOfa());
+        Assert.assertEquals(packed.getNumberOfMissing(), genotype.getNumberOfMissing());
+        for (int i = 0; i < genotypes.length; i++) {
+            Assert.assertEquals(packed.isCalled(i), genotypes[i] != SNP.N);
+            Assert.assertEquals(packed.isAlleleA(i), genotypes[i] == SNP.A);
+        }
+        Assert.assertEquals(packed.toString(), genotype.toString());
+    }
+
+    @DataProvider(name = "alleleCounts")
+    public Object[][] alleleCounts() throws Exception {
+        return new Object[][] {
+                // genotype, called, complete, major count, minor count
+                {new SNP[] {SNP.A, SNP.a, SNP.N}, 2, false, 1, 1},
+                {new SNP[] {SNP.A, SNP.a, SNP.a}, 3, true, 2, 1},
+                {new SNP[] {SNP.A, SNP.A, SNP.A, SNP.a}, 4, true, 3, 1},
+                {new SNP[] {SNP.a, SNP.a, SNP.a, SNP.a}, 4, true, 4, 0},
+                {new SNP[] {SNP.N, SNP.A, SNP.N, SNP.A, SNP.A, SNP.a}, 4, false, 3, 1}
+        };
+    }
+
+    @Test(dataProvider = "alleleCounts")
+    public void testAlleleCounts(final SNP[] genotypes, final int called, final boolean complete,
+            final int major, final int minor) throws Exception {
+        final PackedGenotype packed = new PackedGenotype(createVariant("2L", 1, genotypes));
+        Assert.assertEquals(packed.getNumberOfCalled(), called);
+        Assert.assertEquals(packed.isComplete(), complete);
+        Assert.assertEquals(packed.getMajorAlleleCount(), major);
+        Assert.assertEquals(packed.getMinorAlleleCount(), minor);
+        // the frequency should be the same as the one computed for the pair
+        final SNPpair pair = new SNPpair(packed, packed);
+        Assert.assertEquals(packed.getMajorAlleleFrequency(), pair.getMajorAlleleFrequencyForA());
+    }
+
+    @DataProvider(name = "variants")
+    public Object[][] variantsToPack() throws Exception {
+        final Allele ref = Allele.create("A", true);
+        final Allele alt1 = Allele.create("T", false);
+        final Allele alt2 = Allele.create("C", false);
+        final Random random = new Random(1984);
+        final Allele[] biallelic = new Allele[150];
+        final Allele[] multiallelic = new Allele[150];
+        for (int i = 0; i < biallelic.length; i++) {
+            final int allele = random.nextInt(3);
+            biallelic[i] = (allele == 0) ? null : (allele == 1) ? ref : alt1;
+            multiallelic[i] = (allele == 0) ? null : (allele == 1) ? alt1 : alt2;
+        }
+        return new Object[][] {
+                {createVariant(Arrays.asList(ref, alt1), biallelic)},
+                {createVariant(Arrays.asList(ref, alt1, alt2), multiallelic)},
+                {createVariant(Arrays.asList(ref, alt1), alt1, null, ref)},
+                {createVariant(Arrays.asList(ref, alt1, alt2), null, alt2, alt1, alt2)}
+        };
+    }
+
+    @Test(dataProvider = "variants")
+    public void testPackedGenotypeFromVariant(final VariantContext variant) throws Exception {
+        final PackedGenotype packed = new PackedGenotype(variant);
+        final LightGenotype genotype = new LightGenotype(variant);
+        Assert.assertEquals(packed.getContig(), variant.getContig());
+        Assert.assertEquals(packed.getPosition(), variant.getStart());
+        Assert.assertEquals(packed.size(), genotype.size());
+        Assert.assertEquals(packed.getNumberOfA(), genotype.getNumberOfA());
+        Assert.assertEquals(packed.getNumberOfa(), genotype.getNumberOfa());
+        Assert.assertEquals(packed.getNumberOfMissing(), genotype.getNumberOfMissing());
+        for (int i = 0; i < genotype.size(); i++) {
+            Assert.assertEquals(packed.isCalled(i), genotype.getGenotypeAt(i) != SNP.N);
+            Assert.assertEquals(packed.isAlleleA(i), genotype.getGenotypeAt(i) == SNP.A);
+        }
+        Assert.assertEquals(packed.toString(), genotype.toString());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPackedGenotypeFromMoreThanTwoAlleles() throws Exception {
+        final Allele ref = Allele.create("A", true);
+        final Allele alt1 = Allele.create("T", false);
+        final Allele alt2 = Allele.create("C", false);
+        new PackedGenotype(createVariant(Arrays.asList(ref, alt1, alt2), ref, alt1, alt2));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPackedGenotypeFromReferenceOnly() throws Exception {
+        final Allele ref = Allele.create("A", true);
+        new PackedGenotype(createVariant(Collections.singletonList(ref), ref, ref));
+    }
+
+    @DataProvider(name = "invalidIndexes")
+    public Object[][] invalidIndexes() throws Exception {
+        return new Object[][] {{-1}, {3}, {64}};
+    }
+
+    @Test(dataProvider = "invalidIndexes",
+            expectedExceptions = ArrayIndexOutOfBoundsException.class)
+    public void testIsCalledIndexException(final int index) throws Exception {
+        new PackedGenotype(createVariant("2L", 1, SNP.A, SNP.a, SNP.N)).isCalled(index);
+    }
+
+    @Test(dataProvider = "invalidIndexes",
+            expectedExceptions = ArrayIndexOutOfBoundsException.class)
+    public void testIsAlleleAIndexException(final int index) throws Exception {
+        new PackedGenotype(createVariant("2L", 1, SNP.A, SNP.a, SNP.N)).isAlleleA(index);
+    }
+}
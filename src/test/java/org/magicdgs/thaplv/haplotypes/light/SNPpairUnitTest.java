@@ -31,10 +31,13 @@ import static org.magicdgs.thaplv.haplotypes.light.LightGenotype.SNP;
 
 import org.magicdgs.thaplv.utils.test.BaseTest;
 
+import htsjdk.variant.variantcontext.VariantContext;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Random;
+
 /**
  * @author Daniel Gomez-Sanchez (magicDGS)
  * @deprecated tested class is deprecated
@@ -44,21 +47,55 @@ public class SNPpairUnitTest extends BaseTest {
 
     @DataProvider(name = "pairsToTest")
     public Object[][] pairsToTest() throws Exception {
-        final LightGenotype variant1 = new LightGenotype("2L", 1,
-                new SNP[] {SNP.A, SNP.A, SNP.A, SNP.a, SNP.a, SNP.a, SNP.N});
-        final LightGenotype variant2 = new LightGenotype("2L", 2,
-                new SNP[] {SNP.a, SNP.a, SNP.A, SNP.A, SNP.a, SNP.N, SNP.N});
-        final LightGenotype variant3 = new LightGenotype("2L", 100,
-                new SNP[] {SNP.A, SNP.N, SNP.N, SNP.A, SNP.N, SNP.a, SNP.a});
+        final VariantContext variant1 = PackedGenotypeUnitTest.createVariant("2L", 1,
+                SNP.A, SNP.A, SNP.A, SNP.a, SNP.a, SNP.a, SNP.N);
+        final VariantContext variant2 = PackedGenotypeUnitTest.createVariant("2L", 2,
+                SNP.a, SNP.a, SNP.A, SNP.A, SNP.a, SNP.N, SNP.N);
+        final VariantContext variant3 = PackedGenotypeUnitTest.createVariant("2L", 100,
+                SNP.A, SNP.N, SNP.N, SNP.A, SNP.N, SNP.a, SNP.a);
         final SNPpair pair1_2 = new SNPpair(variant1, variant2);
         final SNPpair pair1_3 = new SNPpair(variant1, variant3);
         final SNPpair pair2_3 = new SNPpair(variant2, variant3);
         final SNPpair pair3_2 = new SNPpair(variant3, variant2);
+        // the same pairs from bit-packed genotypes should have the same expectations
+        final PackedGenotype packed1 = new PackedGenotype(variant1);
+        final PackedGenotype packed2 = new PackedGenotype(variant2);
+        final PackedGenotype packed3 = new PackedGenotype(variant3);
         return new Object[][] {
-                {pair1_2, pair1_3, pair2_3, pair3_2}
+                {pair1_2, pair1_3, pair2_3, pair3_2},
+                {new SNPpair(packed1, packed2), new SNPpair(packed1, packed3),
+                        new SNPpair(packed2, packed3), new SNPpair(packed3, packed2)}
         };
     }
 
+    @Test
+    public void testPackedCountsEqualToLightCounts() throws Exception {
+        final Random random = new Random(1984);
+        // more than one word, and not a multiple of 64
+        final int nSamples = 150;
+        for (int test = 0; test < 100; test++) {
+            final VariantContext variant1 = randomVariant(random, 1, nSamples);
+            final VariantContext variant2 = randomVariant(random, 2, nSamples);
+            final SNPpair expected = new SNPpair(variant1, variant2);
+            final SNPpair actual =
+                    new SNPpair(new PackedGenotype(variant1), new PackedGenotype(variant2));
+            Assert.assertEquals(actual.getTotalCounts(), expected.getTotalCounts());
+            Assert.assertEquals(actual.getCountForHAB(), expected.getCountForHAB());
+            Assert.assertEquals(actual.getCountsForHAb(), expected.getCountsForHAb());
+            Assert.assertEquals(actual.getCountForHaB(), expected.getCountForHaB());
+            Assert.assertEquals(actual.getCountsForHab(), expected.getCountsForHab());
+        }
+    }
+
+    private static VariantContext randomVariant(final Random random, final int position,
+            final int nSamples) {
+        final SNP[] snps = new SNP[nSamples];
+        for (int i = 0; i < nSamples; i++) {
+            snps[i] = SNP.values()[random.nextInt(SNP.values().length)];
+        }
+        return PackedGenotypeUnitTest.createVariant("2L", position, snps);
+    }
+
     @Test(dataProvider = "pairsToTest")
     public void testGetDistance(final SNPpair pair1_2, final SNPpair pair1_3, final SNPpair pair2_3,
             final SNPpair pair3_2) throws Exception {
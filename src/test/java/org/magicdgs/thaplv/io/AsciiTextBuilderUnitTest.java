@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class AsciiTextBuilderUnitTest extends BaseTest {
+
+    @Test
+    public void testAppend() {
+        final AsciiTextBuilder builder = new AsciiTextBuilder(1);
+        builder.append("sample").append('\t').append(new byte[] {'2', 'L'}).append('\t')
+                .append(0).append('\t').append(-10).append('\t').append(Long.MAX_VALUE)
+                .append('\t').append(Long.MIN_VALUE);
+        final String expected = "sample\t2L\t0\t-10\t" + Long.MAX_VALUE + "\t" + Long.MIN_VALUE;
+        Assert.assertEquals(builder.toString(), expected);
+        Assert.assertEquals(builder.length(), expected.length());
+        Assert.assertEquals(builder.toByteArray(), expected.getBytes());
+        builder.clear();
+        Assert.assertEquals(builder.length(), 0);
+        Assert.assertEquals(builder.toString(), "");
+    }
+
+    @Test
+    public void testAppendBinary() {
+        final AsciiTextBuilder builder = new AsciiTextBuilder(1);
+        builder.appendBinary(0x01020304).appendBinary(-1);
+        Assert.assertEquals(builder.toByteArray(),
+                new byte[] {1, 2, 3, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+    }
+
+    @DataProvider(name = "decimals")
+    public Object[][] decimals() {
+        return new Object[][] {
+                {0d, 6}, {-0d, 6}, {1e-7, 6}, {-1e-7, 6}, {5e-7, 6}, {2.5e-7, 6}, {0.15, 1},
+                {1d / 3, 6}, {-2d / 3, 6}, {0.0005, 6}, {999999.9999995, 6}, {1e13, 6},
+                {123.4564995, 6}, {Double.MIN_VALUE, 6}, {Double.MAX_VALUE, 2},
+                {Double.NaN, 6}, {Double.POSITIVE_INFINITY, 6}, {Double.NEGATIVE_INFINITY, 6},
+                {1.5, 9}
+        };
+    }
+
+    @Test(dataProvider = "decimals")
+    public void testAppendDecimal(final double number, final int decimals) {
+        final AsciiTextBuilder builder = new AsciiTextBuilder(1);
+        builder.appendDecimal(number, decimals);
+        Assert.assertEquals(builder.toString(),
+                String.format(Locale.ROOT, "%." + decimals + "f", number));
+    }
+
+    @Test
+    public void testAppendDecimalRandomRatios() {
+        final Random random = new Random(1);
+        final AsciiTextBuilder builder = new AsciiTextBuilder(16);
+        for (int i = 0; i < 100_000; i++) {
+            final double ratio = random.nextInt(1_000) / (double) (random.nextInt(100_000) - 100);
+            builder.clear();
+            builder.appendDecimal(ratio, 6);
+            Assert.assertEquals(builder.toString(), String.format(Locale.ROOT, "%f", ratio));
+        }
+    }
+
+    @DataProvider(name = "badDecimals")
+    public Object[][] badDecimals() {
+        return new Object[][] {{0}, {-1}, {AsciiTextBuilder.MAX_DECIMALS + 1}};
+    }
+
+    @Test(dataProvider = "badDecimals", expectedExceptions = IllegalArgumentException.class)
+    public void testBadDecimals(final int decimals) {
+        new AsciiTextBuilder(1).appendDecimal(1, decimals);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class AsyncBatchWriterUnitTest extends BaseTest {
+
+    @DataProvider(name = "writerParams")
+    public Object[][] writerParams() {
+        return new Object[][] {{false, 1}, {false, 3}, {true, 1}, {true, 3}};
+    }
+
+    @Test(dataProvider = "writerParams")
+    public void testWriteInOrder(final boolean blockCompressed, final int numberOfBuffers)
+            throws Exception {
+        final File file = createTempFile("testWriteInOrder", ".txt");
+        final StringBuilder expected = new StringBuilder();
+        try (final AsyncBatchWriter writer =
+                new AsyncBatchWriter(file, blockCompressed, numberOfBuffers, 8)) {
+            Assert.assertEquals(writer.getFile(), file);
+            for (int batch = 0; batch < 100; batch++) {
+                final AsciiTextBuilder buffer = writer.getBuffer();
+                Assert.assertEquals(buffer.length(), 0);
+                for (int line = 0; line < 10; line++) {
+                    buffer.append(batch).append('\t').append(line).append('\n');
+                    expected.append(batch).append('\t').append(line).append('\n');
+                }
+                writer.submit(buffer);
+            }
+        }
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (final InputStream stream = (blockCompressed)
+                ? new BlockCompressedInputStream(file) : new FileInputStream(file)) {
+            final byte[] bytes = new byte[1024];
+            for (int read = stream.read(bytes); read != -1; read = stream.read(bytes)) {
+                actual.write(bytes, 0, read);
+            }
+        }
+        Assert.assertEquals(actual.toString("US-ASCII"), expected.toString());
+    }
+
+    @Test(expectedExceptions = UserException.CouldNotCreateOutputFile.class)
+    public void testCouldNotCreateFile() throws Exception {
+        final File dir = createTempDir("testCouldNotCreateFile");
+        new AsyncBatchWriter(new File(dir, "not_existing/file.txt"), false, 1, 8);
+    }
+
+    @Test
+    public void testEmptyWriter() throws Exception {
+        final File file = createTempFile("testEmptyWriter", ".txt");
+        new AsyncBatchWriter(file, false, 2, 8).close();
+        Assert.assertEquals(Files.size(file.toPath()), 0);
+    }
+
+    @DataProvider(name = "badParams")
+    public Object[][] badParams() {
+        return new Object[][] {{0, 8}, {1, 0}};
+    }
+
+    @Test(dataProvider = "badParams", expectedExceptions = IllegalArgumentException.class)
+    public void testBadParams(final int numberOfBuffers, final int bufferSize) {
+        new AsyncBatchWriter(createTempFile("testBadParams", ".txt"), false, numberOfBuffers,
+                bufferSize);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class FastaNsCounterUnitTest extends BaseTest {
+
+    private static final int LINE_WIDTH = 60;
+
+    // writes a FASTA file with its .fai index
+    private static void writeIndexedFasta(final File fasta, final String[] names,
+            final byte[][] sequences) throws Exception {
+        long offset = 0;
+        try (final PrintStream fastaStream = new PrintStream(fasta);
+                final PrintStream faiStream = new PrintStream(fasta.getAbsolutePath() + ".fai")) {
+            for (int i = 0; i < names.length; i++) {
+                final String header = ">" + names[i] + "\n";
+                fastaStream.print(header);
+                offset += header.length();
+                faiStream.printf("%s\t%d\t%d\t%d\t%d\n", names[i], sequences[i].length, offset,
+                        LINE_WIDTH, LINE_WIDTH + 1);
+                for (int j = 0; j < sequences[i].length; j += LINE_WIDTH) {
+                    final int end = Math.min(sequences[i].length, j + LINE_WIDTH);
+                    fastaStream.print(new String(sequences[i], j, end - j) + "\n");
+                    offset += end - j + 1;
+                }
+            }
+        }
+    }
+
+    private static int countNs(final byte[] bases, final int start, final int end) {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig", bases);
+        return index.countNs("contig", start, end);
+    }
+
+    @Test
+    public void testCountNsRegionWithAndWithoutIndexFile() throws Exception {
+        final Random random = new Random(1);
+        final String[] names = {"contig1", "contig2"};
+        final byte[][] sequences = {FastaNsIndexUnitTest.randomSequence(random, 1000),
+                FastaNsIndexUnitTest.randomSequence(random, 333)};
+        final File fasta = createTempFile("testCountNsRegion", ".fa");
+        writeIndexedFasta(fasta, names, sequences);
+        final File indexFile = FastaNsIndex.getIndexFile(fasta);
+        indexFile.deleteOnExit();
+        // first without index file, and then with it
+        for (int i = 0; i < 2; i++) {
+            try (final FastaNsCounter counter = new FastaNsCounter(fasta)) {
+                for (int contig = 0; contig < names.length; contig++) {
+                    final int length = sequences[contig].length;
+                    for (int start = 1; start <= length; start += 37) {
+                        final int end = Math.min(length, start + 100);
+                        Assert.assertEquals(
+                                counter.countNsRegion(new SimpleInterval(names[contig], start,
+                                        end)),
+                                countNs(sequences[contig], start, end));
+                    }
+                }
+            }
+            FastaNsIndex.create(ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta))
+                    .write(indexFile);
+        }
+    }
+
+    @Test
+    public void testOutdatedIndexFileIsIgnored() throws Exception {
+        final byte[] sequence = "ACGTNNNNACGT".getBytes();
+        final File fasta = createTempFile("testOutdatedIndexFile", ".fa");
+        writeIndexedFasta(fasta, new String[] {"contig"}, new byte[][] {sequence});
+        final File indexFile = FastaNsIndex.getIndexFile(fasta);
+        indexFile.deleteOnExit();
+        // index with no Ns, older than the FASTA file
+        final FastaNsIndex wrongIndex = new FastaNsIndex();
+        wrongIndex.add("contig", "ACGTACGTACGT".getBytes());
+        wrongIndex.write(indexFile);
+        Assert.assertTrue(indexFile.setLastModified(fasta.lastModified() - 10_000));
+        try (final FastaNsCounter counter = new FastaNsCounter(fasta)) {
+            Assert.assertEquals(counter.countNsRegion(new SimpleInterval("contig", 1, 12)), 4);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class FastaNsIndexUnitTest extends BaseTest {
+
+    // random sequence with blocks of Ns (upper and lower case)
+    static byte[] randomSequence(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            if (random.nextDouble() < 0.05) {
+                final int blockEnd = Math.min(length, i + random.nextInt(20) + 1);
+                for (; i < blockEnd; i++) {
+                    bases[i] = (byte) (random.nextBoolean() ? 'N' : 'n');
+                }
+                i--;
+            } else {
+                bases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+            }
+        }
+        return bases;
+    }
+
+    private static int bruteForceNs(final byte[] bases, final int start, final int end) {
+        int count = 0;
+        for (int i = start - 1; i < end; i++) {
+            if (bases[i] == 'N' || bases[i] == 'n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @DataProvider(name = "sequences")
+    public Object[][] sequences() {
+        final Random random = new Random(1);
+        final byte[] allNs = new byte[50];
+        Arrays.fill(allNs, (byte) 'N');
+        return new Object[][] {
+                {"ACGT".getBytes()},
+                {"NACGTN".getBytes()},
+                {allNs},
+                {randomSequence(random, 100)},
+                {randomSequence(random, 5000)}
+        };
+    }
+
+    @Test(dataProvider = "sequences")
+    public void testCountNs(final byte[] bases) {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig", bases);
+        Assert.assertTrue(index.hasContig("contig"));
+        Assert.assertEquals(index.getContigLength("contig"), bases.length);
+        for (int start = 1; start <= bases.length; start++) {
+            for (int end = start; end <= bases.length; end += 1 + bases.length / 50) {
+                Assert.assertEquals(index.countNs("contig", start, end),
+                        bruteForceNs(bases, start, end), start + "-" + end);
+            }
+        }
+    }
+
+    @Test
+    public void testNumberOfBlocks() {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig", "NNACNNNGTnN".getBytes());
+        Assert.assertEquals(index.getNumberOfBlocks("contig"), 3);
+        Assert.assertEquals(index.countNs("contig", 1, 11), 7);
+    }
+
+    @DataProvider(name = "badRegions")
+    public Object[][] badRegions() {
+        return new Object[][] {{"contig", 0, 5}, {"contig", 5, 11}, {"contig", 5, 3},
+                {"other", 1, 5}};
+    }
+
+    @Test(dataProvider = "badRegions", expectedExceptions = IllegalArgumentException.class)
+    public void testBadRegion(final String contig, final int start, final int end) {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig", "ACGTNNACGT".getBytes());
+        index.countNs(contig, start, end);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDuplicatedContig() {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig", "ACGT".getBytes());
+        index.add("contig", "ACGT".getBytes());
+    }
+
+    @Test
+    public void testWriteRead() {
+        final Random random = new Random(1);
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig1", randomSequence(random, 1000));
+        index.add("contig2", "ACGT".getBytes());
+        index.add("contig3", randomSequence(random, 500));
+        final File file = createTempFile("testWriteRead", FastaNsIndex.NS_INDEX_EXTENSION);
+        index.write(file);
+        final FastaNsIndex read = FastaNsIndex.read(file);
+        Assert.assertEquals(read, index);
+        Assert.assertEquals(read.getContigs(), index.getContigs());
+    }
+
+    @Test
+    public void testWriteReadBinary() {
+        final Random random = new Random(1);
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig1", randomSequence(random, 1000));
+        index.add("contig2", "ACGT".getBytes());
+        index.add("contig3", randomSequence(random, 500));
+        final File file = createTempFile("testWriteReadBinary", FastaNsIndex.BINARY_EXTENSION);
+        index.writeBinary(file);
+        final FastaNsIndex read = FastaNsIndex.readBinary(file);
+        Assert.assertEquals(read, index);
+        Assert.assertEquals(read.getContigs(), index.getContigs());
+    }
+
+    @Test
+    public void testAddBlocks() {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig", 10, new int[] {1, 5}, new int[] {2, 10});
+        Assert.assertEquals(index.getNumberOfBlocks("contig"), 2);
+        Assert.assertEquals(index.countNs("contig", 1, 10), 8);
+        Assert.assertEquals(index.countNs("contig", 3, 4), 0);
+    }
+
+    @DataProvider(name = "badBlocks")
+    public Object[][] badBlocks() {
+        return new Object[][] {
+                {new int[] {1, 5}, new int[] {5, 6}},
+                {new int[] {8}, new int[] {11}},
+                {new int[] {5}, new int[] {4}},
+                {new int[] {5, 1}, new int[] {6, 2}},
+                {new int[] {1}, new int[] {2, 3}}
+        };
+    }
+
+    @Test(dataProvider = "badBlocks", expectedExceptions = IllegalArgumentException.class)
+    public void testBadBlocks(final int[] starts, final int[] ends) {
+        new FastaNsIndex().add("contig", 10, starts, ends);
+    }
+
+    @Test
+    public void testConsistentWithDictionary() {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig1", "ACGT".getBytes());
+        index.add("contig2", "ACNNGT".getBytes());
+        Assert.assertTrue(index.isConsistentWith(new SAMSequenceDictionary(Arrays.asList(
+                new SAMSequenceRecord("contig1", 4), new SAMSequenceRecord("contig2", 6)))));
+        Assert.assertFalse(index.isConsistentWith(new SAMSequenceDictionary(Arrays.asList(
+                new SAMSequenceRecord("contig1", 4), new SAMSequenceRecord("contig2", 7)))));
+        Assert.assertFalse(index.isConsistentWith(new SAMSequenceDictionary(
+                Arrays.asList(new SAMSequenceRecord("contig1", 4)))));
+    }
+
+    @DataProvider(name = "malformedFiles")
+    public Object[][] malformedFiles() {
+        return new Object[][] {
+                // block without contig
+                {"1\t2"},
+                // overlapping blocks
+                {">contig\t10\n1\t5\n5\t6"},
+                // block outside the contig
+                {">contig\t10\n8\t11"},
+                // start after end
+                {">contig\t10\n5\t4"},
+                // duplicated contig
+                {">contig\t10\n>contig\t10"},
+                // wrong number of fields
+                {">contig\t10\n1\t2\t3"},
+                // not a number
+                {">contig\t10\n1\tA"}
+        };
+    }
+
+    @Test(dataProvider = "malformedFiles", expectedExceptions = UserException.MalformedFile.class)
+    public void testMalformedFile(final String content) throws Exception {
+        final File file = createTempFile("testMalformedFile", FastaNsIndex.NS_INDEX_EXTENSION);
+        try (final PrintStream stream = new PrintStream(file)) {
+            stream.println(content);
+        }
+        FastaNsIndex.read(file);
+    }
+
+    @DataProvider(name = "malformedBinaryFiles")
+    public Object[][] malformedBinaryFiles() {
+        return new Object[][] {
+                // not a binary index
+                {">contig\t10\n1\t2".getBytes()},
+                // truncated
+                {new byte[] {'N', 'I', 'D', 'X', 1, 0, 0}},
+                // block outside the contig
+                {new byte[] {'N', 'I', 'D', 'X', 1, 0, 0, 0, 1, 0, 1, 'A', 0, 0, 0, 10, 0, 0, 0,
+                        1, 0, 0, 0, 8, 0, 0, 0, 11}}
+        };
+    }
+
+    @Test(dataProvider = "malformedBinaryFiles",
+            expectedExceptions = UserException.MalformedFile.class)
+    public void testMalformedBinaryFile(final byte[] content) throws Exception {
+        final File file = createTempFile("testMalformedBinaryFile", FastaNsIndex.BINARY_EXTENSION);
+        Files.write(file.toPath(), content);
+        FastaNsIndex.readBinary(file);
+    }
+}
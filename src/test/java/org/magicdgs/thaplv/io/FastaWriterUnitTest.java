@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.IOUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class FastaWriterUnitTest extends BaseTest {
+
+    @DataProvider(name = "widths")
+    public Object[][] widths() {
+        return new Object[][] {{1}, {7}, {60}, {80}, {1000}};
+    }
+
+    @Test(dataProvider = "widths")
+    public void testAddBasesLikeAddBase(final int width) throws Exception {
+        final byte[] bases = FastaNsIndexUnitTest.randomSequence(new Random(width), 1003);
+        final File expected = createTempFile("expected", ".fasta");
+        try (final FastaWriter writer = new FastaWriter(expected, width)) {
+            writer.writeSequenceName("seq");
+            for (final byte base : bases) {
+                writer.addBase(base);
+            }
+            writer.endSequence();
+        }
+        // in chunks of different sizes
+        final File chunked = createTempFile("chunked", ".fasta");
+        final Random random = new Random(width);
+        try (final FastaWriter writer = new FastaWriter(chunked, width)) {
+            writer.writeSequenceName("seq");
+            for (int offset = 0; offset < bases.length; ) {
+                final int length = Math.min(random.nextInt(200), bases.length - offset);
+                writer.addBases(bases, offset, length);
+                offset += length;
+            }
+            writer.endSequence();
+        }
+        // whole sequence
+        final File whole = createTempFile("whole", ".fasta");
+        try (final FastaWriter writer = new FastaWriter(whole, width)) {
+            writer.addWholeSequence(new ReferenceSequence("seq", 0, bases));
+        }
+        final byte[] expectedBytes = Files.readAllBytes(expected.toPath());
+        Assert.assertEquals(Files.readAllBytes(chunked.toPath()), expectedBytes);
+        Assert.assertEquals(Files.readAllBytes(whole.toPath()), expectedBytes);
+    }
+
+    @Test
+    public void testBlockCompressed() throws Exception {
+        final byte[] bases = FastaNsIndexUnitTest.randomSequence(new Random(10), 100_000);
+        final File expected = createTempFile("expected", ".fasta");
+        final File compressed = createTempFile("compressed", ".fasta.gz");
+        for (final File file : new File[] {expected, compressed}) {
+            try (final FastaWriter writer =
+                    new FastaWriter(file, 60, file == compressed)) {
+                writer.addWholeSequence(new ReferenceSequence("seq1", 0, bases));
+                writer.addWholeSequence(new ReferenceSequence("seq2", 1, bases));
+            }
+        }
+        try (final BufferedInputStream stream =
+                new BufferedInputStream(new FileInputStream(compressed))) {
+            Assert.assertTrue(BlockCompressedInputStream.isValidFile(stream));
+        }
+        final ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (final BlockCompressedInputStream stream =
+                new BlockCompressedInputStream(compressed)) {
+            IOUtil.copyStream(stream, decompressed);
+        }
+        Assert.assertEquals(decompressed.toByteArray(), Files.readAllBytes(expected.toPath()));
+    }
+
+    @Test(dataProvider = "widths")
+    public void testIndexAndDictionary(final int width) throws Exception {
+        final Random random = new Random(width);
+        final byte[][] sequences = {
+                FastaNsIndexUnitTest.randomSequence(random, 5_000),
+                FastaNsIndexUnitTest.randomSequence(random, width),
+                FastaNsIndexUnitTest.randomSequence(random, 1)};
+        // lower case bases should be upper cased for the MD5
+        sequences[0][10] = 'a';
+        final File fasta = new File(createTempDir("testIndexAndDictionary"), "test.fasta");
+        try (final FastaWriter writer = new FastaWriter(fasta, width, false, true, true)) {
+            for (int i = 0; i < sequences.length; i++) {
+                writer.writeSequenceName("seq" + i + " description");
+                writer.addBases(sequences[i], 0, sequences[i].length);
+                writer.endSequence();
+            }
+        }
+        final File index = FastaWriter.getIndexFile(fasta);
+        final File dictionary = FastaWriter.getDictionaryFile(fasta);
+        Assert.assertEquals(index, new File(fasta.getParentFile(), "test.fasta.fai"));
+        Assert.assertEquals(dictionary, new File(fasta.getParentFile(), "test.dict"));
+        Assert.assertTrue(index.exists());
+        Assert.assertTrue(dictionary.exists());
+        // the indexed file should be readable without re-indexing
+        try (final IndexedFastaSequenceFile reader = new IndexedFastaSequenceFile(fasta)) {
+            final SAMSequenceDictionary dict = reader.getSequenceDictionary();
+            Assert.assertEquals(dict.size(), sequences.length);
+            for (int i = 0; i < sequences.length; i++) {
+                final SAMSequenceRecord record = dict.getSequence(i);
+                Assert.assertEquals(record.getSequenceName(), "seq" + i);
+                Assert.assertEquals(record.getSequenceLength(), sequences[i].length);
+                final byte[] upperCase = new String(sequences[i]).toUpperCase().getBytes();
+                Assert.assertEquals(record.getAttribute(SAMSequenceRecord.MD5_TAG),
+                        String.format("%032x", new BigInteger(1,
+                                MessageDigest.getInstance("MD5").digest(upperCase))));
+                Assert.assertEquals(reader.getSequence("seq" + i).getBases(), sequences[i]);
+                Assert.assertEquals(reader.getSubsequenceAt("seq" + i, 1, 1).getBases(),
+                        new byte[] {sequences[i][0]});
+            }
+        }
+    }
+
+    @Test
+    public void testDictionaryFileName() {
+        Assert.assertEquals(FastaWriter.getDictionaryFile(new File("dir/sample.fa.gz")),
+                new File("dir/sample.dict"));
+        Assert.assertEquals(FastaWriter.getDictionaryFile(new File("sample.txt")),
+                new File("sample.txt.dict"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testIndexForBlockCompressed() throws Exception {
+        new FastaWriter(createTempFile("indexed", ".fasta.gz"), 80, true, true, false);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAddBasesWithoutName() throws Exception {
+        try (final FastaWriter writer =
+                new FastaWriter(createTempFile("noName", ".fasta"), 80)) {
+            writer.addBases(new byte[] {'A'}, 0, 1);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAddBasesInvalidRange() throws Exception {
+        try (final FastaWriter writer =
+                new FastaWriter(createTempFile("invalidRange", ".fasta"), 80)) {
+            writer.writeSequenceName("seq");
+            writer.addBases(new byte[] {'A'}, 1, 1);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.Interval;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class MaskNsCounterUnitTest extends BaseTest {
+
+    private static final SAMSequenceDictionary DICTIONARY = new SAMSequenceDictionary(
+            Arrays.asList(new SAMSequenceRecord("contig1", 20),
+                    new SAMSequenceRecord("contig2", 10)));
+
+    // accessible regions (0-based, half-open) unsorted and overlapping, with header lines and
+    // a contig that is not in the dictionary
+    private static final String BED = "track name=mask\n"
+            + "# comment\n"
+            + "contig1\t10\t15\tname\n"
+            + "contig1\t2\t5\n"
+            + "other\t0\t100\n"
+            + "contig1\t12\t18\n"
+            + "contig1\t18\t19\n";
+
+    // accessible sites for contig1 (1-based)
+    private static final boolean[] ACCESSIBLE = new boolean[21];
+
+    static {
+        for (final int[] region : new int[][] {{10, 15}, {2, 5}, {12, 18}, {18, 19}}) {
+            for (int i = region[0] + 1; i <= region[1]; i++) {
+                ACCESSIBLE[i] = true;
+            }
+        }
+    }
+
+    private File writeTempFile(final String name, final String extension, final String content)
+            throws Exception {
+        final File file = createTempFile(name, extension);
+        try (final PrintStream stream = new PrintStream(file)) {
+            stream.print(content);
+        }
+        return file;
+    }
+
+    @Test
+    public void testBedMask() throws Exception {
+        final MaskNsCounter counter =
+                new MaskNsCounter(writeTempFile("testBedMask", ".bed", BED), DICTIONARY);
+        Assert.assertSame(counter.getDictionary(), DICTIONARY);
+        Assert.assertEquals(counter.getChromosomeLength("contig1"), 20);
+        for (int start = 1; start <= 20; start++) {
+            for (int end = start; end <= 20; end++) {
+                int expected = 0;
+                for (int i = start; i <= end; i++) {
+                    expected += (ACCESSIBLE[i]) ? 0 : 1;
+                }
+                Assert.assertEquals(counter.countNsRegion(new Interval("contig1", start, end)),
+                        expected, start + "-" + end);
+            }
+        }
+        // contig without accessible regions is completely masked
+        Assert.assertEquals(counter.countNsRegion(new Interval("contig2", 1, 10)), 10);
+    }
+
+    @Test
+    public void testIndexMask() throws Exception {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig1", "ACGTNNNNACGTACGTNNAC".getBytes());
+        index.add("contig2", "NNNNNACGTA".getBytes());
+        final File text = createTempFile("testIndexMask", FastaNsIndex.NS_INDEX_EXTENSION);
+        index.write(text);
+        final File binary = createTempFile("testIndexMask", FastaNsIndex.BINARY_EXTENSION);
+        index.writeBinary(binary);
+        for (final File mask : new File[] {text, binary}) {
+            final MaskNsCounter counter = new MaskNsCounter(mask, DICTIONARY);
+            Assert.assertEquals(counter.countNsRegion(new Interval("contig1", 1, 20)), 6);
+            Assert.assertEquals(counter.countNsRegion(new Interval("contig2", 3, 8)), 3);
+        }
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testIndexNotMatchingDictionary() throws Exception {
+        final FastaNsIndex index = new FastaNsIndex();
+        index.add("contig1", "ACGT".getBytes());
+        final File mask = createTempFile("testIndexNotMatchingDictionary",
+                FastaNsIndex.BINARY_EXTENSION);
+        index.writeBinary(mask);
+        new MaskNsCounter(mask, DICTIONARY);
+    }
+
+    @DataProvider(name = "malformedBed")
+    public Object[][] malformedBed() {
+        return new Object[][] {
+                {"contig1\t10\n"},
+                {"contig1\t10\t5\n"},
+                {"contig1\t-1\t5\n"},
+                {"contig1\t10\t21\n"},
+                {"contig1\tA\t5\n"}
+        };
+    }
+
+    @Test(dataProvider = "malformedBed", expectedExceptions = UserException.MalformedFile.class)
+    public void testMalformedBed(final String content) throws Exception {
+        new MaskNsCounter(writeTempFile("testMalformedBed", ".bed", content), DICTIONARY);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.io;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PhylipWriterUnitTest extends BaseTest {
+
+    @Test
+    public void testInterleavedAlignment() throws Exception {
+        final File file = createTempFile("interleaved", ".phy");
+        final byte[] bases1 = "ACGTACGTAC".getBytes();
+        final byte[] bases2 = "TTGTACGTAA".getBytes();
+        try (final PhylipWriter writer = new PhylipWriter(file,
+                Arrays.asList("sample1", "long_sample_name"), bases1.length, false)) {
+            for (int start = 0; start < bases1.length; start += 4) {
+                final int length = Math.min(4, bases1.length - start);
+                writer.addLine(bases1, start, length);
+                writer.addLine(bases2, start, length);
+            }
+        }
+        Assert.assertEquals(Files.readAllLines(file.toPath()), Arrays.asList(
+                "2 10",
+                "sample1          ACGT",
+                "long_sample_name TTGT",
+                "",
+                "ACGT",
+                "ACGT",
+                "",
+                "AC",
+                "AA"));
+    }
+
+    @Test
+    public void testShortNamesPadded() throws Exception {
+        final File file = createTempFile("short", ".phy");
+        try (final PhylipWriter writer =
+                new PhylipWriter(file, Collections.singletonList("s1"), 2, false)) {
+            writer.addLine("AC".getBytes(), 0, 2);
+        }
+        Assert.assertEquals(Files.readAllLines(file.toPath()),
+                Arrays.asList("1 2", "s1        AC"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDifferentLengthsInBlock() throws Exception {
+        try (final PhylipWriter writer = new PhylipWriter(createTempFile("different", ".phy"),
+                Arrays.asList("s1", "s2"), 4, false)) {
+            writer.addLine("ACGT".getBytes(), 0, 4);
+            writer.addLine("ACGT".getBytes(), 0, 3);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMoreBasesThanLength() throws Exception {
+        try (final PhylipWriter writer = new PhylipWriter(createTempFile("more", ".phy"),
+                Collections.singletonList("s1"), 2, false)) {
+            writer.addLine("ACGT".getBytes(), 0, 4);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testIncompleteAlignment() throws Exception {
+        try (final PhylipWriter writer = new PhylipWriter(createTempFile("incomplete", ".phy"),
+                Collections.singletonList("s1"), 4, false)) {
+            writer.addLine("ACGT".getBytes(), 0, 2);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNameWithSpaces() throws Exception {
+        new PhylipWriter(createTempFile("spaces", ".phy"), Collections.singletonList("s 1"), 4,
+                false);
+    }
+}
@@ -31,28 +31,45 @@ package org.magicdgs.thaplv.tools;
 import org.magicdgs.thaplv.cmd.ThaplvArgumentDefinitions;
 import org.magicdgs.thaplv.utils.test.CommandLineProgramTest;
 
+import htsjdk.samtools.reference.FastaSequenceFile;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
 import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
 public class GetFastaIntegrationTest extends CommandLineProgramTest {
 
-    @Test
-    public void testGetFasta() throws IOException {
+    @DataProvider
+    public Object[][] threads() {
+        return new Object[][] {{1}, {3}};
+    }
+
+    /** The output should be the same with and without writing the samples in parallel. */
+    @Test(dataProvider = "threads")
+    public void testGetFasta(final int threads) throws IOException {
         final String[] samples = {"sample1", "sample2"};
-        final File tmpDir = createTempDir("getFasta");
+        final File tmpDir = createTempDir("getFasta" + threads);
         final ArgumentsBuilder arguments = new ArgumentsBuilder()
                 .addVCF(getCommonTestFile("small.vcf")) // ¡input
                 .addReference(DROSOPHILA_SIMULANS_2L_REFERENCE) // reference
                 .addArgument(ThaplvArgumentDefinitions.HAPLOTYPE_MODEL_LONG, "HAPLOID") // model
+                .addArgument("threads", String.valueOf(threads))
                 .addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
                         tmpDir.getAbsolutePath() + "/"); // output
         // run command line
@@ -68,4 +85,88 @@ public class GetFastaIntegrationTest extends CommandLineProgramTest {
         }
     }
 
+    /** Gets the sequence for a contig in the expected FASTA file for a sample. */
+    private String getExpectedSequence(final String sample, final String contig) {
+        final File expected = getTestFile("expected_haploid." + sample + ".fasta");
+        try (final FastaSequenceFile fasta = new FastaSequenceFile(expected, true)) {
+            for (ReferenceSequence sequence = fasta.nextSequence(); sequence != null;
+                    sequence = fasta.nextSequence()) {
+                if (sequence.getName().equals(contig)) {
+                    return new String(sequence.getBases());
+                }
+            }
+        }
+        throw new IllegalArgumentException(contig + " not found in " + expected);
+    }
+
+    /** Runs the alignment output, with the interval if it is not null. */
+    private File runAlignment(final File tmpDir, final GetFasta.AlignmentFormat format,
+            final String interval, final String alignmentName) {
+        final ArgumentsBuilder arguments = new ArgumentsBuilder()
+                .addVCF(getCommonTestFile("small.vcf"))
+                .addReference(DROSOPHILA_SIMULANS_2L_REFERENCE)
+                .addArgument(ThaplvArgumentDefinitions.HAPLOTYPE_MODEL_LONG, "HAPLOID")
+                .addArgument("alignment-format", format.name())
+                .addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                        tmpDir.getAbsolutePath() + "/" + format.name() + ".");
+        if (interval != null) {
+            arguments.addArgument("intervals", interval);
+        }
+        runCommandLine(arguments);
+        final File alignment = new File(tmpDir, format.name() + "." + alignmentName
+                + format.getExtension());
+        Assert.assertTrue(alignment.exists(),
+                "output file does not exists: " + alignment.toString());
+        return alignment;
+    }
+
+    @Test
+    public void testGetAlignmentForIntervals() throws IOException {
+        final File tmpDir = createTempDir("getAlignment");
+        final File fasta = runAlignment(tmpDir, GetFasta.AlignmentFormat.FASTA,
+                "2L:1000-2000", "2L_1000-2000");
+        final File phylip = runAlignment(tmpDir, GetFasta.AlignmentFormat.PHYLIP,
+                "2L:1000-2000", "2L_1000-2000");
+        // no FASTA file for each sample is generated
+        Assert.assertFalse(new File(tmpDir, "FASTA.sample1.fasta").exists());
+        // the same sequences are in both formats
+        final List<String> phylipLines = Files.readAllLines(phylip.toPath());
+        Assert.assertEquals(phylipLines.get(0), "2 1001");
+        final Map<String, StringBuilder> phylipSequences = new LinkedHashMap<>();
+        final List<String> names = new ArrayList<>();
+        int next = 0;
+        for (final String line : phylipLines.subList(1, phylipLines.size())) {
+            if (line.isEmpty()) {
+                next = 0;
+            } else if (phylipSequences.size() < 2) {
+                final String[] tokens = line.split("\\s+");
+                names.add(tokens[0]);
+                phylipSequences.put(tokens[0], new StringBuilder(tokens[1]));
+            } else {
+                phylipSequences.get(names.get(next++)).append(line);
+            }
+        }
+        Assert.assertEquals(names, Arrays.asList("sample1", "sample2"));
+        try (final IndexedFastaSequenceFile alignment = new IndexedFastaSequenceFile(fasta)) {
+            for (final String sample : names) {
+                final String row = new String(alignment.getSequence(sample).getBases());
+                Assert.assertEquals(row, phylipSequences.get(sample).toString());
+                // the row is the interval in the sequence for the sample
+                Assert.assertEquals(row, getExpectedSequence(sample, "2L").substring(999, 2000));
+            }
+        }
+    }
+
+    @Test
+    public void testGetAlignmentForContigs() throws IOException {
+        final File tmpDir = createTempDir("getAlignmentContigs");
+        final File fasta = runAlignment(tmpDir, GetFasta.AlignmentFormat.FASTA, null, "2L");
+        try (final IndexedFastaSequenceFile alignment = new IndexedFastaSequenceFile(fasta)) {
+            for (final String sample : Arrays.asList("sample1", "sample2")) {
+                Assert.assertEquals(new String(alignment.getSequence(sample).getBases()),
+                        getExpectedSequence(sample, "2L"));
+            }
+        }
+    }
+
 }
\ No newline at end of file
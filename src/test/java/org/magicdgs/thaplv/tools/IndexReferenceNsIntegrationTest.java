@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools;
+
+import org.magicdgs.thaplv.io.FastaNsIndex;
+import org.magicdgs.thaplv.utils.test.BaseTest;
+import org.magicdgs.thaplv.utils.test.CommandLineProgramTest;
+
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class IndexReferenceNsIntegrationTest extends CommandLineProgramTest {
+
+    private static ArgumentsBuilder getArguments(final File indexFile) {
+        return new ArgumentsBuilder().addReference(DROSOPHILA_SIMULANS_2L_REFERENCE)
+                .addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                        indexFile.getAbsolutePath());
+    }
+
+    @Test
+    public void testIndexAndValidate() throws Exception {
+        final File indexFile = new File(BaseTest.createTempDir("indexReferenceNs"),
+                "drosophila.2L.fa" + FastaNsIndex.NS_INDEX_EXTENSION);
+        runCommandLine(getArguments(indexFile));
+        Assert.assertTrue(indexFile.exists(), "index file does not exists");
+        Assert.assertEquals(FastaNsIndex.read(indexFile),
+                FastaNsIndex.create(ReferenceSequenceFileFactory
+                        .getReferenceSequenceFile(DROSOPHILA_SIMULANS_2L_REFERENCE)));
+        // validation of the generated index
+        runCommandLine(getArguments(indexFile).addBooleanArgument("validate", true));
+    }
+
+    @Test
+    public void testBinaryIndex() throws Exception {
+        final File indexFile = new File(BaseTest.createTempDir("indexReferenceNs"),
+                "drosophila.2L.fa" + FastaNsIndex.BINARY_EXTENSION);
+        runCommandLine(getArguments(indexFile));
+        Assert.assertEquals(FastaNsIndex.readBinary(indexFile),
+                FastaNsIndex.create(ReferenceSequenceFileFactory
+                        .getReferenceSequenceFile(DROSOPHILA_SIMULANS_2L_REFERENCE)));
+        runCommandLine(getArguments(indexFile).addBooleanArgument("validate", true));
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testValidateWrongIndex() throws Exception {
+        final File indexFile = new File(BaseTest.createTempDir("indexReferenceNs"),
+                "wrong" + FastaNsIndex.NS_INDEX_EXTENSION);
+        final FastaNsIndex wrongIndex = new FastaNsIndex();
+        wrongIndex.add("2L", "ACGTN".getBytes());
+        wrongIndex.write(indexFile);
+        runCommandLine(getArguments(indexFile).addBooleanArgument("validate", true));
+    }
+}
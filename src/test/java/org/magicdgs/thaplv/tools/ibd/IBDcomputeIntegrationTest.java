@@ -28,9 +28,16 @@
 package org.magicdgs.thaplv.tools.ibd;
 
 import org.magicdgs.thaplv.cmd.ThaplvArgumentDefinitions;
+import org.magicdgs.thaplv.cmd.argumentcollections.SampleComparisonArgumentCollection;
+import org.magicdgs.thaplv.io.FastaNsIndex;
+import org.magicdgs.thaplv.tools.ibd.engine.BinaryDiffFile;
+import org.magicdgs.thaplv.tools.ibd.engine.IBDOutput;
 import org.magicdgs.thaplv.utils.test.BaseTest;
 import org.magicdgs.thaplv.utils.test.CommandLineProgramTest;
 
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.IOUtil;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
@@ -39,6 +46,9 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 
 /**
  * @author Daniel Gomez-Sanchez (magicDGS)
@@ -118,6 +128,123 @@ public class IBDcomputeIntegrationTest extends CommandLineProgramTest {
                 .assertEqualTextFiles(outputFile, getTestFile(expectedPrefix + ".ibd"));
     }
 
+    @Test
+    public void testIBDcomputeMultiThread() throws Exception {
+        final File tmpDir = BaseTest.createTempDir("ibdCompute");
+        final ArgumentsBuilder arguments = getBaseArgumentsForIBDCompute();
+        arguments.addBooleanArgument("output-differences", true)
+                .addArgument("threads", "3")
+                .addArgument("tile-size", "1");
+        final String outputPrefix = "testIBDcomputeMultiThread";
+        arguments.addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                tmpDir.getAbsolutePath() + "/" + outputPrefix);
+        runCommandLine(arguments);
+        for (final String extension : new String[] {".ibd", ".diff"}) {
+            IntegrationTestSpec.assertEqualTextFiles(new File(tmpDir, outputPrefix + extension),
+                    getTestFile(expectedPrefix + extension));
+        }
+    }
+
+    @Test
+    public void testBinaryAndCompressedDifferences() throws Exception {
+        final File tmpDir = BaseTest.createTempDir("ibdCompute");
+        for (final IBDOutput.DiffFormat format : new IBDOutput.DiffFormat[] {
+                IBDOutput.DiffFormat.BGZF, IBDOutput.DiffFormat.BINARY}) {
+            final ArgumentsBuilder arguments = getBaseArgumentsForIBDCompute();
+            arguments.addBooleanArgument("output-differences", true)
+                    .addArgument("differences-format", format.name());
+            final String outputPrefix = "testDifferences" + format.name();
+            arguments.addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                    tmpDir.getAbsolutePath() + "/" + outputPrefix);
+            runCommandLine(arguments);
+            final File outputFile = new File(tmpDir, outputPrefix + format.getExtension());
+            Assert.assertTrue(outputFile.exists(),
+                    "output file does not exists: " + outputFile.toString());
+            // convert to text to compare with the expected output
+            final File textFile = new File(tmpDir, outputPrefix + ".diff");
+            try (final OutputStream text = new FileOutputStream(textFile)) {
+                if (format == IBDOutput.DiffFormat.BINARY) {
+                    BinaryDiffFile.convertToText(outputFile, text);
+                } else {
+                    IOUtil.copyStream(new BlockCompressedInputStream(outputFile), text);
+                }
+            }
+            IntegrationTestSpec.assertEqualTextFiles(textFile,
+                    getTestFile(expectedPrefix + ".diff"));
+        }
+    }
+
+    @Test
+    public void testIBDcomputeWithAllSamplePairs() throws Exception {
+        final File tmpDir = BaseTest.createTempDir("ibdComputePairs");
+        // all the pairs, in reverse order and with swapped samples
+        final File pairs = new File(tmpDir, "pairs.txt");
+        try (final PrintStream stream = new PrintStream(pairs)) {
+            for (int i = 10; i > 1; i--) {
+                for (int j = i - 1; j > 0; j--) {
+                    stream.println("sample" + i + "\tsample" + j);
+                }
+            }
+        }
+        final String outputPrefix = "testIBDcomputeWithAllSamplePairs";
+        final ArgumentsBuilder arguments = getBaseArgumentsForIBDCompute()
+                .addBooleanArgument("output-differences", true)
+                .addArgument(SampleComparisonArgumentCollection.SAMPLE_PAIRS_LONG,
+                        pairs.getAbsolutePath())
+                .addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                        tmpDir.getAbsolutePath() + "/" + outputPrefix);
+        runCommandLine(arguments);
+        for (final String extension : new String[] {".ibd", ".diff"}) {
+            IntegrationTestSpec.assertEqualTextFiles(new File(tmpDir, outputPrefix + extension),
+                    getTestFile(expectedPrefix + extension));
+        }
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testUnknownSampleInPairs() throws Exception {
+        final File pairs = createTempFile("testUnknownSampleInPairs", ".txt");
+        try (final PrintStream stream = new PrintStream(pairs)) {
+            stream.println("sample1\tunknown");
+        }
+        final ArgumentsBuilder arguments = getBaseArgumentsForIBDCompute()
+                .addArgument(SampleComparisonArgumentCollection.SAMPLE_PAIRS_LONG,
+                        pairs.getAbsolutePath())
+                .addOutput(createTempFile("testUnknownSampleInPairs", ""));
+        runCommandLine(arguments);
+    }
+
+    @Test
+    public void testIBDcomputeWithAccessibilityMask() throws Exception {
+        final File tmpDir = BaseTest.createTempDir("ibdComputeMask");
+        // the N index of the reference as mask, to get the same available sites
+        final File mask = new File(tmpDir, "mask" + FastaNsIndex.BINARY_EXTENSION);
+        FastaNsIndex.create(ReferenceSequenceFileFactory
+                .getReferenceSequenceFile(DROSOPHILA_SIMULANS_2L_REFERENCE)).writeBinary(mask);
+        final String outputPrefix = "testIBDcomputeWithAccessibilityMask";
+        // without reference: the dictionary comes from the VCF header
+        final ArgumentsBuilder arguments = new ArgumentsBuilder()
+                .addArgument(ThaplvArgumentDefinitions.HAPLOTYPE_MODEL_LONG, "HAPLOID")
+                .addVCF(getCommonTestFile("10samples.vcf.gz"))
+                .addArgument("accessibility-mask", mask.getAbsolutePath())
+                .addBooleanArgument("output-differences", true)
+                .addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                        tmpDir.getAbsolutePath() + "/" + outputPrefix);
+        runCommandLine(arguments);
+        for (final String extension : new String[] {".ibd", ".diff"}) {
+            IntegrationTestSpec.assertEqualTextFiles(new File(tmpDir, outputPrefix + extension),
+                    getTestFile(expectedPrefix + extension));
+        }
+    }
+
+    @Test(expectedExceptions = UserException.MissingReference.class)
+    public void testNoReferenceOrMask() throws Exception {
+        final ArgumentsBuilder arguments = new ArgumentsBuilder()
+                .addArgument(ThaplvArgumentDefinitions.HAPLOTYPE_MODEL_LONG, "HAPLOID")
+                .addVCF(getCommonTestFile("10samples.vcf.gz"))
+                .addOutput(createTempFile("testNoReferenceOrMask", ""));
+        runCommandLine(arguments);
+    }
+
     @Test(expectedExceptions = UserException.BadArgumentValue.class)
     public void testBadWindowSize() throws Exception {
         final ArgumentsBuilder arguments = getBaseArgumentsForIBDCompute()
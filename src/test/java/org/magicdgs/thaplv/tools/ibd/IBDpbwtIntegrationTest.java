@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd;
+
+import org.magicdgs.thaplv.cmd.ThaplvArgumentDefinitions;
+import org.magicdgs.thaplv.utils.test.BaseTest;
+import org.magicdgs.thaplv.utils.test.CommandLineProgramTest;
+
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
+import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class IBDpbwtIntegrationTest extends CommandLineProgramTest {
+
+    private static ArgumentsBuilder getBaseArguments() {
+        return new ArgumentsBuilder()
+                .addArgument(ThaplvArgumentDefinitions.HAPLOTYPE_MODEL_LONG, "HAPLOID")
+                .addVCF(getCommonTestFile("10samples.vcf.gz"));
+    }
+
+    @DataProvider(name = "thresholds")
+    public Object[][] thresholds() {
+        return new Object[][] {
+                {null, null, "expected.ibd"},
+                {10_000, 20, "expected_10000_20.ibd"}
+        };
+    }
+
+    @Test(dataProvider = "thresholds")
+    public void testIBDpbwt(final Integer minimumLength, final Integer minimumSites,
+            final String expectedFile) throws Exception {
+        final File tmpDir = BaseTest.createTempDir("ibdPbwt");
+        final ArgumentsBuilder arguments = getBaseArguments();
+        if (minimumLength != null) {
+            arguments.addArgument(IBDpbwt.MINIMUM_LENGTH_ARGNAME, minimumLength.toString())
+                    .addArgument(IBDpbwt.MINIMUM_SITES_ARGNAME, minimumSites.toString());
+        }
+        final String outputPrefix = "testIBDpbwt";
+        arguments.addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                tmpDir.getAbsolutePath() + "/" + outputPrefix);
+        runCommandLine(arguments);
+        IntegrationTestSpec.assertEqualTextFiles(new File(tmpDir, outputPrefix + ".ibd"),
+                getTestFile(expectedFile));
+    }
+
+    @DataProvider(name = "badArguments")
+    public Object[][] badArguments() {
+        return new Object[][] {
+                {IBDpbwt.MINIMUM_LENGTH_ARGNAME, "0"},
+                {IBDpbwt.MINIMUM_SITES_ARGNAME, "-1"}
+        };
+    }
+
+    @Test(dataProvider = "badArguments", expectedExceptions = UserException.BadArgumentValue.class)
+    public void testBadArguments(final String argumentName, final String value)
+            throws Exception {
+        final ArgumentsBuilder arguments = getBaseArguments()
+                .addArgument(argumentName, value)
+                .addOutput(createTempFile("testBadArguments", ""));
+        runCommandLine(arguments);
+    }
+}
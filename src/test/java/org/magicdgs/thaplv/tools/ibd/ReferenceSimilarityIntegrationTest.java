@@ -28,10 +28,12 @@
 package org.magicdgs.thaplv.tools.ibd;
 
 import org.magicdgs.thaplv.cmd.ThaplvArgumentDefinitions;
+import org.magicdgs.thaplv.cmd.argumentcollections.SampleComparisonArgumentCollection;
 import org.magicdgs.thaplv.utils.test.BaseTest;
 import org.magicdgs.thaplv.utils.test.CommandLineProgramTest;
 
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
 import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
 import org.testng.Assert;
@@ -92,4 +94,14 @@ public class ReferenceSimilarityIntegrationTest extends CommandLineProgramTest {
                         getTestFile(expectedPrefix + "_200_100.ibd"));
     }
 
+    @Test(expectedExceptions = UserException.BadArgumentValue.class)
+    public void testBetweenGroupComparison() throws Exception {
+        final ArgumentsBuilder arguments = IBDcomputeIntegrationTest
+                .getBaseArgumentsForIBDCompute()
+                .addArgument(SampleComparisonArgumentCollection.GROUP_COMPARISON_LONG,
+                        SampleComparisonArgumentCollection.GroupComparison.BETWEEN.name())
+                .addOutput(createTempFile("testBetweenGroupComparison", ""));
+        runCommandLine(arguments);
+    }
+
 }
\ No newline at end of file
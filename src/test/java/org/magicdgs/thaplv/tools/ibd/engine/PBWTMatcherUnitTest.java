@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PBWTMatcherUnitTest extends BaseTest {
+
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("C", false);
+    private static final Allele ALT2 = Allele.create("T", false);
+
+    private static List<String> sampleNames(final int numberOfSamples) {
+        final List<String> names = new ArrayList<>(numberOfSamples);
+        for (int i = 0; i < numberOfSamples; i++) {
+            names.add("sample" + i);
+        }
+        return names;
+    }
+
+    private static VariantContext makeVariant(final String contig, final int position,
+            final List<String> sampleNames, final Allele... alleles) {
+        final List<Genotype> genotypes = new ArrayList<>(sampleNames.size());
+        for (int i = 0; i < sampleNames.size(); i++) {
+            genotypes.add(new GenotypeBuilder(sampleNames.get(i),
+                    Collections.singletonList(alleles[i])).make());
+        }
+        return new VariantContextBuilder("test", contig, position, position,
+                Arrays.asList(REF, ALT, ALT2)).genotypes(genotypes).make();
+    }
+
+    // random haplotypes copied from a few founders with some mutations, in two contigs
+    private static List<VariantContext> randomVariants(final List<String> sampleNames,
+            final int numberOfVariants) {
+        final Random random = new Random(1);
+        final int numberOfFounders = 3;
+        final List<VariantContext> variants = new ArrayList<>(numberOfVariants);
+        final int[] founder = new int[sampleNames.size()];
+        int position = 0;
+        for (int i = 0; i < numberOfVariants; i++) {
+            final String contig = (i < numberOfVariants / 2) ? "1" : "2";
+            position = (i == numberOfVariants / 2) ? 1 : position + 1 + random.nextInt(10);
+            final boolean[] founderAlleles = new boolean[numberOfFounders];
+            for (int j = 0; j < numberOfFounders; j++) {
+                founderAlleles[j] = random.nextBoolean();
+            }
+            final Allele[] alleles = new Allele[sampleNames.size()];
+            for (int j = 0; j < alleles.length; j++) {
+                // switch founder and add mutations at low rate
+                if (random.nextDouble() < 0.05) {
+                    founder[j] = random.nextInt(numberOfFounders);
+                }
+                final boolean alternative = founderAlleles[founder[j]]
+                        ^ (random.nextDouble() < 0.02);
+                alleles[j] = (alternative) ? ALT : REF;
+            }
+            variants.add(makeVariant(contig, position, sampleNames, alleles));
+        }
+        return variants;
+    }
+
+    // all the maximal runs of equal alleles between pairs of samples
+    private static List<String> bruteForceMatches(final List<String> sampleNames,
+            final List<VariantContext> variants, final int minimumLength,
+            final int minimumSites) {
+        final List<String> matches = new ArrayList<>();
+        for (int i = 0; i < sampleNames.size() - 1; i++) {
+            for (int j = i + 1; j < sampleNames.size(); j++) {
+                // first site of the current run (inclusive)
+                int start = 0;
+                for (int k = 0; k < variants.size(); k++) {
+                    final VariantContext variant = variants.get(k);
+                    if (!variant.getGenotype(i).getAllele(0)
+                            .equals(variant.getGenotype(j).getAllele(0))) {
+                        addMatch(matches, i, j, variants, start, k, minimumLength,
+                                minimumSites);
+                        start = k + 1;
+                    } else if (k + 1 == variants.size()
+                            || !variant.getContig().equals(variants.get(k + 1).getContig())) {
+                        addMatch(matches, i, j, variants, start, k + 1, minimumLength,
+                                minimumSites);
+                        start = k + 1;
+                    }
+                }
+            }
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private static void addMatch(final List<String> matches, final int sample1,
+            final int sample2, final List<VariantContext> variants, final int from,
+            final int to, final int minimumLength, final int minimumSites) {
+        if (to - from >= minimumSites) {
+            final VariantContext first = variants.get(from);
+            final VariantContext last = variants.get(to - 1);
+            if (last.getStart() - first.getStart() + 1 >= minimumLength) {
+                matches.add(sample1 + "\t" + sample2 + "\t" + first.getContig() + "\t"
+                        + first.getStart() + "\t" + last.getStart());
+            }
+        }
+    }
+
+    @DataProvider(name = "thresholds")
+    public Object[][] thresholds() {
+        return new Object[][] {
+                {5, 100, 1, 1},
+                {5, 100, 1, 5},
+                {20, 500, 50, 3},
+                {20, 500, 200, 10},
+                {70, 1000, 100, 20}
+        };
+    }
+
+    @Test(dataProvider = "thresholds")
+    public void testMatches(final int numberOfSamples, final int numberOfVariants,
+            final int minimumLength, final int minimumSites) {
+        final List<String> sampleNames = sampleNames(numberOfSamples);
+        final List<VariantContext> variants = randomVariants(sampleNames, numberOfVariants);
+        final List<String> matches = new ArrayList<>();
+        final PBWTMatcher matcher = new PBWTMatcher(sampleNames, minimumLength, minimumSites,
+                (sample1, sample2, contig, start, end) -> {
+                    Assert.assertTrue(sample1 < sample2);
+                    matches.add(sample1 + "\t" + sample2 + "\t" + contig + "\t" + start + "\t"
+                            + end);
+                });
+        variants.forEach(matcher::addVariant);
+        matcher.finalizeMatches();
+        Collections.sort(matches);
+        final List<String> expected =
+                bruteForceMatches(sampleNames, variants, minimumLength, minimumSites);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(matches, expected);
+    }
+
+    @Test
+    public void testLargeIdenticalBlockWithSingleton() {
+        final List<String> sampleNames = sampleNames(10_000);
+        final Allele[] identical = new Allele[sampleNames.size()];
+        Arrays.fill(identical, REF);
+        final Allele[] singleton = identical.clone();
+        singleton[5_000] = ALT;
+        final List<String> matches = new ArrayList<>();
+        final PBWTMatcher matcher = new PBWTMatcher(sampleNames, 1, 1,
+                (sample1, sample2, contig, start, end) -> matches.add(
+                        sample1 + "\t" + sample2 + "\t" + contig + "\t" + start + "\t" + end));
+        matcher.addVariant(makeVariant("1", 10, sampleNames, identical));
+        matcher.addVariant(makeVariant("1", 20, sampleNames, identical));
+        // only the pairs with the singleton end at the previous site
+        matcher.addVariant(makeVariant("1", 30, sampleNames, singleton));
+        Assert.assertEquals(matches.size(), sampleNames.size() - 1);
+        final List<String> expected = new ArrayList<>(sampleNames.size() - 1);
+        for (int i = 0; i < sampleNames.size(); i++) {
+            if (i != 5_000) {
+                expected.add(Math.min(i, 5_000) + "\t" + Math.max(i, 5_000) + "\t1\t10\t20");
+            }
+        }
+        Collections.sort(matches);
+        Collections.sort(expected);
+        Assert.assertEquals(matches, expected);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingGenotype() {
+        final List<String> sampleNames = sampleNames(2);
+        new PBWTMatcher(sampleNames, 1, 1, (sample1, sample2, contig, start, end) -> {})
+                .addVariant(makeVariant("1", 1, sampleNames, REF, Allele.NO_CALL));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMultiallelic() {
+        final List<String> sampleNames = sampleNames(3);
+        new PBWTMatcher(sampleNames, 1, 1, (sample1, sample2, contig, start, end) -> {})
+                .addVariant(makeVariant("1", 1, sampleNames, REF, ALT, ALT2));
+    }
+
+    @DataProvider(name = "badThresholds")
+    public Object[][] badThresholds() {
+        return new Object[][] {{0, 1}, {1, 0}, {-1, 10}};
+    }
+
+    @Test(dataProvider = "badThresholds", expectedExceptions = IllegalArgumentException.class)
+    public void testBadThresholds(final int minimumLength, final int minimumSites) {
+        new PBWTMatcher(sampleNames(2), minimumLength, minimumSites,
+                (sample1, sample2, contig, start, end) -> {});
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import org.magicdgs.thaplv.haplotypes.pairs.DifferencesDistancePair;
+import org.magicdgs.thaplv.utils.concurrent.ExecutorsFactory;
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PairwiseDifferencesCounterUnitTest extends BaseTest {
+
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("C", false);
+
+    private static List<String> sampleNames(final int numberOfSamples) {
+        final List<String> names = new ArrayList<>(numberOfSamples);
+        for (int i = 0; i < numberOfSamples; i++) {
+            names.add("sample" + i);
+        }
+        return names;
+    }
+
+    // random haploid variants with 10% of missing calls
+    private static List<VariantContext> randomVariants(final List<String> sampleNames,
+            final int numberOfVariants) {
+        final Random random = new Random(1);
+        final List<VariantContext> variants = new ArrayList<>(numberOfVariants);
+        for (int i = 1; i <= numberOfVariants; i++) {
+            final List<Genotype> genotypes = new ArrayList<>(sampleNames.size());
+            for (final String sample : sampleNames) {
+                final double value = random.nextDouble();
+                final Allele allele = (value < 0.1) ? Allele.NO_CALL : (value < 0.5) ? ALT : REF;
+                genotypes.add(new GenotypeBuilder(sample, Collections.singletonList(allele))
+                        .make());
+            }
+            variants.add(new VariantContextBuilder("test", "1", i, i, Arrays.asList(REF, ALT))
+                    .genotypes(genotypes).make());
+        }
+        return variants;
+    }
+
+    // expected pairs with the same names as the index
+    private static List<DifferencesDistancePair> expectedPairs(final SamplePairIndex pairs) {
+        final List<DifferencesDistancePair> expected = new ArrayList<>(pairs.getNumberOfPairs());
+        for (int i = 0; i < pairs.getNumberOfPairs(); i++) {
+            expected.add(new DifferencesDistancePair(pairs.getFirstSampleName(i),
+                    pairs.getSecondSampleName(i)));
+        }
+        return expected;
+    }
+
+    private static void assertEqualCounts(final PairwiseDifferencesCounter actual,
+            final List<DifferencesDistancePair> expected) {
+        Assert.assertEquals(actual.getPairs().getNumberOfPairs(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final String names = expected.get(i).getPairNames();
+            Assert.assertEquals(actual.getPairs().getPairNames(i), names);
+            Assert.assertEquals(actual.getNumberOfDifferences(i),
+                    expected.get(i).getNumberOfDifferences(), names);
+            Assert.assertEquals(actual.getNumberOfSites(i),
+                    expected.get(i).getNumberOfSites(), names);
+            Assert.assertEquals(actual.getNumberOfMissing(i),
+                    expected.get(i).getNumberOfMissing(), names);
+        }
+    }
+
+    @DataProvider(name = "dimensions")
+    public Object[][] dimensions() {
+        return new Object[][] {
+                // less than one word/block
+                {2, 10},
+                // exactly one word/block
+                {64, 64},
+                // more than one word/block
+                {130, 200}
+        };
+    }
+
+    @Test(dataProvider = "dimensions")
+    public void testPairwiseCounts(final int numberOfSamples, final int numberOfVariants) {
+        final List<String> names = sampleNames(numberOfSamples);
+        final SamplePairIndex pairs = SamplePairIndex.allPairs(names);
+        final List<DifferencesDistancePair> expected = expectedPairs(pairs);
+        final PairwiseDifferencesCounter counter = new PairwiseDifferencesCounter(pairs);
+        for (final VariantContext variant : randomVariants(names, numberOfVariants)) {
+            counter.add(new EncodedHaplotypes(variant, names));
+            expected.forEach(pair -> pair.add(variant));
+        }
+        Assert.assertEquals(counter.getNumberOfVariants(), numberOfVariants);
+        assertEqualCounts(counter, expected);
+    }
+
+    @Test(dataProvider = "dimensions")
+    public void testReferenceCounts(final int numberOfSamples, final int numberOfVariants) {
+        final List<String> names = sampleNames(numberOfSamples);
+        final SamplePairIndex pairs = SamplePairIndex.againstReference("Reference", names);
+        final List<DifferencesDistancePair> expected = expectedPairs(pairs);
+        final PairwiseDifferencesCounter counter = new PairwiseDifferencesCounter(pairs);
+        for (final VariantContext variant : randomVariants(names, numberOfVariants)) {
+            counter.add(new EncodedHaplotypes(variant, names));
+            expected.forEach(pair -> pair.addReference(variant.getGenotype(pair.getSample2())));
+        }
+        Assert.assertEquals(counter.getNumberOfVariants(), numberOfVariants);
+        assertEqualCounts(counter, expected);
+    }
+
+    @Test(dataProvider = "dimensions")
+    public void testMultiThreadCounts(final int numberOfSamples, final int numberOfVariants)
+            throws Exception {
+        final List<String> names = sampleNames(numberOfSamples);
+        final Allele other = Allele.create("G", false);
+        final List<VariantContext> variants = new ArrayList<>();
+        for (final VariantContext variant : randomVariants(names, numberOfVariants)) {
+            variants.add(variant);
+            // add a non-biallelic variant every 10 variants to test the pair by pair comparison
+            if (variant.getStart() % 10 == 0) {
+                variants.add(new VariantContextBuilder(variant)
+                        .alleles(Arrays.asList(REF, ALT, other)).make());
+            }
+        }
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) ExecutorsFactory
+                .newFixedThreadPoolWithBoundedQueue(3, 10);
+        try {
+            for (final SamplePairIndex pairs : Arrays.asList(SamplePairIndex.allPairs(names),
+                    SamplePairIndex.againstReference("Reference", names))) {
+                final PairwiseDifferencesCounter expected = new PairwiseDifferencesCounter(pairs);
+                final PairwiseDifferencesCounter actual =
+                        new PairwiseDifferencesCounter(pairs, Optional.of(executor), 1);
+                for (final VariantContext variant : variants) {
+                    expected.add(new EncodedHaplotypes(variant, names));
+                    actual.add(new EncodedHaplotypes(variant, names));
+                }
+                Assert.assertEquals(actual.getNumberOfVariants(), expected.getNumberOfVariants());
+                for (int i = 0; i < pairs.getNumberOfPairs(); i++) {
+                    Assert.assertEquals(actual.getNumberOfDifferences(i),
+                            expected.getNumberOfDifferences(i));
+                    Assert.assertEquals(actual.getNumberOfSites(i), expected.getNumberOfSites(i));
+                    Assert.assertEquals(actual.getNumberOfMissing(i),
+                            expected.getNumberOfMissing(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEncodedHaplotypes() {
+        final List<String> names = sampleNames(70);
+        final VariantContext variant = randomVariants(names, 1).get(0);
+        final EncodedHaplotypes haplotypes = new EncodedHaplotypes(variant, names);
+        Assert.assertEquals(haplotypes.getNumberOfSamples(), names.size());
+        Assert.assertTrue(haplotypes.isBiallelic());
+        for (int i = 0; i < names.size(); i++) {
+            final Allele allele = variant.getGenotype(names.get(i)).getAllele(0);
+            final long mask = 1L << i;
+            Assert.assertEquals((haplotypes.getCalledWord(i / Long.SIZE) & mask) != 0,
+                    allele.isCalled());
+            Assert.assertEquals((haplotypes.getAlternativeWord(i / Long.SIZE) & mask) != 0,
+                    allele.equals(ALT));
+        }
+    }
+
+    @Test
+    public void testNonBiallelicCounts() {
+        final List<String> names = sampleNames(3);
+        final SamplePairIndex pairs = SamplePairIndex.againstSample(names.get(0), names);
+        final List<DifferencesDistancePair> expected = expectedPairs(pairs);
+        final Allele other = Allele.create("G", false);
+        final VariantContext variant = new VariantContextBuilder("test", "1", 1, 1,
+                Arrays.asList(REF, ALT, other))
+                .genotypes(new GenotypeBuilder(names.get(0), Collections.singletonList(ALT)).make(),
+                        new GenotypeBuilder(names.get(1), Collections.singletonList(other)).make(),
+                        new GenotypeBuilder(names.get(2), Collections.singletonList(ALT)).make())
+                .make();
+        final PairwiseDifferencesCounter counter = new PairwiseDifferencesCounter(pairs);
+        counter.add(new EncodedHaplotypes(variant, names));
+        expected.forEach(pair -> pair.add(variant));
+        assertEqualCounts(counter, expected);
+        Assert.assertEquals(counter.getNumberOfDifferences(0), 1);
+        Assert.assertEquals(counter.getNumberOfDifferences(1), 0);
+    }
+
+    @Test
+    public void testCountsBetweenSnapshots() {
+        final List<String> names = sampleNames(10);
+        final SamplePairIndex pairs = SamplePairIndex.allPairs(names);
+        final List<DifferencesDistancePair> expected = expectedPairs(pairs);
+        final PairwiseDifferencesCounter running = new PairwiseDifferencesCounter(pairs);
+        final List<VariantContext> variants = randomVariants(names, 100);
+        variants.subList(0, 30).forEach(v -> running.add(new EncodedHaplotypes(v, names)));
+        final PairwiseDifferencesCounter.Snapshot start = running.snapshot();
+        for (final VariantContext variant : variants.subList(30, 90)) {
+            running.add(new EncodedHaplotypes(variant, names));
+            expected.forEach(pair -> pair.add(variant));
+        }
+        final PairwiseDifferencesCounter.Snapshot end = running.snapshot();
+        variants.subList(90, 100).forEach(v -> running.add(new EncodedHaplotypes(v, names)));
+        final PairwiseDifferencesCounter counter = new PairwiseDifferencesCounter(pairs);
+        counter.addCountsBetween(start, end);
+        Assert.assertEquals(counter.getNumberOfVariants(), 60);
+        assertEqualCounts(counter, expected);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ibd.engine;
+
+import org.magicdgs.thaplv.haplotypes.pairs.SamplePair;
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class SamplePairIndexUnitTest extends BaseTest {
+
+    private static final List<String> SAMPLES = Arrays.asList("s1", "s2", "s3", "s4");
+
+    @Test
+    public void testAllPairs() {
+        final SamplePairIndex pairs = SamplePairIndex.allPairs(SAMPLES);
+        Assert.assertEquals(pairs.getNumberOfPairs(), 6);
+        int pair = 0;
+        for (int i = 0; i < SAMPLES.size() - 1; i++) {
+            for (int j = i + 1; j < SAMPLES.size(); j++) {
+                Assert.assertEquals(pairs.getFirstSample(pair), i);
+                Assert.assertEquals(pairs.getSecondSample(pair), j);
+                Assert.assertEquals(pairs.getFirstSampleName(pair), SAMPLES.get(i));
+                Assert.assertEquals(pairs.getSecondSampleName(pair), SAMPLES.get(j));
+                pair++;
+            }
+        }
+        Assert.assertEquals(pairs.getPairNames(0), "(s1,s2)");
+    }
+
+    @Test
+    public void testAgainstReference() {
+        final SamplePairIndex pairs = SamplePairIndex.againstReference("Reference", SAMPLES);
+        Assert.assertEquals(pairs.getNumberOfPairs(), SAMPLES.size());
+        for (int i = 0; i < SAMPLES.size(); i++) {
+            Assert.assertEquals(pairs.getFirstSample(i), SamplePairIndex.REFERENCE_INDEX);
+            Assert.assertEquals(pairs.getFirstSampleName(i), "Reference");
+            Assert.assertEquals(pairs.getSecondSample(i), i);
+        }
+    }
+
+    @Test
+    public void testAgainstReferenceWithSampleNamedAsReference() {
+        // the sample with the same name is compared with the reference, not used as reference
+        final SamplePairIndex pairs = SamplePairIndex.againstReference("s2", SAMPLES);
+        Assert.assertEquals(pairs.getNumberOfPairs(), SAMPLES.size());
+        for (int i = 0; i < SAMPLES.size(); i++) {
+            Assert.assertEquals(pairs.getFirstSample(i), SamplePairIndex.REFERENCE_INDEX);
+            Assert.assertEquals(pairs.getSecondSample(i), i);
+        }
+        Assert.assertEquals(pairs.getPairNames(1), "(s2,s2)");
+    }
+
+    @Test
+    public void testAgainstSample() {
+        final SamplePairIndex pairs = SamplePairIndex.againstSample("s2", SAMPLES);
+        Assert.assertEquals(pairs.getNumberOfPairs(), SAMPLES.size() - 1);
+        Assert.assertEquals(pairs.getPairNames(0), "(s2,s1)");
+        Assert.assertEquals(pairs.getPairNames(1), "(s2,s3)");
+        Assert.assertEquals(pairs.getPairNames(2), "(s2,s4)");
+    }
+
+    @Test
+    public void testFromPairs() {
+        final SamplePairIndex pairs = SamplePairIndex.fromPairs(SAMPLES, Arrays.asList(
+                new SamplePair("s4", "s2"), new SamplePair("s1", "s4"),
+                new SamplePair("s2", "s4")));
+        // s3 is not included, and the duplicated pair is removed
+        Assert.assertEquals(pairs.getSampleNames(), Arrays.asList("s1", "s2", "s4"));
+        Assert.assertEquals(pairs.getNumberOfPairs(), 2);
+        Assert.assertEquals(pairs.getPairNames(0), "(s1,s4)");
+        Assert.assertEquals(pairs.getFirstSample(0), 0);
+        Assert.assertEquals(pairs.getSecondSample(0), 2);
+        Assert.assertEquals(pairs.getPairNames(1), "(s2,s4)");
+        Assert.assertEquals(pairs.getFirstSample(1), 1);
+        Assert.assertEquals(pairs.getSecondSample(1), 2);
+    }
+
+    @DataProvider(name = "badPairs")
+    public Object[][] badPairs() {
+        return new Object[][] {
+                {Collections.emptyList()},
+                {Collections.singletonList(new SamplePair("s1", "s5"))}
+        };
+    }
+
+    @Test(dataProvider = "badPairs", expectedExceptions = IllegalArgumentException.class)
+    public void testBadFromPairs(final List<SamplePair> pairs) {
+        SamplePairIndex.fromPairs(SAMPLES, pairs);
+    }
+
+    @Test
+    public void testFromGroups() {
+        final Map<String, String> groups = new HashMap<>();
+        groups.put("s1", "A");
+        groups.put("s2", "B");
+        groups.put("s4", "A");
+        final SamplePairIndex within = SamplePairIndex.fromGroups(SAMPLES, groups, true);
+        Assert.assertEquals(within.getSampleNames(), Arrays.asList("s1", "s4"));
+        Assert.assertEquals(within.getNumberOfPairs(), 1);
+        Assert.assertEquals(within.getPairNames(0), "(s1,s4)");
+        final SamplePairIndex between = SamplePairIndex.fromGroups(SAMPLES, groups, false);
+        Assert.assertEquals(between.getSampleNames(), Arrays.asList("s1", "s2", "s4"));
+        Assert.assertEquals(between.getNumberOfPairs(), 2);
+        Assert.assertEquals(between.getPairNames(0), "(s1,s2)");
+        Assert.assertEquals(between.getPairNames(1), "(s2,s4)");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testFromGroupsWithoutPairs() {
+        SamplePairIndex.fromGroups(SAMPLES, Collections.singletonMap("s1", "A"), true);
+    }
+}
@@ -167,6 +167,57 @@ public class LDdecayIntegrationTest extends CommandLineProgramTest {
         assertEqualOutputFromApproximation(result, expected);
     }
 
+    @DataProvider(name = "parallelContigsTests")
+    public Object[][] getParallelContigsDataForTests() {
+        return new Object[][] {
+                {"testParallelContigsDefault", 1, new String[0]},
+                {"testParallelContigsIncludeSingletons", 3,
+                        new String[] {LDdecay.INCLUDE_SINGLETONS_ARGNAME, "true"}},
+                {"testParallelContigsMinimumMissing5", 3,
+                        new String[] {LDdecay.MINIMUM_SAMPLES_ARGNAME, "5"}},
+                // intervals in two contigs with variants and one without variants
+                {"testParallelContigsIntervals", 2,
+                        new String[] {"intervals", "2L:1-5000000",
+                                "intervals", "2L:8000000-9000000",
+                                "intervals", "3L:1-1000",
+                                "intervals", "X:10019000-10021000"}}
+        };
+    }
+
+    /** The output of the parallel contigs should be the same as the sequential output. */
+    @Test(dataProvider = "parallelContigsTests")
+    public void testParallelContigs(final String testName, final int threads,
+            final String[] extraArguments) throws Exception {
+        log("Running parallel contigs test: " + testName);
+        // the file contains variants in 2L, 2R and X, and no variants for 3L
+        final File contigsVcf = getTestFile("10samples.contigs.vcf.gz");
+        final ArgumentsBuilder sequentialArgs = new ArgumentsBuilder()
+                .addArgument(ThaplvArgumentDefinitions.HAPLOTYPE_MODEL_LONG, "HAPLOID")
+                .addVCF(contigsVcf)
+                .addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                        tmpDir.getAbsolutePath() + "/" + testName + ".sequential");
+        final ArgumentsBuilder parallelArgs = new ArgumentsBuilder()
+                .addArgument(ThaplvArgumentDefinitions.HAPLOTYPE_MODEL_LONG, "HAPLOID")
+                .addVCF(contigsVcf)
+                .addArgument(StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+                        tmpDir.getAbsolutePath() + "/" + testName)
+                .addBooleanArgument(LDdecay.PARALLEL_CONTIGS_ARGNAME, true)
+                .addArgument("threads", String.valueOf(threads));
+        for (int i = 0; i < extraArguments.length; i += 2) {
+            sequentialArgs.addArgument(extraArguments[i], extraArguments[i + 1]);
+            parallelArgs.addArgument(extraArguments[i], extraArguments[i + 1]);
+        }
+        final int expectedPairs = (int) runCommandLine(sequentialArgs);
+        final int computedPairs = (int) runCommandLine(parallelArgs);
+        Assert.assertEquals(computedPairs, expectedPairs, "wrong number of computed pairs");
+        for (final String suffix : LDdecayOutput.statsToBin) {
+            final File expected = new File(tmpDir, testName + ".sequential." + suffix);
+            final File result = new File(tmpDir, testName + "." + suffix);
+            Assert.assertTrue(result.exists());
+            IntegrationTestSpec.assertEqualTextFiles(result, expected);
+        }
+    }
+
     /**
      * This is used for test the output with approximate heuristic values derived from multi-thread
      * processing. First, we compare doubles with a less stringent delta
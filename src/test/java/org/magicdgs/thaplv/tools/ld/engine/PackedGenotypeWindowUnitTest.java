@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ld.engine;
+
+import org.magicdgs.thaplv.haplotypes.light.PackedGenotype;
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class PackedGenotypeWindowUnitTest extends BaseTest {
+
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("T", false);
+
+    private static PackedGenotype genotypeAt(final int position) {
+        return new PackedGenotype(
+                new VariantContextBuilder("test", "2L", position, position, Arrays.asList(REF, ALT))
+                        .genotypes(
+                                GenotypeBuilder.create("sample0", Collections.singletonList(REF)),
+                                GenotypeBuilder.create("sample1", Collections.singletonList(ALT)))
+                        .make());
+    }
+
+    @Test
+    public void testEmptyWindow() throws Exception {
+        final PackedGenotypeWindow window = new PackedGenotypeWindow();
+        Assert.assertTrue(window.isEmpty());
+        Assert.assertEquals(window.size(), 0);
+        Assert.assertThrows(NoSuchElementException.class, window::first);
+        Assert.assertThrows(NoSuchElementException.class, window::last);
+        Assert.assertThrows(NoSuchElementException.class, window::removeFirst);
+        Assert.assertThrows(IndexOutOfBoundsException.class, () -> window.get(0));
+    }
+
+    @Test
+    public void testRingBufferWithGrowth() throws Exception {
+        // small capacity to force wrapping and growing
+        final PackedGenotypeWindow window = new PackedGenotypeWindow(2);
+        int first = 1;
+        int last = 0;
+        for (int round = 0; round < 10; round++) {
+            // add three variants and remove two
+            for (int i = 0; i < 3; i++) {
+                window.add(genotypeAt(++last));
+                Assert.assertEquals(window.last().getPosition(), last);
+            }
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(window.removeFirst().getPosition(), first++);
+            }
+            Assert.assertEquals(window.size(), last - first + 1);
+            Assert.assertEquals(window.first().getPosition(), first);
+            for (int i = 0; i < window.size(); i++) {
+                Assert.assertEquals(window.get(i).getPosition(), first + i);
+            }
+        }
+        while (!window.isEmpty()) {
+            Assert.assertEquals(window.removeFirst().getPosition(), first++);
+        }
+        Assert.assertEquals(first, last + 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity() throws Exception {
+        new PackedGenotypeWindow(0);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.tools.ld.engine;
+
+import org.magicdgs.thaplv.cmd.argumentcollections.LengthBinningArgumentCollection;
+import org.magicdgs.thaplv.cmd.argumentcollections.TiledMultiThreadComputationArgumentCollection;
+import org.magicdgs.thaplv.utils.stats.popgen.SignificanceThresholdTable;
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class QueueLDUnitTest extends BaseTest {
+
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("T", false);
+
+    // creates a haploid variant with the alleles for each sample (null for no-call)
+    private static VariantContext createVariant(final String contig, final int position,
+            final Allele... sampleAlleles) {
+        final List<Genotype> genotypes = new ArrayList<>();
+        for (int i = 0; i < sampleAlleles.length; i++) {
+            genotypes.add(GenotypeBuilder.create("sample" + i, Collections.singletonList(
+                    (sampleAlleles[i] == null) ? Allele.NO_CALL : sampleAlleles[i])));
+        }
+        return new VariantContextBuilder("test", contig, position, position,
+                Arrays.asList(REF, ALT)).genotypes(genotypes).make();
+    }
+
+    @DataProvider
+    public Object[][] threads() {
+        return new Object[][] {{1}, {2}};
+    }
+
+    @Test(dataProvider = "threads")
+    public void testFailingTile(final int threads) throws Exception {
+        // the thresholds are only checked in the tiles for variants with missing genotypes
+        final SignificanceThresholdTable failingThresholds = new SignificanceThresholdTable(0, 4) {
+            @Override
+            public boolean isSignificantR2(final double r2, final int numberOfHaplotypes) {
+                throw new IllegalStateException("failing tile");
+            }
+        };
+        final TiledMultiThreadComputationArgumentCollection multiThreadArgs =
+                new TiledMultiThreadComputationArgumentCollection(10);
+        multiThreadArgs.nThreads = threads;
+        multiThreadArgs.tileSize = 1;
+        final List<String[]> written = Collections.synchronizedList(new ArrayList<>());
+        final QueueLD queue = new QueueLD(written::add,
+                new LengthBinningArgumentCollection(0, 100, 10), 1, false,
+                failingThresholds, multiThreadArgs);
+        queue.add(createVariant("2L", 1, REF, ALT, ALT, null));
+        queue.add(createVariant("2L", 2, REF, REF, ALT, null));
+        queue.add(createVariant("2L", 3, null, ALT, REF, REF));
+        // changing the contig submits the tiles for 2L
+        queue.add(createVariant("2R", 1, REF, ALT, ALT, null));
+        final IllegalStateException e =
+                Assert.expectThrows(IllegalStateException.class, queue::close);
+        Assert.assertEquals(e.getMessage(), "failing tile");
+        // the incomplete bins are not written
+        Assert.assertTrue(written.isEmpty());
+    }
+
+}
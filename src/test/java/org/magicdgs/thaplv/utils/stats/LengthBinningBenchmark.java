@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.utils.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Microbenchmark for adding values to a {@link LengthBinning}, comparing the array-backed bins
+ * (with and without a known maximum length) with the previous implementation based on a
+ * {@link TreeMap} and a floating-point floor for the bin.
+ *
+ * <p>Run with {@code ./gradlew benchmark -Pbenchmark=LengthBinning}.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LengthBinningBenchmark {
+
+    // number of values added in each invocation
+    private static final int NUMBER_OF_VALUES = 10_000;
+
+    // quantiles used by LDdecay
+    private static final double[] QUANTILES = new double[] {5, 95};
+
+    @Param({"10000"})
+    public int maxLength;
+
+    @Param({"10", "1000"})
+    public int binSize;
+
+    private int[] lengths;
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(1);
+        lengths = new int[NUMBER_OF_VALUES];
+        values = new double[NUMBER_OF_VALUES];
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            lengths[i] = random.nextInt(maxLength + 1);
+            values[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public SortedMap<Integer, RunningStats> treeMapBinning() {
+        final TreeMapBinning binning = new TreeMapBinning(binSize, QUANTILES);
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            binning.add(lengths[i], values[i]);
+        }
+        return binning.getBinStats();
+    }
+
+    @Benchmark
+    public SortedMap<Integer, RunningStats> denseBinning() {
+        final LengthBinning binning = new LengthBinning(binSize, maxLength, QUANTILES);
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            binning.add(lengths[i], values[i]);
+        }
+        return binning.getBinStats();
+    }
+
+    @Benchmark
+    public SortedMap<Integer, RunningStats> growableBinning() {
+        final LengthBinning binning = new LengthBinning(binSize, null, QUANTILES);
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            binning.add(lengths[i], values[i]);
+        }
+        return binning.getBinStats();
+    }
+
+    /** Baseline: the tree-based binning replaced by the array-backed {@link LengthBinning}. */
+    private static final class TreeMapBinning {
+
+        private final SortedMap<Integer, RunningStats> binStat = new TreeMap<>();
+        private final int binSize;
+        private final double[] quantiles;
+
+        private TreeMapBinning(final int binSize, final double[] quantiles) {
+            this.binSize = binSize;
+            this.quantiles = quantiles;
+        }
+
+        private synchronized void add(final int length, final double value) {
+            final int bin = (int) Math.floor((length - 1) / binSize) * binSize + binSize;
+            RunningStats stats = binStat.get(bin);
+            if (stats == null) {
+                stats = new RunningStats(quantiles);
+                binStat.put(bin, stats);
+            }
+            stats.add(value);
+        }
+
+        private synchronized SortedMap<Integer, RunningStats> getBinStats() {
+            final SortedMap<Integer, RunningStats> toReturn = new TreeMap<>();
+            if (!binStat.isEmpty()) {
+                for (int i = binSize; i <= binStat.lastKey(); i += binSize) {
+                    final RunningStats stats = binStat.get(i);
+                    toReturn.put(i, (stats == null) ? new RunningStats(quantiles) : stats);
+                }
+            }
+            return toReturn;
+        }
+    }
+}
@@ -33,6 +33,10 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+
 /**
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
@@ -54,4 +58,78 @@ public class LengthBinningUnitTest extends BaseTest {
     public void testToBin(final int binSize, final int length, final int expectedBin) {
         Assert.assertEquals(LengthBinning.toBin(length, binSize), expectedBin);
     }
-}
\ No newline at end of file
+
+    @DataProvider(name = "maxLengths")
+    public Object[][] maxLengths() {
+        return new Object[][] {{null}, {1000}};
+    }
+
+    @Test(dataProvider = "maxLengths")
+    public void testGetBinStatsWithGaps(final Integer maxLength) {
+        final LengthBinning binning = new LengthBinning(100, maxLength, new double[] {50});
+        Assert.assertTrue(binning.isEmpty());
+        Assert.assertTrue(binning.getBinStats().isEmpty());
+        binning.add(50, 1);
+        binning.add(100, 3);
+        binning.add(1000, 10);
+        Assert.assertFalse(binning.isEmpty());
+        final SortedMap<Integer, RunningStats> stats = binning.getBinStats();
+        Assert.assertEquals(stats.keySet(),
+                Arrays.asList(100, 200, 300, 400, 500, 600, 700, 800, 900, 1000));
+        Assert.assertEquals(stats.get(100).numDataValues(), 2);
+        Assert.assertEquals(stats.get(100).mean(), 2d);
+        Assert.assertEquals(stats.get(1000).numDataValues(), 1);
+        // empty bins are shared
+        Assert.assertEquals(stats.get(200).numDataValues(), 0);
+        Assert.assertSame(stats.get(200), stats.get(900));
+    }
+
+    @Test
+    public void testGrowableBinning() {
+        final LengthBinning binning = new LengthBinning(1, 50);
+        for (int i = 1; i <= 1000; i++) {
+            binning.add(i, i);
+        }
+        final SortedMap<Integer, RunningStats> stats = binning.getBinStats();
+        Assert.assertEquals(stats.size(), 1000);
+        stats.forEach((bin, stat) -> Assert.assertEquals(stat.mean(), (double) bin));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testLengthOverMaximum() {
+        new LengthBinning(100, 1000, new double[] {50}).add(1001, 1);
+    }
+
+    @DataProvider(name = "largeMaxLengths")
+    public Object[][] largeMaxLengths() {
+        return new Object[][] {{1, Integer.MAX_VALUE}, {100, Integer.MAX_VALUE},
+                {1, 100_000_000}};
+    }
+
+    @Test(dataProvider = "largeMaxLengths")
+    public void testLargeMaxLength(final int binSize, final int maxLength) {
+        // the bins are not allocated up front, so many binnings with a large maximum fit in memory
+        final LengthBinning[] binnings = new LengthBinning[100];
+        for (int i = 0; i < binnings.length; i++) {
+            binnings[i] = new LengthBinning(binSize, maxLength, new double[] {50});
+            binnings[i].add(binSize, i);
+        }
+        for (int i = 0; i < binnings.length; i++) {
+            Assert.assertEquals(binnings[i].getBinStats().keySet(),
+                    Collections.singletonList(binSize));
+            Assert.assertEquals(binnings[i].getBinStats().get(binSize).mean(), (double) i);
+        }
+    }
+
+    @Test
+    public void testClear() {
+        final LengthBinning binning = new LengthBinning(10, 100, new double[] {50});
+        binning.add(100, 1);
+        binning.clear();
+        Assert.assertTrue(binning.isEmpty());
+        Assert.assertTrue(binning.getBinStats().isEmpty());
+        binning.add(15, 2);
+        Assert.assertEquals(binning.getBinStats().keySet(), Arrays.asList(10, 20));
+        Assert.assertEquals(binning.getBinStats().get(20).mean(), 2d);
+    }
+}
@@ -6,6 +6,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.Map;
+import java.util.Random;
 
 /**
  * This test is using a liberal tolerance for the statistics computed with
@@ -60,4 +61,64 @@ public class RunningStatsUnitTest extends BaseTest {
         stats.clear();
         Assert.assertNotEquals(stats.numDataValues(), 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMergeSketch() throws Exception {
+        final Random random = new Random(1984);
+        final RunningStats all = RunningStats.withSketch(200, 1, 5, 95, 99);
+        final RunningStats[] shards = new RunningStats[4];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = RunningStats.withSketch(200, 1, 5, 95, 99);
+        }
+        Assert.assertTrue(all.isMergeable());
+        Assert.assertEquals(all.median(), Double.NaN);
+        Assert.assertEquals(all.getQuantile(1), Double.NaN);
+        for (int i = 0; i < 100_000; i++) {
+            final double value = random.nextDouble();
+            all.add(value);
+            shards[i % shards.length].add(value);
+        }
+        final RunningStats merged = RunningStats.withSketch(200, 1, 5, 95, 99);
+        for (final RunningStats shard : shards) {
+            merged.merge(shard);
+        }
+        // moments are exact
+        Assert.assertEquals(merged.numDataValues(), all.numDataValues());
+        Assert.assertEquals(merged.mean(), all.mean(), DEFAULT_TOLERANCE);
+        Assert.assertEquals(merged.variance(), all.variance(), DEFAULT_TOLERANCE);
+        Assert.assertEquals(merged.sampleStandardDeviation(), all.sampleStandardDeviation(),
+                DEFAULT_TOLERANCE);
+        // quantiles are within the sketch error (uniform distribution, so rank is value)
+        Assert.assertEquals(merged.median(), 0.5, 0.0025);
+        for (final double q : merged.computedQuatiles()) {
+            Assert.assertEquals(merged.getQuantile(q), q / 100, 0.0025);
+            Assert.assertEquals(all.getQuantile(q), q / 100, 0.0025);
+        }
+        Assert.assertEquals(merged.getAllQuantiles().keySet(), all.getAllQuantiles().keySet());
+    }
+
+    @Test
+    public void testMergeIntoEmptyIsExact() throws Exception {
+        final RunningStats stats = RunningStats.withSketch(100, 1, 99);
+        for (int i = 0; i < 1000; i++) {
+            stats.add(i / 1000d);
+        }
+        final RunningStats merged = RunningStats.withSketch(100, 1, 99);
+        merged.merge(stats);
+        Assert.assertEquals(merged.numDataValues(), stats.numDataValues());
+        Assert.assertEquals(merged.mean(), stats.mean());
+        Assert.assertEquals(merged.variance(), stats.variance());
+        Assert.assertEquals(merged.getQuantile(1), stats.getQuantile(1));
+        Assert.assertEquals(merged.getQuantile(99), stats.getQuantile(99));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergePSquareNotAllowed() throws Exception {
+        new RunningStats(1, 99).merge(new RunningStats(1, 99));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeDifferentQuantiles() throws Exception {
+        RunningStats.withSketch(100, 1, 99).merge(RunningStats.withSketch(100, 5, 95));
+    }
+}
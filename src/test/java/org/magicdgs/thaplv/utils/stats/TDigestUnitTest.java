@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.utils.stats;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class TDigestUnitTest extends BaseTest {
+
+    private static final int NUMBER_OF_VALUES = 100_000;
+
+    private static final int NUMBER_OF_SHARDS = 8;
+
+    private static final double[] QUANTILES = new double[] {0.01, 0.05, 0.5, 0.95, 0.99};
+
+    /**
+     * The error bounds are in rank (the fraction of exact values between the estimate and the
+     * requested quantile), and they are documented as {@code 0.5 / compression} for the quantiles
+     * computed in LDdecay. This holds for both the sketch over all the data and the merge of
+     * {@link #NUMBER_OF_SHARDS} partial sketches.
+     */
+    @DataProvider(name = "distributions")
+    public Object[][] distributions() {
+        final Random random = new Random(1984);
+        final DoubleSupplier uniform = random::nextDouble;
+        final DoubleSupplier exponential = () -> -Math.log(random.nextDouble());
+        // very skewed to 0, like r2 values
+        final DoubleSupplier skewed = () -> Math.pow(random.nextDouble(), 4);
+        return new Object[][] {
+                {uniform, 100, 0.005}, {exponential, 100, 0.005}, {skewed, 100, 0.005},
+                {uniform, 200, 0.0025}, {exponential, 200, 0.0025}, {skewed, 200, 0.0025},
+                {uniform, 500, 0.001}, {exponential, 500, 0.001}, {skewed, 500, 0.001}
+        };
+    }
+
+    @Test(dataProvider = "distributions")
+    public void testErrorBounds(final DoubleSupplier distribution, final double compression,
+            final double maxRankError) throws Exception {
+        final double[] values = new double[NUMBER_OF_VALUES];
+        final TDigest digest = new TDigest(compression);
+        final TDigest[] shards = new TDigest[NUMBER_OF_SHARDS];
+        for (int i = 0; i < NUMBER_OF_SHARDS; i++) {
+            shards[i] = new TDigest(compression);
+        }
+        for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            values[i] = distribution.getAsDouble();
+            digest.add(values[i]);
+            shards[i % NUMBER_OF_SHARDS].add(values[i]);
+        }
+        final TDigest merged = new TDigest(compression);
+        for (final TDigest shard : shards) {
+            merged.merge(shard);
+        }
+        Assert.assertEquals(digest.size(), NUMBER_OF_VALUES);
+        Assert.assertEquals(merged.size(), NUMBER_OF_VALUES);
+        Arrays.sort(values);
+        for (final double q : QUANTILES) {
+            Assert.assertEquals(rank(values, digest.quantile(q)), q, maxRankError,
+                    "quantile " + q + " for " + digest);
+            Assert.assertEquals(rank(values, merged.quantile(q)), q, maxRankError,
+                    "merged quantile " + q + " for " + merged);
+        }
+        // extremes are exact
+        Assert.assertEquals(digest.quantile(0), values[0]);
+        Assert.assertEquals(digest.quantile(1), values[NUMBER_OF_VALUES - 1]);
+        Assert.assertEquals(merged.quantile(0), values[0]);
+        Assert.assertEquals(merged.quantile(1), values[NUMBER_OF_VALUES - 1]);
+    }
+
+    // the fraction of values bellow the estimate
+    private static double rank(final double[] sorted, final double estimate) {
+        int index = Arrays.binarySearch(sorted, estimate);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index / (double) sorted.length;
+    }
+
+    @Test
+    public void testSmallNumberOfValues() throws Exception {
+        final TDigest digest = new TDigest();
+        Assert.assertEquals(digest.size(), 0);
+        Assert.assertEquals(digest.quantile(0.5), Double.NaN);
+        digest.add(1);
+        Assert.assertEquals(digest.quantile(0.01), 1d);
+        Assert.assertEquals(digest.quantile(0.99), 1d);
+        digest.add(2);
+        digest.add(3);
+        Assert.assertEquals(digest.size(), 3);
+        Assert.assertEquals(digest.quantile(0.5), 2d, DEFAULT_TOLERANCE);
+        Assert.assertEquals(digest.quantile(0), 1d);
+        Assert.assertEquals(digest.quantile(1), 3d);
+        digest.clear();
+        Assert.assertEquals(digest.size(), 0);
+        Assert.assertEquals(digest.quantile(0.5), Double.NaN);
+    }
+
+    @Test
+    public void testMergeDoesNotModifyOther() throws Exception {
+        final TDigest digest = new TDigest();
+        final TDigest other = new TDigest();
+        for (int i = 1; i <= 100; i++) {
+            other.add(i);
+        }
+        final double median = other.quantile(0.5);
+        digest.merge(other);
+        digest.merge(other);
+        Assert.assertEquals(digest.size(), 200);
+        Assert.assertEquals(other.size(), 100);
+        Assert.assertEquals(other.quantile(0.5), median);
+        Assert.assertEquals(digest.quantile(0.5), median, 1);
+        Assert.assertEquals(other.copy().quantile(0.5), median);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCompression() throws Exception {
+        new TDigest(1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidQuantile() throws Exception {
+        new TDigest().quantile(2);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.utils.stats.popgen;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Microbenchmark for the significance test of the maximum r2, comparing the inversion of the
+ * chi-square distribution for every pair ({@link LDfunctions#isSignificantR2(double, int,
+ * double)}) with the pre-computed {@link SignificanceThresholdTable}.
+ *
+ * <p>Run with {@code ./gradlew benchmark -Pbenchmark=SignificanceThresholdTable}.
+ *
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SignificanceThresholdTableBenchmark {
+
+    // number of pairs tested in each invocation
+    private static final int NUMBER_OF_PAIRS = 1_000;
+
+    @Param({"0.95"})
+    public double chiSqrQuantile;
+
+    @Param({"100", "1000"})
+    public int numberOfHaplotypes;
+
+    private SignificanceThresholdTable table;
+    private double[] r2;
+    private int[] haplotypes;
+
+    @Setup
+    public void setup() {
+        table = new SignificanceThresholdTable(chiSqrQuantile, numberOfHaplotypes);
+        final Random random = new Random(1);
+        r2 = new double[NUMBER_OF_PAIRS];
+        haplotypes = new int[NUMBER_OF_PAIRS];
+        for (int i = 0; i < NUMBER_OF_PAIRS; i++) {
+            r2[i] = random.nextDouble();
+            // simulate missing data for some of the haplotypes
+            haplotypes[i] = numberOfHaplotypes - random.nextInt(numberOfHaplotypes / 10);
+        }
+    }
+
+    @Benchmark
+    public void perPairInversion(final Blackhole blackhole) {
+        for (int i = 0; i < NUMBER_OF_PAIRS; i++) {
+            blackhole.consume(LDfunctions.isSignificantR2(r2[i], haplotypes[i], chiSqrQuantile));
+        }
+    }
+
+    @Benchmark
+    public void precomputedTable(final Blackhole blackhole) {
+        for (int i = 0; i < NUMBER_OF_PAIRS; i++) {
+            blackhole.consume(table.isSignificantR2(r2[i], haplotypes[i]));
+        }
+    }
+}
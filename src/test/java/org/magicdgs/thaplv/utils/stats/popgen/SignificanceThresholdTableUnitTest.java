@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016, Daniel Gomez-Sanchez <daniel.gomez.sanchez@hotmail> All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse
+ * or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ * THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.magicdgs.thaplv.utils.stats.popgen;
+
+import org.magicdgs.thaplv.utils.test.BaseTest;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * @author Daniel Gomez-Sanchez (magicDGS)
+ */
+public class SignificanceThresholdTableUnitTest extends BaseTest {
+
+    @DataProvider(name = "quantiles")
+    public Object[][] getQuantiles() {
+        return new Object[][] {{0}, {0.5}, {0.95}, {0.99}};
+    }
+
+    @Test(dataProvider = "quantiles")
+    public void testSameThresholdsAsLDfunctions(final double quantile) throws Exception {
+        final SignificanceThresholdTable table = new SignificanceThresholdTable(quantile, 205);
+        Assert.assertEquals(table.getChiSqrQuantile(), quantile);
+        // including values outside the table
+        for (int n = 0; n <= 300; n++) {
+            Assert.assertEquals(table.significantThreshold(n),
+                    LDfunctions.significantThreshold(n, quantile), "n=" + n);
+        }
+    }
+
+    @DataProvider(name = "significantTest")
+    public Object[][] getSignificantThresholdData() {
+        // computed with R
+        return new Object[][] {
+                {28, 0.95, 0.137195},
+                {36, 0.95, 0.1067072},
+                {205, 0.95, 0.01873882},
+                {28, 0.99, 0.2369606},
+                {36, 0.99, 0.1843027},
+                {205, 0.99, 0.03236535}
+        };
+    }
+
+    @Test(dataProvider = "significantTest")
+    public void testSignificantThreshold(final int nHaplotypes, final double quantile,
+            final double expected) throws Exception {
+        final SignificanceThresholdTable table = new SignificanceThresholdTable(quantile, 205);
+        Assert.assertEquals(table.significantThreshold(nHaplotypes), expected, DEFAULT_TOLERANCE);
+    }
+
+    @Test
+    public void testIsSignificantR2() throws Exception {
+        final SignificanceThresholdTable table = new SignificanceThresholdTable(0.95, 50);
+        Assert.assertTrue(table.isSignificantR2(0.25, 36),
+                "r2=0.25 is not significant for 95%-quantile of 36 haplotypes");
+        Assert.assertFalse(table.isSignificantR2(0.10, 36),
+                "r2=0.10 is significant for 95%-quantile of 36 haplotypes");
+    }
+
+    @DataProvider(name = "badArgs")
+    public Object[][] getBadArguments() {
+        return new Object[][] {{-0.1, 10}, {1.1, 10}, {0.95, -1}};
+    }
+
+    @Test(dataProvider = "badArgs", expectedExceptions = IllegalArgumentException.class)
+    public void testBadArguments(final double quantile, final int maxHaplotypes)
+            throws Exception {
+        new SignificanceThresholdTable(quantile, maxHaplotypes);
+    }
+}